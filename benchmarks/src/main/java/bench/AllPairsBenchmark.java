@@ -0,0 +1,76 @@
+package bench;
+
+import algorithm.DynamicAllPairs;
+import algorithm.FloydWarshall;
+import model.CompactGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import route.DistanceMatrix;
+
+import java.util.concurrent.TimeUnit;
+
+// Full all-pairs matrices per engine, and one incremental link update against them
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class AllPairsBenchmark {
+    @Param({"GRID", "ROAD"})
+    public String kind;
+
+    @Param({"1000", "4000"})
+    public int nodes;
+
+    private CompactGraph graph;
+    private DynamicAllPairs dynamic;
+    private int linkFrom;
+    private int linkTo;
+    private double linkWeight;
+    private boolean raised;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = Graphs.generate(kind, nodes).graph;
+        dynamic = DynamicAllPairs.of(graph);
+        // A link in the middle of the graph, alternately doubled and restored
+        int u = graph.nodeCount / 2;
+        linkFrom = graph.ids[u];
+        linkTo = graph.ids[graph.targets[graph.offsets[u]]];
+        linkWeight = dynamic.linkWeight(linkFrom, linkTo);
+    }
+
+    @Benchmark
+    public DistanceMatrix blocked() {
+        return FloydWarshall.matrix(graph, FloydWarshall.Engine.BLOCKED, false);
+    }
+
+    @Benchmark
+    public DistanceMatrix blockedSinglePrecision() {
+        return FloydWarshall.matrix(graph, FloydWarshall.Engine.BLOCKED, true);
+    }
+
+    @Benchmark
+    public DistanceMatrix repeatedDijkstra() {
+        return FloydWarshall.matrix(graph, FloydWarshall.Engine.REPEATED_DIJKSTRA, false);
+    }
+
+    // Each call is one increase or one decrease of the same link
+    @Benchmark
+    public int incrementalUpdate() {
+        raised = !raised;
+        dynamic.setWeight(linkFrom, linkTo, raised ? 2 * linkWeight : linkWeight);
+        return dynamic.lastRecomputedRows();
+    }
+}
@@ -0,0 +1,500 @@
+package bench;
+
+import algorithm.TrafficAssignment;
+import algorithm.TransportationProblem;
+import model.CompactGraph;
+import model.Connectivity;
+import model.Edge;
+import model.Graph;
+import model.Node;
+
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.IntBinaryOperator;
+import java.util.function.ToIntFunction;
+
+// Randomized cross-checks of the incremental and approximate algorithms against brute-force
+// references, on many small seeded instances. Each check prints its mismatch count; the exit
+// status is 1 if any check found one, so a script can run the checks after a build.
+//
+// usage: Check [name ...] [--seed N] [--instances N]
+//   connectivity  component labels kept by Graph as edges and nodes are added, against
+//                 reachability by breadth-first search from every node
+//   transportation  Vogel's method against a rescanning implementation; MODI from the
+//                 northwest corner and optimalAllocation against a min-cost flow optimum,
+//                 with some negative costs
+//   flow          minCostFlow against a reference min-cost flow, with infinite capacities and
+//                 closed edges; flow conservation of the equilibrium assignment, and its
+//                 exact even split over two identical routes
+//
+//   java -cp benchmarks/target/benchmarks.jar bench.Check
+public final class Check {
+    private static final Map<String, ToIntFunction<Check>> CHECKS = new LinkedHashMap<>();
+    static {
+        CHECKS.put("connectivity", Check::connectivity);
+        CHECKS.put("transportation", Check::transportation);
+        CHECKS.put("flow", Check::flow);
+    }
+
+    private final SplittableRandom rnd;
+    private final int instances;
+
+    private Check(long seed, int instances) {
+        this.rnd = new SplittableRandom(seed);
+        this.instances = instances;
+    }
+
+    // Random graphs of up to 40 nodes, each compacted once and then grown over six rounds of
+    // additions; every snapshot's labels are compared against the full reachability relation
+    private int connectivity() {
+        int bad = 0;
+        for (int it = 0; it < instances; it++) {
+            int n = 2 + rnd.nextInt(39);
+            Graph g = new Graph();
+            for (int i = 0; i < n; i++) g.addNode(node(i));
+            int m = rnd.nextInt(2 * n);
+            for (int i = 0; i < m; i++) g.addEdge(edge(n));
+            bad += connectivity(g.compact());
+            for (int round = 0; round < 6; round++) {
+                int adds = 1 + rnd.nextInt(8);
+                for (int i = 0; i < adds; i++) {
+                    if (rnd.nextInt(10) == 0) g.addNode(node(n++));
+                    g.addEdge(edge(n));
+                }
+                bad += connectivity(g.compact());
+            }
+        }
+        return bad;
+    }
+
+    private int connectivity(CompactGraph g) {
+        int n = g.nodeCount;
+        boolean[][] reach = new boolean[n][];
+        for (int s = 0; s < n; s++) reach[s] = reachable(g, s);
+        // Weak components: union-find over the edges
+        int[] parent = new int[n];
+        for (int v = 0; v < n; v++) parent[v] = v;
+        for (int u = 0; u < n; u++) {
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) parent[root(parent, u)] = root(parent, g.targets[e]);
+        }
+        Connectivity c = g.connectivity();
+        int bad = 0;
+        int strong = 0;
+        int weak = 0;
+        for (int s = 0; s < n; s++) {
+            if (root(parent, s) == s) weak++;
+            boolean first = true;
+            for (int t = 0; t < n; t++) {
+                boolean both = reach[s][t] && reach[t][s];
+                if (both && t < s) first = false;
+                if (reach[s][t] && !c.mayReach(s, t)) bad++;
+                if (both != c.stronglyConnected(s, t)) bad++;
+                if ((root(parent, s) == root(parent, t)) != (c.weakComponent(s) == c.weakComponent(t))) bad++;
+            }
+            if (first) strong++;
+        }
+        if (strong != c.strongCount()) bad++;
+        if (weak != c.weakCount()) bad++;
+        return bad;
+    }
+
+    private static boolean[] reachable(CompactGraph g, int s) {
+        boolean[] seen = new boolean[g.nodeCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        seen[s] = true;
+        queue.add(s);
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int v = g.targets[e];
+                if (!seen[v]) {
+                    seen[v] = true;
+                    queue.add(v);
+                }
+            }
+        }
+        return seen;
+    }
+
+    private static int root(int[] parent, int v) {
+        while (parent[v] != v) v = parent[v] = parent[parent[v]];
+        return v;
+    }
+
+    // Problems of up to 8 x 8 with balanced supply and demand, some lines empty. Small amounts
+    // and a narrow cost range make ties and degenerate bases common.
+    private int transportation() {
+        int bad = 0;
+        for (int it = 0; it < instances; it++) {
+            int m = 1 + rnd.nextInt(8);
+            int n = 1 + rnd.nextInt(8);
+            int units = rnd.nextBoolean() ? 3 : 40;
+            int[] supply = new int[m];
+            int[] demand = new int[n];
+            long total = 0;
+            for (int i = 0; i < m; i++) total += supply[i] = rnd.nextInt(units);
+            for (long u = 0; u < total; u++) demand[rnd.nextInt(n)]++;
+            int range = rnd.nextBoolean() ? 4 : 100;
+            int offset = rnd.nextInt(4) == 0 ? range / 2 : 0;
+            int[][] cost = new int[m][n];
+            for (int[] row : cost) for (int j = 0; j < n; j++) row[j] = rnd.nextInt(range) - offset;
+
+            Residual net = new Residual(m + n + 2);
+            int source = m + n;
+            int sink = source + 1;
+            for (int i = 0; i < m; i++) net.add(source, i, supply[i], 0);
+            for (int j = 0; j < n; j++) net.add(m + j, sink, demand[j], 0);
+            for (int i = 0; i < m; i++) for (int j = 0; j < n; j++) net.add(i, m + j, supply[i], cost[i][j]);
+            double best = net.ship(source, sink)[0];
+
+            int[][] vogel = TransportationProblem.vogelApproximation(supply, demand, cost);
+            if (!Arrays.deepEquals(vogel, vogelByRescanning(supply, demand, cost))) bad++;
+            if (!feasible(vogel, supply, demand)) bad++;
+            int[][] optimal = TransportationProblem.optimalAllocation(supply, demand, cost);
+            if (!feasible(optimal, supply, demand) || TransportationProblem.totalCost(optimal, cost) != best) bad++;
+            int[][] corner = TransportationProblem.modi(supply, demand, cost,
+                    TransportationProblem.northwestCorner(supply, demand));
+            if (!feasible(corner, supply, demand) || TransportationProblem.totalCost(corner, cost) != best) bad++;
+        }
+        return bad;
+    }
+
+    // Vogel's method rescanning every line at each step: the highest penalty wins, the first
+    // index on ties, rows before columns on equal penalties; a line with one live cell has
+    // that cell's cost as its penalty
+    private static int[][] vogelByRescanning(int[] supply, int[] demand, int[][] cost) {
+        int m = supply.length, n = demand.length;
+        int[] s = supply.clone();
+        int[] d = demand.clone();
+        int[][] alloc = new int[m][n];
+        while (true) {
+            int row = -1, col = -1;
+            long rowPenalty = Long.MIN_VALUE, colPenalty = Long.MIN_VALUE;
+            for (int i = 0; i < m; i++) {
+                if (s[i] == 0) continue;
+                long p = penalty(i, d, (a, j) -> cost[a][j]);
+                if (p > rowPenalty) {
+                    rowPenalty = p;
+                    row = i;
+                }
+            }
+            for (int j = 0; j < n; j++) {
+                if (d[j] == 0) continue;
+                long p = penalty(j, s, (b, i) -> cost[i][b]);
+                if (p > colPenalty) {
+                    colPenalty = p;
+                    col = j;
+                }
+            }
+            if (row < 0 || col < 0) return alloc;
+            if (rowPenalty >= colPenalty) col = cheapest(row, d, (a, j) -> cost[a][j]);
+            else row = cheapest(col, s, (b, i) -> cost[i][b]);
+            int x = Math.min(s[row], d[col]);
+            alloc[row][col] += x;
+            s[row] -= x;
+            d[col] -= x;
+        }
+    }
+
+    // Second-lowest minus lowest cost over the line's live cells, Long.MIN_VALUE with none
+    private static long penalty(int line, int[] left, IntBinaryOperator cost) {
+        long min1 = Long.MAX_VALUE, min2 = Long.MAX_VALUE;
+        for (int k = 0; k < left.length; k++) {
+            if (left[k] == 0) continue;
+            long c = cost.applyAsInt(line, k);
+            if (c < min1) {
+                min2 = min1;
+                min1 = c;
+            } else if (c < min2) {
+                min2 = c;
+            }
+        }
+        if (min1 == Long.MAX_VALUE) return Long.MIN_VALUE;
+        return min2 == Long.MAX_VALUE ? min1 : min2 - min1;
+    }
+
+    private static int cheapest(int line, int[] left, IntBinaryOperator cost) {
+        int best = -1;
+        for (int k = 0; k < left.length; k++) {
+            if (left[k] > 0 && (best < 0 || cost.applyAsInt(line, k) < cost.applyAsInt(line, best))) best = k;
+        }
+        return best;
+    }
+
+    private static boolean feasible(int[][] alloc, int[] supply, int[] demand) {
+        int[] columns = new int[demand.length];
+        for (int i = 0; i < supply.length; i++) {
+            int sum = 0;
+            for (int j = 0; j < demand.length; j++) {
+                if (alloc[i][j] < 0) return false;
+                sum += alloc[i][j];
+                columns[j] += alloc[i][j];
+            }
+            if (sum != supply[i]) return false;
+        }
+        return Arrays.equals(columns, demand);
+    }
+
+    // Random road graphs of up to 14 nodes with one to three sources and sinks. A quarter of
+    // the edges are uncapacitated and an eighth closed (infinite cost). Each is also loaded
+    // with congesting trips for a few Frank-Wolfe iterations, whose edge flows must balance
+    // at every node against the trips that start and end there.
+    private int flow() {
+        final double eps = 1e-6;
+        int bad = 0;
+        for (int it = 0; it < instances; it++) {
+            int n = 3 + rnd.nextInt(12);
+            Graph graph = new Graph();
+            for (int i = 0; i < n; i++) graph.addNode(new Node(i + 1, null, rnd.nextInt(100), rnd.nextInt(100), Set.of()));
+            Set<Long> pairs = new HashSet<>();
+            for (int i = rnd.nextInt(4 * n); i > 0; i--) {
+                int u = rnd.nextInt(n);
+                int v = rnd.nextInt(n);
+                if (u == v || !pairs.add((long) u * n + v)) continue;
+                double meters = 10 + rnd.nextInt(90);
+                graph.addEdge(new Edge(u + 1, v + 1, meters, meters / 80, false, 1, 1));
+            }
+            CompactGraph g = graph.compact();
+            int m = g.edgeCount;
+            double[] capacity = new double[m];
+            double[] cost = new double[m];
+            for (int e = 0; e < m; e++) {
+                capacity[e] = rnd.nextInt(4) == 0 ? Double.POSITIVE_INFINITY : 1 + rnd.nextInt(5);
+                cost[e] = rnd.nextInt(8) == 0 ? Double.POSITIVE_INFINITY : rnd.nextInt(10);
+            }
+            double[] supplyAt = new double[n];
+            double[] demandAt = new double[n];
+            int[] sources = new int[1 + rnd.nextInt(3)];
+            double[] supply = new double[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                int v = rnd.nextInt(n);
+                sources[i] = g.ids[v];
+                supplyAt[v] += supply[i] = 1 + rnd.nextInt(8);
+            }
+            int[] sinks = new int[1 + rnd.nextInt(3)];
+            double[] demand = new double[sinks.length];
+            for (int i = 0; i < sinks.length; i++) {
+                int v = rnd.nextInt(n);
+                sinks[i] = g.ids[v];
+                demandAt[v] += demand[i] = 1 + rnd.nextInt(8);
+            }
+
+            Residual net = new Residual(n + 2);
+            for (int u = 0; u < n; u++) {
+                for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                    if (cost[e] != Double.POSITIVE_INFINITY) net.add(u, g.targets[e], capacity[e], cost[e]);
+                }
+                net.add(n, u, supplyAt[u], 0);
+                net.add(u, n + 1, demandAt[u], 0);
+            }
+            double[] want = net.ship(n, n + 1);
+
+            TrafficAssignment.Flow f = TrafficAssignment.minCostFlow(g, sources, supply, sinks, demand, capacity, cost);
+            double[] out = new double[n];
+            double paid = 0;
+            for (int u = 0; u < n; u++) {
+                for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                    double x = f.edgeFlow[e];
+                    if (x < 0 || x > capacity[e] + eps || (cost[e] == Double.POSITIVE_INFINITY && x > 0)) bad++;
+                    out[u] += x;
+                    out[g.targets[e]] -= x;
+                    if (x > 0) paid += x * cost[e];
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                if (out[v] > supplyAt[v] + eps || -out[v] > demandAt[v] + eps) bad++;
+            }
+            if (Math.abs(f.totalCost - want[0]) > eps || Math.abs(paid - want[0]) > eps) bad++;
+            if (Math.abs(f.shipped - want[1]) > eps) bad++;
+            if (Math.abs(f.unshippedSupply - (Arrays.stream(supply).sum() - want[1])) > eps) bad++;
+            if (Math.abs(f.unmetDemand - (Arrays.stream(demand).sum() - want[1])) > eps) bad++;
+
+            bad += conservation(g);
+            bad += split();
+        }
+        return bad;
+    }
+
+    private int conservation(CompactGraph g) {
+        int n = g.nodeCount;
+        int count = 1 + rnd.nextInt(3 * n);
+        int[] origins = new int[count];
+        int[] destinations = new int[count];
+        double[] trips = new double[count];
+        double[] net = new double[n];
+        double unreachable = 0;
+        for (int i = 0; i < count; i++) {
+            int o = rnd.nextInt(n);
+            int d = rnd.nextInt(n);
+            origins[i] = g.ids[o];
+            destinations[i] = g.ids[d];
+            trips[i] = 50 + rnd.nextInt(400);
+            if (!reachable(g, o)[d]) {
+                unreachable += trips[i];
+            } else {
+                net[o] += trips[i];
+                net[d] -= trips[i];
+            }
+        }
+        // Capacities far below the trips, so the paths shift between iterations
+        double[] capacity = new double[g.edgeCount];
+        for (int e = 0; e < g.edgeCount; e++) capacity[e] = 20 + rnd.nextInt(200);
+        TrafficAssignment.Equilibrium eq = TrafficAssignment.equilibrium(g, origins, destinations, trips, capacity,
+                LocalTime.of(8, 0), 1 + rnd.nextInt(5), 0.0);
+        double eps = 1e-6 * Arrays.stream(trips).sum();
+        int bad = 0;
+        for (int u = 0; u < n; u++) {
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                if (eq.edgeFlow[e] < -eps) bad++;
+                net[u] -= eq.edgeFlow[e];
+                net[g.targets[e]] += eq.edgeFlow[e];
+            }
+        }
+        for (double v : net) if (Math.abs(v) > eps) bad++;
+        if (Math.abs(eq.unassignedTrips - unreachable) > eps) bad++;
+        return bad;
+    }
+
+    // Two identical routes between two nodes: Frank-Wolfe loads one, moves exactly half of the
+    // trips to the other in its first line search, and stays there
+    private int split() {
+        double meters = 10 + rnd.nextInt(90);
+        Graph graph = new Graph();
+        for (int i = 1; i <= 4; i++) graph.addNode(new Node(i, null, i, 0, Set.of()));
+        for (int[] e : new int[][]{{1, 2}, {2, 4}, {1, 3}, {3, 4}}) {
+            graph.addEdge(new Edge(e[0], e[1], meters, meters / 80, false, 1, 1));
+        }
+        CompactGraph g = graph.compact();
+        double[] capacity = new double[g.edgeCount];
+        Arrays.fill(capacity, 20 + rnd.nextInt(200));
+        double trips = 50 + rnd.nextInt(400);
+        TrafficAssignment.Equilibrium eq = TrafficAssignment.equilibrium(g, new int[]{1}, new int[]{4},
+                new double[]{trips}, capacity, LocalTime.of(8, 0), 1 + rnd.nextInt(5), 0.0);
+        int bad = 0;
+        for (double x : eq.edgeFlow) if (Math.abs(x - trips / 2) > 1e-6 * trips) bad++;
+        return bad;
+    }
+
+    // Reference min-cost flow: successive shortest paths found by Bellman-Ford, so negative
+    // arc costs need no potentials. Arc a's reverse is a ^ 1.
+    private static final class Residual {
+        private final int nodes;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private double[] cap = new double[16];
+        private double[] cost = new double[16];
+        private int arcs;
+
+        Residual(int nodes) {
+            this.nodes = nodes;
+        }
+
+        void add(int u, int v, double capacity, double price) {
+            if (arcs + 2 > from.length) {
+                from = Arrays.copyOf(from, arcs * 2);
+                to = Arrays.copyOf(to, arcs * 2);
+                cap = Arrays.copyOf(cap, arcs * 2);
+                cost = Arrays.copyOf(cost, arcs * 2);
+            }
+            from[arcs] = u;
+            to[arcs] = v;
+            cap[arcs] = capacity;
+            cost[arcs++] = price;
+            from[arcs] = v;
+            to[arcs] = u;
+            cost[arcs++] = -price;
+        }
+
+        // Ships as much as the network carries from source to sink, cheapest paths first;
+        // returns {total cost, amount shipped}
+        double[] ship(int source, int sink) {
+            double total = 0, shipped = 0;
+            double[] dist = new double[nodes];
+            int[] via = new int[nodes];
+            while (true) {
+                Arrays.fill(dist, Double.POSITIVE_INFINITY);
+                dist[source] = 0;
+                boolean changed = true;
+                for (int round = 0; round < nodes && changed; round++) {
+                    changed = false;
+                    for (int a = 0; a < arcs; a++) {
+                        if (cap[a] > 0 && dist[from[a]] + cost[a] < dist[to[a]]) {
+                            dist[to[a]] = dist[from[a]] + cost[a];
+                            via[to[a]] = a;
+                            changed = true;
+                        }
+                    }
+                }
+                if (dist[sink] == Double.POSITIVE_INFINITY) return new double[]{total, shipped};
+                double f = Double.POSITIVE_INFINITY;
+                for (int v = sink; v != source; v = from[via[v]]) f = Math.min(f, cap[via[v]]);
+                for (int v = sink; v != source; v = from[via[v]]) {
+                    cap[via[v]] -= f;
+                    cap[via[v] ^ 1] += f;
+                }
+                total += f * dist[sink];
+                shipped += f;
+            }
+        }
+    }
+
+    private Node node(int i) {
+        return new Node(3 * i + 1, null, rnd.nextDouble() * 100, rnd.nextDouble() * 100, Set.of());
+    }
+
+    // One in five edges is two-way; self-loops and parallel edges are allowed
+    private Edge edge(int n) {
+        return new Edge(3 * rnd.nextInt(n) + 1, 3 * rnd.nextInt(n) + 1, 10, 1, rnd.nextInt(5) == 0, 1, 1);
+    }
+
+    public static void main(String[] args) {
+        long seed = Graphs.SEED;
+        int instances = 300;
+        Map<String, ToIntFunction<Check>> run = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":
+                    if (++i >= args.length) usage();
+                    seed = Long.parseLong(args[i]);
+                    break;
+                case "--instances":
+                    if (++i >= args.length) usage();
+                    instances = Integer.parseInt(args[i]);
+                    break;
+                default:
+                    ToIntFunction<Check> check = CHECKS.get(args[i]);
+                    if (check == null) usage();
+                    run.put(args[i], check);
+            }
+        }
+        if (instances < 1) usage();
+        if (run.isEmpty()) run.putAll(CHECKS);
+
+        int failed = 0;
+        for (Map.Entry<String, ToIntFunction<Check>> e : run.entrySet()) {
+            // Every check starts from the same seed, whichever others run with it
+            int bad;
+            try {
+                bad = e.getValue().applyAsInt(new Check(seed, instances));
+            } catch (RuntimeException ex) {
+                System.out.printf("%-15s failed: %s%n", e.getKey(), ex);
+                failed++;
+                continue;
+            }
+            System.out.printf("%-15s %d instances, %d mismatches%n", e.getKey(), instances, bad);
+            if (bad > 0) failed++;
+        }
+        if (failed > 0) System.exit(1);
+    }
+
+    private static void usage() {
+        System.err.println("usage: Check [" + String.join("|", CHECKS.keySet()) + " ...] [--seed N] [--instances N]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,101 @@
+package bench;
+
+import algorithm.ContractionHierarchy;
+import algorithm.KeywordIndex;
+import algorithm.Landmarks;
+import algorithm.SpatialIndex;
+import model.GraphFile;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import route.WeightMode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Build time (the score) and retained heap (the retainedBytes secondary result) of the graph
+// and of each index over it. Retained heap is the used-heap difference across the build with
+// a full GC on both sides, so it counts what the result keeps alive and not its garbage.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class FootprintBenchmark {
+    @Param({"GRID", "RGG", "ROAD"})
+    public String kind;
+
+    @Param({"100000", "1000000"})
+    public int nodes;
+
+    private GraphFile file;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            retainedBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        file = Graphs.generate(kind, nodes);
+    }
+
+    @Benchmark
+    public Object graph(Bytes bytes) {
+        return measure(bytes, () -> Graphs.generate(kind, nodes).graph);
+    }
+
+    @Benchmark
+    public Object landmarks(Bytes bytes) {
+        return measure(bytes, () -> Landmarks.build(file.graph, 16, Landmarks.Selection.AVOID, Graphs.SEED));
+    }
+
+    @Benchmark
+    public Object keywordIndex(Bytes bytes) {
+        return measure(bytes, () -> KeywordIndex.build(file, KeywordIndex.DEFAULT_SYNONYMS));
+    }
+
+    @Benchmark
+    public Object spatialIndex(Bytes bytes) {
+        return measure(bytes, () -> SpatialIndex.build(file.graph));
+    }
+
+    @Benchmark
+    public Object contractionHierarchy(Bytes bytes) {
+        return measure(bytes, () -> ContractionHierarchy.build(file.graph, WeightMode.TIME, LocalTime.of(8, 0)));
+    }
+
+    private static Object measure(Bytes bytes, Supplier<Object> build) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        fullGc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        Object built = build.get();
+        fullGc();
+        bytes.retainedBytes = memory.getHeapMemoryUsage().getUsed() - before;
+        return built;
+    }
+
+    private static void fullGc() {
+        for (int i = 0; i < 3; i++) System.gc();
+    }
+}
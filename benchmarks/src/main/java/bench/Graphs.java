@@ -0,0 +1,33 @@
+package bench;
+
+import model.GraphFile;
+import util.SyntheticGraphs;
+
+import java.util.SplittableRandom;
+
+// Graph and query generation shared by the benchmarks. Every benchmark fork is its own JVM,
+// so each state builds its graph once per trial from (kind, nodes, seed) and gets exactly the
+// same graph and queries as every other run with those parameters.
+final class Graphs {
+    static final long SEED = 42L;
+    static final int QUERIES = 1024;
+
+    private Graphs() {}
+
+    static GraphFile generate(String kind, int nodes) {
+        return SyntheticGraphs.generate(SyntheticGraphs.Kind.valueOf(kind), nodes, SEED);
+    }
+
+    // QUERIES (start id, goal id) pairs drawn uniformly, as parallel arrays
+    static int[][] queries(GraphFile file) {
+        SplittableRandom rnd = new SplittableRandom(SEED + 1);
+        int n = file.graph.nodeCount;
+        int[] from = new int[QUERIES];
+        int[] to = new int[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            from[q] = file.graph.ids[rnd.nextInt(n)];
+            to[q] = file.graph.ids[rnd.nextInt(n)];
+        }
+        return new int[][]{from, to};
+    }
+}
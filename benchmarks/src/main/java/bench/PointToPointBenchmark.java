@@ -0,0 +1,94 @@
+package bench;
+
+import algorithm.AStar;
+import algorithm.BidirectionalDijkstra;
+import algorithm.ContractionHierarchy;
+import algorithm.Dijkstra;
+import algorithm.Landmarks;
+import model.CompactGraph;
+import model.GraphFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+// One random point-to-point query per invocation, cycling through a fixed query set
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class PointToPointBenchmark {
+    private static final LocalTime DEPART = LocalTime.of(8, 0);
+
+    @Param({"GRID", "RGG", "ROAD"})
+    public String kind;
+
+    @Param({"10000", "100000"})
+    public int nodes;
+
+    @Param({"TIME"})
+    public WeightMode mode;
+
+    private CompactGraph graph;
+    private int[] from;
+    private int[] to;
+    private Landmarks landmarks;
+    private ContractionHierarchy ch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphFile file = Graphs.generate(kind, nodes);
+        graph = file.graph;
+        int[][] q = Graphs.queries(file);
+        from = q[0];
+        to = q[1];
+        landmarks = Landmarks.build(graph, 16, Landmarks.Selection.AVOID, Graphs.SEED);
+        ch = ContractionHierarchy.build(graph, mode, DEPART);
+    }
+
+    private int advance() {
+        int q = next;
+        next = (q + 1) & (Graphs.QUERIES - 1);
+        return q;
+    }
+
+    @Benchmark
+    public double dijkstra() {
+        int q = advance();
+        return Dijkstra.distance(graph, from[q], to[q], mode, DEPART);
+    }
+
+    @Benchmark
+    public Object bidirectionalDijkstra() {
+        int q = advance();
+        return BidirectionalDijkstra.shortestPath(graph, from[q], to[q], mode, DEPART);
+    }
+
+    @Benchmark
+    public double aStarLandmarks() {
+        int q = advance();
+        return AStar.distance(graph, from[q], to[q], mode, DEPART, landmarks);
+    }
+
+    // Fixed-regime weights: the hierarchy answers for the traffic at DEPART
+    @Benchmark
+    public double contractionHierarchy() {
+        int q = advance();
+        return ch.distance(from[q], to[q]);
+    }
+}
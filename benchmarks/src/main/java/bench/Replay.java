@@ -0,0 +1,266 @@
+package bench;
+
+import algorithm.AStar;
+import algorithm.Dijkstra;
+import algorithm.Heuristic;
+import algorithm.KeywordIndex;
+import algorithm.Landmarks;
+import algorithm.RouteSearch;
+import model.CompactGraph;
+import model.GraphFile;
+import util.LatencyHistogram;
+import util.QueryLog;
+import util.QueryMetrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop replay of a QueryLog against a graph file. Call i is due at start + i / qps (or at
+// its recorded time, scaled by --speed, when no rate is given) whether or not earlier calls
+// have finished, and N worker threads take calls in order as they fall due. Response time
+// counts from when a call was due, so a router that falls behind shows the queueing it would
+// cause instead of quietly slowing the offered load; service time counts from when a worker
+// actually started it.
+//
+// usage: Replay graph.ugr log.qlog [--qps N] [--speed X] [--threads N] [--repeat N]
+//                                  [--warmup N] [--landmarks N]
+// A* calls use a Landmarks table of --landmarks (16 by default, 0 for the scaled Euclidean bound),
+// as the routing service does.
+public final class Replay {
+    private final CompactGraph graph;
+    private final Heuristic heuristic;
+    private final KeywordIndex keywords;
+    private final List<QueryLog.Entry> log;
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder unreachable = new LongAdder();
+    private volatile Object sink;
+
+    private Replay(GraphFile file, List<QueryLog.Entry> log, int landmarks) {
+        this.graph = file.graph;
+        this.log = log;
+        this.heuristic = landmarks > 0
+                ? Landmarks.build(graph, landmarks, Landmarks.Selection.AVOID, Graphs.SEED)
+                : Heuristic.scaledEuclidean(graph);
+        boolean via = log.stream().anyMatch(e -> e.op == QueryLog.Op.VIA_KEYWORD);
+        this.keywords = via ? KeywordIndex.build(file, KeywordIndex.DEFAULT_SYNONYMS) : null;
+    }
+
+    private void run(QueryLog.Entry e) {
+        Object result;
+        switch (e.op) {
+            case DIJKSTRA_ROUTE:
+                result = Dijkstra.shortestPath(graph, e.startId, e.goalId, e.mode, e.depart());
+                break;
+            case DIJKSTRA_DISTANCE:
+                result = finite(Dijkstra.distance(graph, e.startId, e.goalId, e.mode, e.depart()));
+                break;
+            case ASTAR_ROUTE:
+                result = AStar.shortestPath(graph, e.startId, e.goalId, e.mode, e.depart(), heuristic);
+                break;
+            case ASTAR_DISTANCE:
+                result = finite(AStar.distance(graph, e.startId, e.goalId, e.mode, e.depart(), heuristic));
+                break;
+            default:
+                List<?> routes = RouteSearch.routesViaKeyword(graph, keywords, e.startId, e.goalId, e.keyword, e.k,
+                        e.mode, e.depart());
+                result = routes.isEmpty() ? null : routes;
+        }
+        if (result == null) unreachable.increment();
+        sink = result;
+    }
+
+    private static Object finite(double d) {
+        return d == Double.POSITIVE_INFINITY ? null : d;
+    }
+
+    // Closed loop, unmeasured: JIT warm-up and the per-thread search contexts
+    private void warmUp(int count, int threads) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        int total = Math.min(count, log.size());
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(() -> {
+                for (int i; (i = next.getAndIncrement()) < total; ) {
+                    try {
+                        run(log.get(i));
+                    } catch (RuntimeException ignored) {
+                        // counted in the measured run
+                    }
+                }
+            }, "replay-warmup-" + w);
+            workers[w].start();
+        }
+        for (Thread t : workers) t.join();
+        failures.reset();
+        unreachable.reset();
+    }
+
+    private Result replay(double qps, double speed, int threads, int repeat) throws InterruptedException {
+        int size = log.size();
+        long total = (long) size * repeat;
+        long span = size == 0 ? 0L : log.get(size - 1).atMicros * 1000L;
+        double interval = qps > 0 ? 1e9 / qps : 0.0;
+        LatencyHistogram response = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        LongAdder allocated = new LongAdder();
+        com.sun.management.ThreadMXBean threadBean = sunThreads();
+
+        long gcCount0 = gcCount();
+        long gcMillis0 = gcMillis();
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime() + 10_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(() -> {
+                long alloc0 = threadBean == null ? 0L : threadBean.getCurrentThreadAllocatedBytes();
+                for (long i; (i = next.getAndIncrement()) < total; ) {
+                    QueryLog.Entry e = log.get((int) (i % size));
+                    long due = qps > 0
+                            ? start + (long) (i * interval)
+                            : start + (long) (((i / size) * (span + 1_000_000L) + e.atMicros * 1000L) / speed);
+                    long now;
+                    while ((now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+                    try {
+                        run(e);
+                    } catch (RuntimeException ex) {
+                        failures.increment();
+                    }
+                    long end = System.nanoTime();
+                    response.record(end - due);
+                    service.record(end - now);
+                }
+                if (threadBean != null) allocated.add(threadBean.getCurrentThreadAllocatedBytes() - alloc0);
+            }, "replay-" + w);
+            workers[w].start();
+        }
+        for (Thread t : workers) t.join();
+        long elapsed = System.nanoTime() - start;
+        return new Result(total, elapsed, response, service, gcCount() - gcCount0, gcMillis() - gcMillis0,
+                threadBean == null ? -1L : allocated.sum());
+    }
+
+    private static final class Result {
+        final long queries;
+        final long elapsedNanos;
+        final LatencyHistogram response;
+        final LatencyHistogram service;
+        final long gcCount;
+        final long gcMillis;
+        final long allocatedBytes;
+
+        Result(long queries, long elapsedNanos, LatencyHistogram response, LatencyHistogram service,
+               long gcCount, long gcMillis, long allocatedBytes) {
+            this.queries = queries;
+            this.elapsedNanos = elapsedNanos;
+            this.response = response;
+            this.service = service;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private void report(Result r, double qps) {
+        double seconds = r.elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "queries     %d (%d unreachable, %d failed)%n",
+                r.queries, unreachable.sum(), failures.sum());
+        System.out.printf(Locale.ROOT, "elapsed     %.2f s%n", seconds);
+        if (qps > 0) System.out.printf(Locale.ROOT, "offered     %.0f qps%n", qps);
+        System.out.printf(Locale.ROOT, "throughput  %.0f qps%n", r.queries / seconds);
+        System.out.printf(Locale.ROOT, "%-10s %9s %9s %9s %9s %9s %9s%n", "ms", "mean", "p50", "p90", "p99", "p999", "max");
+        row("response", r.response);
+        row("service", r.service);
+        System.out.printf(Locale.ROOT, "gc          %d collections, %d ms (%.2f%% of wall time)%n",
+                r.gcCount, r.gcMillis, 100.0 * r.gcMillis / Math.max(1.0, r.elapsedNanos / 1e6));
+        if (r.allocatedBytes >= 0) {
+            System.out.printf(Locale.ROOT, "allocated   %.1f MB/s, %.0f bytes/query%n",
+                    r.allocatedBytes / 1e6 / seconds, (double) r.allocatedBytes / Math.max(1, r.queries));
+        }
+        System.out.println();
+        System.out.print(QueryMetrics.dump());
+    }
+
+    private static void row(String name, LatencyHistogram h) {
+        System.out.printf(Locale.ROOT, "%-10s %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", name,
+                h.mean() / 1e6, h.valueAt(0.50) / 1e6, h.valueAt(0.90) / 1e6, h.valueAt(0.99) / 1e6,
+                h.valueAt(0.999) / 1e6, h.max() / 1e6);
+    }
+
+    private static long gcCount() {
+        long sum = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sum += Math.max(0, gc.getCollectionCount());
+        }
+        return sum;
+    }
+
+    private static long gcMillis() {
+        long sum = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sum += Math.max(0, gc.getCollectionTime());
+        }
+        return sum;
+    }
+
+    // Per-thread allocation counters, where the JVM has them
+    private static com.sun.management.ThreadMXBean sunThreads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+        if (!sun.isThreadAllocatedMemorySupported()) return null;
+        sun.setThreadAllocatedMemoryEnabled(true);
+        return sun;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) usage();
+        double qps = 0;
+        double speed = 1.0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int repeat = 1;
+        int warmup = 10_000;
+        int landmarks = 16;
+        for (int i = 2; i < args.length; i++) {
+            if (i + 1 >= args.length) usage();
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--qps": qps = Double.parseDouble(value); break;
+                case "--speed": speed = Double.parseDouble(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--repeat": repeat = Integer.parseInt(value); break;
+                case "--warmup": warmup = Integer.parseInt(value); break;
+                case "--landmarks": landmarks = Integer.parseInt(value); break;
+                default: usage();
+            }
+        }
+        if (threads < 1 || repeat < 1 || speed <= 0 || qps < 0) usage();
+
+        GraphFile file = GraphFile.load(Path.of(args[0]));
+        List<QueryLog.Entry> log = QueryLog.read(Path.of(args[1]));
+        if (log.isEmpty()) throw new IllegalArgumentException("Empty query log " + args[1]);
+        if (qps == 0 && log.get(log.size() - 1).atMicros == 0) {
+            throw new IllegalArgumentException("The log has no timestamps (a synthetic log?); give --qps");
+        }
+        Replay replay = new Replay(file, log, landmarks);
+        System.out.printf("%d nodes, %d edges, %d logged calls, %d threads%n",
+                file.graph.nodeCount, file.graph.edgeCount, log.size(), threads);
+        replay.warmUp(warmup, threads);
+        System.gc();
+        QueryMetrics.resetAll();
+        replay.report(replay.replay(qps, speed, threads, repeat), qps);
+    }
+
+    private static void usage() {
+        System.err.println("usage: Replay graph.ugr log.qlog [--qps N] [--speed X] [--threads N] [--repeat N]");
+        System.err.println("                                 [--warmup N] [--landmarks N]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Entry point of benchmarks.jar: the usual JMH command line, except that results are always
+// written as JSON, by default to results/<label>-<timestamp>.json where the label comes from
+// -Dbench.label (e.g. a git revision) and defaults to "dev". Pass -rff to choose the file.
+//
+//   java -jar benchmarks/target/benchmarks.jar PointToPoint -p nodes=1000000
+public final class Run {
+    private Run() {}
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+                || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd).resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue()) {
+            String label = System.getProperty("bench.label", "dev");
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path out = Path.of("results", label + "-" + stamp + ".json");
+            Files.createDirectories(out.getParent());
+            options.result(out.toString());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import algorithm.KeywordIndex;
+import algorithm.RouteSearch;
+import model.CompactGraph;
+import model.GraphFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Top-3 routes via any node whose name or tags match keyword
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ViaKeywordBenchmark {
+    private static final LocalTime DEPART = LocalTime.of(8, 0);
+
+    @Param({"GRID", "ROAD"})
+    public String kind;
+
+    @Param({"10000", "100000"})
+    public int nodes;
+
+    @Param({"bank"})
+    public String keyword;
+
+    @Param({"TIME", "DISTANCE"})
+    public WeightMode mode;
+
+    private CompactGraph graph;
+    private KeywordIndex index;
+    private int[] from;
+    private int[] to;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphFile file = Graphs.generate(kind, nodes);
+        graph = file.graph;
+        index = KeywordIndex.build(file, KeywordIndex.DEFAULT_SYNONYMS);
+        int[][] q = Graphs.queries(file);
+        from = q[0];
+        to = q[1];
+    }
+
+    @Benchmark
+    public List<Route> routesViaKeyword() {
+        int q = next;
+        next = (q + 1) & (Graphs.QUERIES - 1);
+        return RouteSearch.routesViaKeyword(graph, index, from[q], to[q], keyword, 3, mode, DEPART);
+    }
+}
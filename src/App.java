@@ -1,14 +1,22 @@
 import algorithm.*;
+import model.CompactGraph;
 import model.Graph;
+import model.GraphFile;
+import route.Profile;
 import route.Route;
 import route.WeightMode;
 import util.GraphBuilder;
+import util.QueryMetrics;
 import util.TimeUtil;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalTime;
 import java.util.*;
 
 public class App {
+    static final RouteCache ROUTES = new RouteCache(256);
+
     static void printLandmarks(Graph g) {
         System.out.println("Landmarks (ID: Name):");
         List<Integer> ids = new ArrayList<>(g.idToNode.keySet());
@@ -20,24 +28,46 @@ public class App {
 
     static int pickNode(Scanner sc, Graph g, String prompt) {
         while (true) {
-            System.out.print(prompt + " (enter ID): ");
+            System.out.print(prompt + " (enter ID or x,y): ");
             String line = sc.nextLine().trim();
             try {
-                int id = Integer.parseInt(line);
-                if (g.idToNode.containsKey(id)) return id;
+                int comma = line.indexOf(',');
+                if (comma >= 0) {
+                    double x = Double.parseDouble(line.substring(0, comma).trim());
+                    double y = Double.parseDouble(line.substring(comma + 1).trim());
+                    int id = spatialIndex(g).nearestNode(x, y);
+                    if (id >= 0) {
+                        System.out.printf("  nearest: %d (%s)%n", id, g.idToNode.get(id).name);
+                        return id;
+                    }
+                } else {
+                    int id = Integer.parseInt(line);
+                    if (g.idToNode.containsKey(id)) return id;
+                }
             } catch (NumberFormatException ignored) {}
             System.out.println("Invalid ID. Try again.");
         }
     }
 
+    private static SpatialIndex spatial;
+
+    // Rebuilt only when the graph's compact snapshot changes
+    static SpatialIndex spatialIndex(Graph g) {
+        if (spatial == null || spatial.graph != g.compact()) spatial = SpatialIndex.build(g);
+        return spatial;
+    }
+
     static void menu() {
         System.out.println("\nUG Campus Router");
         System.out.println("1) Shortest distance (Dijkstra)");
         System.out.println("2) Fastest arrival (A* with traffic)");
         System.out.println("3) Routes via landmark keyword (3 options)");
         System.out.println("4) All-pairs shortest distances (Floyd–Warshall summary)");
-        System.out.println("5) Traffic assignment demo (Northwest Corner & VAM)");
+        System.out.println("5) Traffic assignment demo (VAM & MODI, campus min-cost flow & equilibrium)");
         System.out.println("6) Critical Path demo");
+        System.out.println("7) Best departure time in a window (profile search)");
+        System.out.println("8) Alternative routes (k shortest and distinct alternatives)");
+        System.out.println("9) Query metrics");
         System.out.println("0) Exit\n");
     }
 
@@ -52,11 +82,59 @@ public class App {
 
         int[][] nw = TransportationProblem.northwestCorner(supply, demand);
         int[][] vam = TransportationProblem.vogelApproximation(supply, demand, cost);
+        int[][] opt = TransportationProblem.modi(supply, demand, cost, vam);
 
-        System.out.println("Northwest Corner Allocation:");
+        System.out.println("Northwest Corner Allocation (cost " + TransportationProblem.totalCost(nw, cost) + "):");
         printMatrix(nw);
-        System.out.println("Vogel Approximation Allocation:");
+        System.out.println("Vogel Approximation Allocation (cost " + TransportationProblem.totalCost(vam, cost) + "):");
         printMatrix(vam);
+        System.out.println("Optimal Allocation by MODI (cost " + TransportationProblem.totalCost(opt, cost) + "):");
+        printMatrix(opt);
+    }
+
+    // Morning trips from the first few landmarks to every other one, routed over the campus
+    // roads: once as a system-optimal min-cost flow, once as a user equilibrium
+    static void runCampusAssignmentDemo(Graph g, LocalTime t) {
+        CompactGraph c = g.compact();
+        int origins = Math.min(4, c.nodeCount);
+        int trips = origins * (c.nodeCount - 1);
+        int[] from = new int[trips];
+        int[] to = new int[trips];
+        double[] perHour = new double[trips];
+        int k = 0;
+        for (int o = 0; o < origins; o++) {
+            for (int d = 0; d < c.nodeCount; d++) {
+                if (d == o) continue;
+                from[k] = c.ids[o];
+                to[k] = c.ids[d];
+                perHour[k++] = 60;
+            }
+        }
+
+        double[] supply = new double[origins];
+        int[] sources = Arrays.copyOf(c.ids, origins);
+        for (int i = 0; i < trips; i++) supply[i / (c.nodeCount - 1)] += perHour[i];
+        TrafficAssignment.Flow flow = TrafficAssignment.minCostFlow(g, sources, supply, to, perHour, WeightMode.TIME, t);
+        System.out.printf("Min-cost flow: %.0f of %.0f trips/h shipped at %.0f vehicle-minutes%n",
+                flow.shipped, flow.shipped + flow.unmetDemand, flow.totalCost);
+
+        TrafficAssignment.Equilibrium eq = TrafficAssignment.equilibrium(g, from, to, perHour, t, 100, 1e-4);
+        System.out.printf("Equilibrium after %d iterations (relative gap %.5f): %.0f vehicle-minutes%n",
+                eq.iterations, eq.relativeGap, eq.totalTravelMinutes);
+        Integer[] edges = new Integer[c.edgeCount];
+        for (int e = 0; e < edges.length; e++) edges[e] = e;
+        Arrays.sort(edges, (a, b) -> Double.compare(eq.minutes[b] / eq.freeFlowMinutes[b], eq.minutes[a] / eq.freeFlowMinutes[a]));
+        int[] tail = new int[c.edgeCount];
+        for (int u = 0; u < c.nodeCount; u++) {
+            for (int e = c.offsets[u]; e < c.offsets[u + 1]; e++) tail[e] = u;
+        }
+        System.out.println("Most congested roads:");
+        for (int i = 0; i < Math.min(5, edges.length) && eq.edgeFlow[edges[i]] > 0; i++) {
+            int e = edges[i];
+            System.out.printf("  %s -> %s: %.0f veh/h, %.1f min (free flow %.1f)%n",
+                    g.idToNode.get(c.ids[tail[e]]).name, g.idToNode.get(c.ids[c.targets[e]]).name,
+                    eq.edgeFlow[e], eq.minutes[e], eq.freeFlowMinutes[e]);
+        }
     }
 
     static void printMatrix(int[][] m) {
@@ -86,8 +164,9 @@ public class App {
         System.out.printf("Total duration along critical path: %.1f min%n", total);
     }
 
-    public static void main(String[] args) {
-        Graph g = GraphBuilder.buildUGGraph();
+    // Optional argument: a binary graph file to route on instead of the built-in campus graph
+    public static void main(String[] args) throws IOException {
+        Graph g = args.length > 0 ? GraphFile.load(Path.of(args[0])).toGraph() : GraphBuilder.buildUGGraph();
         Scanner sc = new Scanner(System.in);
         System.out.println("Welcome to the UG Campus Router.");
         printLandmarks(g);
@@ -101,7 +180,7 @@ public class App {
                     int start = pickNode(sc, g, "Start");
                     int goal = pickNode(sc, g, "Goal");
                     LocalTime t = TimeUtil.pickTime(sc);
-                    Route r = Dijkstra.shortestPath(g, start, goal, WeightMode.DISTANCE, t);
+                    Route r = ROUTES.shortestPath(g, start, goal, WeightMode.DISTANCE, t);
                     if (r == null) {
                         System.out.println("No route found.");
                     } else {
@@ -114,7 +193,7 @@ public class App {
                     int start = pickNode(sc, g, "Start");
                     int goal = pickNode(sc, g, "Goal");
                     LocalTime t = TimeUtil.pickTime(sc);
-                    Route r = AStar.shortestPath(g, start, goal, WeightMode.TIME, t);
+                    Route r = ROUTES.shortestPath(g, start, goal, WeightMode.TIME, t);
                     if (r == null) {
                         System.out.println("No route found.");
                     } else {
@@ -128,8 +207,13 @@ public class App {
                     int goal = pickNode(sc, g, "Goal");
                     System.out.print("Enter landmark keyword (e.g., bank, food, library): ");
                     String kw = sc.nextLine().trim();
+                    KeywordIndex keywords = KeywordIndex.of(g);
+                    if (keywords.lookup(kw).length == 0) {
+                        List<String> hints = keywords.complete(kw.length() > 2 ? kw.substring(0, 2) : kw, 5);
+                        if (!hints.isEmpty()) System.out.println("No landmark matches; try: " + String.join(", ", hints));
+                    }
                     LocalTime t = TimeUtil.pickTime(sc);
-                    List<Route> routes = RouteSearch.routesViaKeyword(g, start, goal, kw, 3, WeightMode.TIME, t);
+                    List<Route> routes = RouteSearch.routesViaKeyword(g, keywords, start, goal, kw, 3, WeightMode.TIME, t);
                     if (routes.isEmpty()) {
                         System.out.println("No routes found for keyword: " + kw);
                     } else {
@@ -155,12 +239,53 @@ public class App {
                 }
                 case "5": {
                     runNorthwestAndVAMDemo();
+                    runCampusAssignmentDemo(g, TimeUtil.pickTime(sc));
                     break;
                 }
                 case "6": {
                     runCriticalPathDemo();
                     break;
                 }
+                case "7": {
+                    int start = pickNode(sc, g, "Start");
+                    int goal = pickNode(sc, g, "Goal");
+                    System.out.println("Window start:");
+                    LocalTime from = TimeUtil.pickTime(sc);
+                    System.out.println("Window end:");
+                    LocalTime to = TimeUtil.pickTime(sc);
+                    Profile p = ProfileSearch.profile(g, start, goal, from, to);
+                    if (p == null) {
+                        System.out.println("No route found.");
+                    } else {
+                        System.out.println(p.pretty(g));
+                    }
+                    break;
+                }
+                case "8": {
+                    int start = pickNode(sc, g, "Start");
+                    int goal = pickNode(sc, g, "Goal");
+                    LocalTime t = TimeUtil.pickTime(sc);
+                    List<Route> shortest = AlternativeRoutes.kShortest(g, start, goal, 3, WeightMode.TIME, t);
+                    List<Route> distinct = AlternativeRoutes.alternatives(g, start, goal, 3, WeightMode.TIME, t, 0.6, 1.5);
+                    if (shortest.isEmpty()) {
+                        System.out.println("No route found.");
+                    } else {
+                        System.out.println("3 fastest routes:");
+                        for (int i = 0; i < shortest.size(); i++) {
+                            System.out.printf("%d) %s%n", i + 1, shortest.get(i).pretty(g));
+                        }
+                        System.out.println("Alternatives (at most 60% shared, at most 1.5x the fastest):");
+                        for (int i = 0; i < distinct.size(); i++) {
+                            System.out.printf("%d) %s%n", i + 1, distinct.get(i).pretty(g));
+                        }
+                    }
+                    break;
+                }
+                case "9": {
+                    System.out.print(QueryMetrics.dump());
+                    System.out.println("Route cache: " + ROUTES.stats());
+                    break;
+                }
                 case "0":
                     System.out.println("Goodbye.");
                     return;
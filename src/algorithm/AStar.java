@@ -1,106 +1,119 @@
 package algorithm;
 
-import model.Edge;
+import model.CompactGraph;
 import model.Graph;
-import model.Node;
 import route.Route;
 import route.WeightMode;
+import util.QueryLog;
+import util.QueryMetrics;
 
 import java.time.LocalTime;
-import java.util.*;
 
 public final class AStar {
-    public static Route shortestPath(Graph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
-        Map<Integer, Double> gScore = new HashMap<>();
-        Map<Integer, Double> fScore = new HashMap<>();
-        Map<Integer, Integer> parent = new HashMap<>();
+    private static final QueryMetrics.Series[] METRICS = QueryMetrics.register("AStar");
 
-        for (int id : g.idToNode.keySet()) {
-            gScore.put(id, Double.POSITIVE_INFINITY);
-            fScore.put(id, Double.POSITIVE_INFINITY);
-        }
-        gScore.put(startId, 0.0);
-        fScore.put(startId, heuristic(g, startId, goalId, mode));
+    // scaledEuclidean for the last graph searched without an explicit heuristic. Live snapshots
+    // share their base graph's edge arrays, so publishing traffic does not recompute it.
+    private static volatile DefaultHeuristic lastDefault;
 
-        Map<Integer, Double> timeSoFar = new HashMap<>();
-        timeSoFar.put(startId, 0.0);
+    private static final class DefaultHeuristic {
+        final int[] targets;
+        final Heuristic heuristic;
 
-        PriorityQueue<int[]> open = new PriorityQueue<>(Comparator.comparingDouble(a -> fScore.get(a[0])));
-        open.add(new int[]{startId});
+        DefaultHeuristic(int[] targets, Heuristic heuristic) {
+            this.targets = targets;
+            this.heuristic = heuristic;
+        }
+    }
 
-        Set<Integer> closed = new HashSet<>();
+    public static Route shortestPath(Graph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return shortestPath(g.compact(), startId, goalId, mode, depart);
+    }
 
-        while (!open.isEmpty()) {
-            int current = open.poll()[0];
-            if (current == goalId) break;
-            closed.add(current);
-
-            for (Edge e : g.neighbors(current)) {
-                if (closed.contains(e.toId)) continue;
-
-                double cost;
-                if (mode == WeightMode.DISTANCE) {
-                    cost = e.distanceMeters;
-                } else {
-                    double minutesIntoTrip = timeSoFar.getOrDefault(current, 0.0);
-                    LocalTime t = depart.plusMinutes((long) Math.floor(minutesIntoTrip));
-                    double mult = Graph.trafficMultiplierFor(t, e);
-                    cost = e.baseMinutes * mult;
-                }
+    public static Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return shortestPath(g, startId, goalId, mode, depart, defaultHeuristic(g));
+    }
 
-                double tentativeG = gScore.get(current) + cost;
-                if (tentativeG < gScore.get(e.toId)) {
-                    parent.put(e.toId, current);
-                    gScore.put(e.toId, tentativeG);
-                    if (mode == WeightMode.TIME) {
-                        double minutesIntoTrip = timeSoFar.getOrDefault(current, 0.0);
-                        timeSoFar.put(e.toId, minutesIntoTrip + cost);
-                    }
-                    double h = heuristic(g, e.toId, goalId, mode);
-                    fScore.put(e.toId, tentativeG + h);
-                    open.add(new int[]{e.toId});
-                }
-            }
+    // Same search with the estimate chosen per query, e.g. a Landmarks table built for g
+    public static Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart, Heuristic h) {
+        SearchStats stats = SearchStats.local();
+        stats.log(QueryLog.Op.ASTAR_ROUTE, mode, startId, goalId, depart, 0, null);
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        if (s < 0 || t < 0) return null;
+        long departSecond = depart.toSecondOfDay();
+        stats.begin();
+        try {
+            if (!g.connectivity().mayReach(s, t)) return null;
+            SearchContext ctx = SearchContext.local(g.nodeCount);
+            if (!search(g, ctx, s, t, mode, departSecond, h)) return null;
+            return ctx.toRoute(g, s, t, departSecond);
+        } finally {
+            stats.end(METRICS[mode.ordinal()]);
         }
+    }
 
-        if (!parent.containsKey(goalId) && startId != goalId) return null;
+    // Cost of the best path without building a Route; allocation-free once the thread's context is warm
+    public static double distance(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return distance(g, startId, goalId, mode, depart, defaultHeuristic(g));
+    }
 
-        List<Integer> seq = new ArrayList<>();
-        int cur = goalId;
-        seq.add(cur);
-        while (cur != startId) {
-            Integer p = parent.get(cur);
-            if (p == null) break;
-            cur = p;
-            seq.add(cur);
+    public static double distance(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart, Heuristic h) {
+        SearchStats stats = SearchStats.local();
+        stats.log(QueryLog.Op.ASTAR_DISTANCE, mode, startId, goalId, depart, 0, null);
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        if (s < 0 || t < 0) return Double.POSITIVE_INFINITY;
+        stats.begin();
+        try {
+            if (!g.connectivity().mayReach(s, t)) return Double.POSITIVE_INFINITY;
+            SearchContext ctx = SearchContext.local(g.nodeCount);
+            if (!search(g, ctx, s, t, mode, depart.toSecondOfDay(), h)) return Double.POSITIVE_INFINITY;
+            return ctx.dist(t);
+        } finally {
+            stats.end(METRICS[mode.ordinal()]);
         }
-        Collections.reverse(seq);
-
-        double distance = 0.0;
-        double minutes = 0.0;
-        LocalTime t = depart;
-        for (int i = 0; i < seq.size() - 1; i++) {
-            int a = seq.get(i);
-            int b = seq.get(i + 1);
-            Edge edge = g.getEdge(a, b);
-            if (edge == null) continue;
-            distance += edge.distanceMeters;
-            double mult = Graph.trafficMultiplierFor(t, edge);
-            double dt = edge.baseMinutes * mult;
-            minutes += dt;
-            t = t.plusMinutes((long) Math.floor(dt));
+    }
+
+    // A bound derived from g's own fastest edge, admissible whatever speeds the graph has
+    static Heuristic defaultHeuristic(CompactGraph g) {
+        DefaultHeuristic cached = lastDefault;
+        if (cached != null && cached.targets == g.targets) return cached.heuristic;
+        Heuristic h = Heuristic.scaledEuclidean(g);
+        lastDefault = new DefaultHeuristic(g.targets, h);
+        return h;
+    }
+
+    static boolean search(CompactGraph g, SearchContext ctx, int s, int t, WeightMode mode, long departSecond, Heuristic h) {
+        IndexedHeap open = ctx.heap;
+        ctx.label(s, 0.0, -1, -1);
+        open.pushOrDecrease(s, h.estimate(g, s, t, mode));
+
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            if (current == t) return true;
+            ctx.settle(current);
+            double gCurrent = ctx.dist[current];
+            ctx.scan(g.offsets[current + 1] - g.offsets[current]);
+
+            for (int e = g.offsets[current], end = g.offsets[current + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (ctx.isSettled(v)) continue;
+
+                double tentativeG = gCurrent + Paths.weight(g, e, mode, departSecond, gCurrent);
+                if (tentativeG < ctx.dist(v)) {
+                    ctx.label(v, tentativeG, current, e);
+                    open.pushOrDecrease(v, tentativeG + h.estimate(g, v, t, mode));
+                }
+            }
         }
-        return new Route(seq, distance, minutes);
+        return false;
     }
 
-    private static double heuristic(Graph g, int fromId, int toId, WeightMode mode) {
-        Node a = g.idToNode.get(fromId);
-        Node b = g.idToNode.get(toId);
-        double meters = Graph.euclidean(a, b);
+    static double heuristic(CompactGraph g, int from, int to, WeightMode mode) {
+        double meters = g.euclidean(from, to);
         if (mode == WeightMode.DISTANCE) return meters;
         double avgMetersPerMinute = 80.0;
         return meters / avgMetersPerMinute;
     }
 }
-
-
@@ -0,0 +1,250 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// Ranked alternatives to the best route.
+//
+// kShortest is Yen's algorithm: the i-th path is the best deviation from an earlier one, found
+// by a spur search from each node of the previous path with its root fixed, the root's other
+// nodes removed and the edges that earlier paths took out of that root blocked. The spur
+// searches of one round are independent and run in parallel on the common fork-join pool, each
+// on its thread's reusable SearchContext. A spur search starts with the root's cost as its
+// label, so time-dependent weights see the right clock and TIME paths are exact.
+//
+// alternatives is the penalty method: repeatedly search with the weights of edges already used
+// inflated, and keep a result only if it is at most maxStretch times the best cost and shares
+// at most maxOverlap of its length with every route kept so far.
+//
+// All searches are A* over exact backward lower-bound distances to the goal.
+public final class AlternativeRoutes {
+    private static final double PENALTY = 0.5;
+
+    private AlternativeRoutes() {}
+
+    public static List<Route> kShortest(Graph g, int startId, int goalId, int k, WeightMode mode, LocalTime depart) {
+        return kShortest(g.compact(), startId, goalId, k, mode, depart);
+    }
+
+    public static List<Route> kShortest(CompactGraph g, int startId, int goalId, int k, WeightMode mode,
+                                        LocalTime depart) {
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        List<Route> routes = new ArrayList<>();
+        if (s < 0 || t < 0 || k <= 0 || !g.connectivity().mayReach(s, t)) return routes;
+        long departSecond = depart.toSecondOfDay();
+        double[] potential = potential(g, t, mode);
+
+        List<Path> found = new ArrayList<>();
+        Path first = search(g, s, t, mode, departSecond, 0.0, potential, null, null, null);
+        if (first == null) return routes;
+        found.add(first);
+        PriorityQueue<Path> candidates = new PriorityQueue<>(Comparator.comparingDouble((Path p) -> p.cost));
+        Set<String> known = new HashSet<>();
+        known.add(first.key());
+
+        while (found.size() < k) {
+            Path prev = found.get(found.size() - 1);
+            List<Path> snapshot = List.copyOf(found);
+            Path[] spurs = new Path[prev.edges.length];
+            IntStream.range(0, prev.edges.length).parallel().forEach(i -> {
+                // Edges that paths sharing this root take out of the spur node
+                int[] blocked = new int[snapshot.size()];
+                int b = 0;
+                for (Path p : snapshot) {
+                    if (p.edges.length > i && p.sharesRoot(prev, i)) blocked[b++] = p.edges[i];
+                }
+                blocked = Arrays.copyOf(blocked, b);
+                Arrays.sort(blocked);
+                Path spur = search(g, prev.nodes[i], t, mode, departSecond, prev.prefix[i], potential,
+                        blocked, Arrays.copyOf(prev.nodes, i), null);
+                if (spur != null) spurs[i] = prev.root(i).append(spur);
+            });
+            for (Path p : spurs) {
+                if (p != null && known.add(p.key())) candidates.add(p);
+            }
+            if (candidates.isEmpty()) break;
+            found.add(candidates.poll());
+        }
+        for (Path p : found) routes.add(p.toRoute(g, departSecond));
+        return routes;
+    }
+
+    public static List<Route> alternatives(Graph g, int startId, int goalId, int k, WeightMode mode,
+                                           LocalTime depart, double maxOverlap, double maxStretch) {
+        return alternatives(g.compact(), startId, goalId, k, mode, depart, maxOverlap, maxStretch);
+    }
+
+    public static List<Route> alternatives(CompactGraph g, int startId, int goalId, int k, WeightMode mode,
+                                           LocalTime depart, double maxOverlap, double maxStretch) {
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        List<Route> routes = new ArrayList<>();
+        if (s < 0 || t < 0 || k <= 0 || !g.connectivity().mayReach(s, t)) return routes;
+        long departSecond = depart.toSecondOfDay();
+        double[] potential = potential(g, t, mode);
+        double[] penalty = new double[g.edgeCount];
+        Arrays.fill(penalty, 1.0);
+
+        Path best = search(g, s, t, mode, departSecond, 0.0, potential, null, null, null);
+        if (best == null) return routes;
+        List<Path> kept = new ArrayList<>();
+        kept.add(best);
+        Set<String> tried = new HashSet<>();
+        tried.add(best.key());
+        for (int e : best.edges) penalty[e] += PENALTY;
+
+        for (int round = 0; round < 4 * k && kept.size() < k; round++) {
+            Path p = search(g, s, t, mode, departSecond, 0.0, potential, null, null, penalty);
+            if (p == null) break;
+            for (int e : p.edges) penalty[e] += PENALTY;
+            if (!tried.add(p.key())) continue;
+            // Penalized labels are not true costs; re-total along the path
+            Path exact = p.retotal(g, mode, departSecond);
+            if (exact.cost > maxStretch * best.cost) continue;
+            boolean distinct = true;
+            for (Path q : kept) {
+                if (exact.overlap(q, g) > maxOverlap) {
+                    distinct = false;
+                    break;
+                }
+            }
+            if (distinct) kept.add(exact);
+        }
+        kept.sort(Comparator.comparingDouble((Path p) -> p.cost));
+        for (Path p : kept) routes.add(p.toRoute(g, departSecond));
+        return routes;
+    }
+
+    // Exact lower-bound distance from every node to t; the A* potential for every search here
+    private static double[] potential(CompactGraph g, int t, WeightMode mode) {
+        SearchContext ctx = SearchContext.localBackward(g.nodeCount);
+        Dijkstra.oneToAll(g, ctx, t, Paths.lowerBounds(g, mode), true, null);
+        double[] h = new double[g.nodeCount];
+        for (int v = 0; v < h.length; v++) h[v] = ctx.dist(v);
+        return h;
+    }
+
+    // A* from s (entered with cost startCost) to t that skips removed nodes and blocked edge
+    // slots, with edge weights multiplied by penalty when given. Returns the s..t part.
+    private static Path search(CompactGraph g, int s, int t, WeightMode mode, long departSecond, double startCost,
+                               double[] potential, int[] blocked, int[] removed, double[] penalty) {
+        if (potential[s] == Double.POSITIVE_INFINITY) return null;
+        SearchContext ctx = SearchContext.local(g.nodeCount);
+        if (removed != null) for (int v : removed) ctx.settle(v);
+        IndexedHeap open = ctx.heap;
+        ctx.label(s, startCost, -1, -1);
+        open.pushOrDecrease(s, startCost + potential[s]);
+        while (!open.isEmpty()) {
+            int u = open.pop();
+            if (u == t) break;
+            ctx.settle(u);
+            double du = ctx.dist[u];
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (ctx.isSettled(v) || potential[v] == Double.POSITIVE_INFINITY) continue;
+                if (blocked != null && Arrays.binarySearch(blocked, e) >= 0) continue;
+                double w = Paths.weight(g, e, mode, departSecond, du);
+                if (penalty != null) w *= penalty[e];
+                double alt = du + w;
+                if (alt < ctx.dist(v)) {
+                    ctx.label(v, alt, u, e);
+                    open.pushOrDecrease(v, alt + potential[v]);
+                }
+            }
+        }
+        if (!ctx.isReached(t) || (t != s && ctx.parentEdge(t) < 0)) return null;
+        int hops = 0;
+        for (int cur = t; cur != s; cur = ctx.parentNode[cur]) hops++;
+        int[] nodes = new int[hops + 1];
+        int[] edges = new int[hops];
+        double[] prefix = new double[hops + 1];
+        int cur = t;
+        for (int i = hops; i > 0; i--) {
+            nodes[i] = cur;
+            prefix[i] = ctx.dist[cur];
+            edges[i - 1] = ctx.parentEdge[cur];
+            cur = ctx.parentNode[cur];
+        }
+        nodes[0] = s;
+        prefix[0] = startCost;
+        return new Path(nodes, edges, prefix);
+    }
+
+    // Node indices, edge slots and the cost on arrival at each node (from the trip's start)
+    private static final class Path {
+        final int[] nodes;
+        final int[] edges;
+        final double[] prefix;
+        final double cost;
+
+        Path(int[] nodes, int[] edges, double[] prefix) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.prefix = prefix;
+            this.cost = prefix[prefix.length - 1];
+        }
+
+        // First i edges of other are this path's first i edges
+        boolean sharesRoot(Path other, int i) {
+            for (int j = 0; j < i; j++) if (edges[j] != other.edges[j]) return false;
+            return true;
+        }
+
+        Path root(int i) {
+            return new Path(Arrays.copyOf(nodes, i + 1), Arrays.copyOf(edges, i), Arrays.copyOf(prefix, i + 1));
+        }
+
+        // This root followed by a path that starts at its last node
+        Path append(Path tail) {
+            int[] n = Arrays.copyOf(nodes, nodes.length + tail.edges.length);
+            int[] e = Arrays.copyOf(edges, edges.length + tail.edges.length);
+            double[] p = Arrays.copyOf(prefix, n.length);
+            System.arraycopy(tail.nodes, 1, n, nodes.length, tail.edges.length);
+            System.arraycopy(tail.edges, 0, e, edges.length, tail.edges.length);
+            System.arraycopy(tail.prefix, 1, p, nodes.length, tail.edges.length);
+            return new Path(n, e, p);
+        }
+
+        Path retotal(CompactGraph g, WeightMode mode, long departSecond) {
+            double[] p = new double[nodes.length];
+            for (int i = 0; i < edges.length; i++) p[i + 1] = p[i] + Paths.weight(g, edges[i], mode, departSecond, p[i]);
+            return new Path(nodes, edges, p);
+        }
+
+        // Share of this path's length that also lies on other
+        double overlap(Path other, CompactGraph g) {
+            int[] theirs = other.edges.clone();
+            Arrays.sort(theirs);
+            double shared = 0.0;
+            double total = 0.0;
+            for (int e : edges) {
+                total += g.distanceMeters[e];
+                if (Arrays.binarySearch(theirs, e) >= 0) shared += g.distanceMeters[e];
+            }
+            return total == 0.0 ? 1.0 : shared / total;
+        }
+
+        String key() {
+            return Arrays.toString(edges);
+        }
+
+        Route toRoute(CompactGraph g, long departSecond) {
+            List<Integer> seq = new ArrayList<>(nodes.length);
+            for (int v : nodes) seq.add(g.ids[v]);
+            return Paths.toRoute(g, seq, edges, departSecond);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+
+// BidirectionalDijkstra guided by a Heuristic on both sides, by default the same bound as AStar
+public final class BidirectionalAStar {
+    public static Route shortestPath(Graph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return shortestPath(g.compact(), startId, goalId, mode, depart);
+    }
+
+    public static Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return shortestPath(g, startId, goalId, mode, depart, AStar.defaultHeuristic(g));
+    }
+
+    public static Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart, Heuristic h) {
+        return BidirectionalDijkstra.search(g, startId, goalId, mode, depart, h);
+    }
+}
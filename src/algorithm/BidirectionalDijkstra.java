@@ -0,0 +1,208 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+
+// Point-to-point search that grows one tree from the start and one from the goal.
+// DISTANCE queries stop once the two queue minima add up to the best meeting cost.
+// TIME queries cannot run backward on exact times, so the goal side uses lower-bound
+// weights and the forward search finishes inside the nodes the goal side settled.
+public final class BidirectionalDijkstra {
+    public static Route shortestPath(Graph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return shortestPath(g.compact(), startId, goalId, mode, depart);
+    }
+
+    public static Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return search(g, startId, goalId, mode, depart, null);
+    }
+
+    static Route search(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart, Heuristic h) {
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        if (s < 0 || t < 0 || !g.connectivity().mayReach(s, t)) return null;
+        if (s == t) return Dijkstra.shortestPath(g, startId, goalId, mode, depart);
+        long departSecond = depart.toSecondOfDay();
+        SearchContext fwd = SearchContext.local(g.nodeCount);
+        SearchContext bwd = SearchContext.localBackward(g.nodeCount);
+        if (mode == WeightMode.DISTANCE) return staticSearch(g, fwd, bwd, s, t, departSecond, h);
+        return timeDependentSearch(g, fwd, bwd, s, t, departSecond, h);
+    }
+
+    private static Route staticSearch(
+            CompactGraph g, SearchContext fwd, SearchContext bwd, int s, int t, long departSecond, Heuristic h
+    ) {
+        CompactGraph.Incoming in = g.incoming();
+        IndexedHeap fh = fwd.heap;
+        IndexedHeap bh = bwd.heap;
+        fwd.label(s, 0.0, -1, -1);
+        bwd.label(t, 0.0, -1, -1);
+        fh.pushOrDecrease(s, potential(g, s, s, t, WeightMode.DISTANCE, h));
+        bh.pushOrDecrease(t, -potential(g, t, s, t, WeightMode.DISTANCE, h));
+
+        double mu = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (!fh.isEmpty() && !bh.isEmpty()) {
+            if (fh.minKey() + bh.minKey() >= mu) break;
+            if (fh.minKey() <= bh.minKey()) {
+                int u = fh.pop();
+                fwd.settle(u);
+                double du = fwd.dist[u];
+                for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                    int v = g.targets[e];
+                    if (fwd.isSettled(v)) continue;
+                    double alt = du + g.distanceMeters[e];
+                    if (alt < fwd.dist(v)) {
+                        fwd.label(v, alt, u, e);
+                        fh.pushOrDecrease(v, alt + potential(g, v, s, t, WeightMode.DISTANCE, h));
+                        if (bwd.isReached(v) && alt + bwd.dist[v] < mu) {
+                            mu = alt + bwd.dist[v];
+                            meet = v;
+                        }
+                    }
+                }
+            } else {
+                int u = bh.pop();
+                bwd.settle(u);
+                double du = bwd.dist[u];
+                for (int i = in.offsets[u], end = in.offsets[u + 1]; i < end; i++) {
+                    int v = in.sources[i];
+                    if (bwd.isSettled(v)) continue;
+                    int e = in.edges[i];
+                    double alt = du + g.distanceMeters[e];
+                    if (alt < bwd.dist(v)) {
+                        bwd.label(v, alt, u, e);
+                        bh.pushOrDecrease(v, alt - potential(g, v, s, t, WeightMode.DISTANCE, h));
+                        if (fwd.isReached(v) && alt + fwd.dist[v] < mu) {
+                            mu = alt + fwd.dist[v];
+                            meet = v;
+                        }
+                    }
+                }
+            }
+        }
+        if (meet < 0) return null;
+        return Paths.join(g, fwd, bwd, s, meet, t, departSecond);
+    }
+
+    // Forward keys carry p(v), backward keys -p(v). With the average potential
+    // p(v) = (h(v, t) - h(s, v)) / 2 both sides stay consistent and the usual
+    // stopping rule topF + topB >= mu still holds; without a heuristic p is zero.
+    private static double potential(CompactGraph g, int v, int s, int t, WeightMode mode, Heuristic h) {
+        if (h == null) return 0.0;
+        return (h.estimate(g, v, t, mode) - h.estimate(g, s, v, mode)) / 2;
+    }
+
+    // Exact for FIFO travel times:
+    //  1. alternate an exact forward search with a lower-bound backward search, tracking the
+    //     best upper bound mu over every node settled by both sides, until no node that is
+    //     unsettled on both sides can lie on a route cheaper than mu;
+    //  2. resume the forward search alone, only expanding nodes the backward search settled
+    //     and guided by their backward distances.
+    // Whenever the forward queue minimum reaches mu, the route behind mu is already optimal.
+    // A* keys use the same average potential as the static search, so the stopping rule is unchanged.
+    private static Route timeDependentSearch(
+            CompactGraph g, SearchContext fwd, SearchContext bwd, int s, int t, long departSecond, Heuristic h
+    ) {
+        CompactGraph.Incoming in = g.incoming();
+        IndexedHeap fh = fwd.heap;
+        IndexedHeap bh = bwd.heap;
+        fwd.label(s, 0.0, -1, -1);
+        bwd.label(t, 0.0, -1, -1);
+        fh.pushOrDecrease(s, potential(g, s, s, t, WeightMode.TIME, h));
+        bh.pushOrDecrease(t, -potential(g, t, s, t, WeightMode.TIME, h));
+
+        double mu = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (!fh.isEmpty() && !bh.isEmpty()) {
+            if (fh.minKey() >= mu) return Paths.join(g, fwd, bwd, s, meet, t, departSecond);
+            if (fh.minKey() + bh.minKey() > mu) break;
+            int u;
+            if (fh.minKey() <= bh.minKey()) {
+                u = fh.pop();
+                fwd.settle(u);
+                if (u == t) return fwd.toRoute(g, s, t, departSecond);
+                double du = fwd.dist[u];
+                for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                    int v = g.targets[e];
+                    if (fwd.isSettled(v)) continue;
+                    double alt = du + g.travelMinutes(e, departSecond, du);
+                    if (alt < fwd.dist(v)) {
+                        fwd.label(v, alt, u, e);
+                        fh.pushOrDecrease(v, alt + potential(g, v, s, t, WeightMode.TIME, h));
+                    }
+                }
+            } else {
+                u = bh.pop();
+                bwd.settle(u);
+                double du = bwd.dist[u];
+                for (int i = in.offsets[u], end = in.offsets[u + 1]; i < end; i++) {
+                    int v = in.sources[i];
+                    if (bwd.isSettled(v)) continue;
+                    int e = in.edges[i];
+                    double alt = du + g.minTravelMinutes(e);
+                    if (alt < bwd.dist(v)) {
+                        bwd.label(v, alt, u, e);
+                        bh.pushOrDecrease(v, alt - potential(g, v, s, t, WeightMode.TIME, h));
+                    }
+                }
+            }
+            double via = viaCost(g, fwd, bwd, u, t, departSecond, mu);
+            if (via < mu) {
+                mu = via;
+                meet = u;
+            }
+        }
+
+        // The backward distances are consistent lower bounds to t, so the rest of the forward
+        // search is an A* over the nodes the backward search settled
+        int queued = fh.drainTo(fwd.scratch);
+        for (int i = 0; i < queued; i++) {
+            int v = fwd.scratch[i];
+            if (bwd.isSettled(v)) fh.pushOrDecrease(v, fwd.dist[v] + bwd.dist[v]);
+        }
+        while (!fh.isEmpty()) {
+            if (fh.minKey() >= mu) return Paths.join(g, fwd, bwd, s, meet, t, departSecond);
+            int u = fh.pop();
+            fwd.settle(u);
+            if (u == t) return fwd.toRoute(g, s, t, departSecond);
+            double du = fwd.dist[u];
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (fwd.isSettled(v) || !bwd.isSettled(v)) continue;
+                double alt = du + g.travelMinutes(e, departSecond, du);
+                if (alt < fwd.dist(v)) {
+                    fwd.label(v, alt, u, e);
+                    fh.pushOrDecrease(v, alt + bwd.dist[v]);
+                }
+            }
+            double via = viaCost(g, fwd, bwd, u, t, departSecond, mu);
+            if (via < mu) {
+                mu = via;
+                meet = u;
+            }
+        }
+        return null;
+    }
+
+    // Exact cost of following the forward tree to u and the backward tree on to t, or infinity
+    // when u is not settled by both sides (so its tree paths are not final) or cannot beat mu
+    private static double viaCost(CompactGraph g, SearchContext fwd, SearchContext bwd, int u, int t, long departSecond, double mu) {
+        if (!fwd.isSettled(u) || !bwd.isSettled(u)) return Double.POSITIVE_INFINITY;
+        double elapsed = fwd.dist[u];
+        if (elapsed + bwd.dist[u] >= mu) return Double.POSITIVE_INFINITY;
+        return elapsed + remainingMinutes(g, bwd, u, t, departSecond, elapsed);
+    }
+
+    // Exact travel time along the backward tree from v to t when arriving at v after elapsed minutes
+    private static double remainingMinutes(CompactGraph g, SearchContext bwd, int v, int t, long departSecond, double elapsed) {
+        double minutes = elapsed;
+        for (int cur = v; cur != t; cur = bwd.parentNode[cur]) {
+            minutes += g.travelMinutes(bwd.parentEdge[cur], departSecond, minutes);
+        }
+        return minutes - elapsed;
+    }
+}
@@ -0,0 +1,520 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.DistanceMatrix;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Contraction Hierarchies over a CompactGraph with one static weight per edge.
+// TIME hierarchies are built for the traffic regime at a sample time of day; routes are
+// still totalled time-dependently from the actual departure like every other search.
+public final class ContractionHierarchy {
+    // Witness searches may stop early; a missed witness only costs a redundant shortcut
+    private static final int SIMULATION_SETTLE_LIMIT = 50;
+    private static final int CONTRACTION_SETTLE_LIMIT = 500;
+
+    public final CompactGraph graph;
+    public final WeightMode mode;
+    public final int[] rank;
+
+    // Upward arcs leaving each node, and downward arcs entering each node (stored at the
+    // lower-ranked head so the backward search also only climbs)
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upArcs;
+    private final int[] downOffsets;
+    private final int[] downSources;
+    private final double[] downWeights;
+    private final int[] downArcs;
+
+    // Arc unpacking: an original arc maps to its CSR edge slot, a shortcut to two child arcs
+    private final int[] arcEdge;
+    private final int[] arcFirst;
+    private final int[] arcSecond;
+
+    private ContractionHierarchy(CompactGraph graph, WeightMode mode, int[] rank, Arcs arcs) {
+        this.graph = graph;
+        this.mode = mode;
+        this.rank = rank;
+        int n = graph.nodeCount;
+        int m = arcs.size;
+        this.arcEdge = Arrays.copyOf(arcs.edge, m);
+        this.arcFirst = Arrays.copyOf(arcs.first, m);
+        this.arcSecond = Arrays.copyOf(arcs.second, m);
+
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int a = 0; a < m; a++) {
+            if (!arcs.live[a]) continue;
+            if (rank[arcs.from[a]] < rank[arcs.to[a]]) upOffsets[arcs.from[a] + 1]++;
+            else downOffsets[arcs.to[a] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            upOffsets[i + 1] += upOffsets[i];
+            downOffsets[i + 1] += downOffsets[i];
+        }
+        upTargets = new int[upOffsets[n]];
+        upWeights = new double[upOffsets[n]];
+        upArcs = new int[upOffsets[n]];
+        downSources = new int[downOffsets[n]];
+        downWeights = new double[downOffsets[n]];
+        downArcs = new int[downOffsets[n]];
+        int[] upFill = Arrays.copyOf(upOffsets, n);
+        int[] downFill = Arrays.copyOf(downOffsets, n);
+        for (int a = 0; a < m; a++) {
+            if (!arcs.live[a]) continue;
+            int u = arcs.from[a];
+            int v = arcs.to[a];
+            if (rank[u] < rank[v]) {
+                int slot = upFill[u]++;
+                upTargets[slot] = v;
+                upWeights[slot] = arcs.weight[a];
+                upArcs[slot] = a;
+            } else {
+                int slot = downFill[v]++;
+                downSources[slot] = u;
+                downWeights[slot] = arcs.weight[a];
+                downArcs[slot] = a;
+            }
+        }
+    }
+
+    public static ContractionHierarchy build(Graph g, WeightMode mode, LocalTime regime) {
+        return build(g.compact(), mode, regime);
+    }
+
+    public static ContractionHierarchy build(CompactGraph g, WeightMode mode, LocalTime regime) {
+        long regimeSecond = regime.toSecondOfDay();
+        double[] weights = new double[g.edgeCount];
+        for (int e = 0; e < g.edgeCount; e++) weights[e] = Paths.weight(g, e, mode, regimeSecond, 0.0);
+        return new Builder(g, weights).contract(mode);
+    }
+
+    public int shortcutCount() {
+        int originals = 0;
+        for (int e : arcEdge) if (e >= 0) originals++;
+        return arcEdge.length - originals;
+    }
+
+    public Route shortestPath(int startId, int goalId, LocalTime depart) {
+        int s = graph.indexOf(startId);
+        int t = graph.indexOf(goalId);
+        if (s < 0 || t < 0 || !graph.connectivity().mayReach(s, t)) return null;
+        SearchContext fwd = SearchContext.local(graph.nodeCount);
+        SearchContext bwd = SearchContext.localBackward(graph.nodeCount);
+        int meet = search(fwd, bwd, s, t);
+        if (meet < 0) return null;
+
+        IntList edges = new IntList();
+        List<Integer> seq = new ArrayList<>();
+        int hops = 0;
+        for (int cur = meet; cur != s; cur = fwd.parentNode[cur]) hops++;
+        int[] upward = new int[hops];
+        int cur = meet;
+        for (int i = hops - 1; i >= 0; i--) {
+            upward[i] = fwd.parentEdge[cur];
+            cur = fwd.parentNode[cur];
+        }
+        IntList stack = new IntList();
+        for (int arc : upward) unpack(arc, edges, stack);
+        for (cur = meet; cur != t; cur = bwd.parentNode[cur]) unpack(bwd.parentEdge[cur], edges, stack);
+
+        int[] path = edges.toArray();
+        cur = s;
+        seq.add(graph.ids[cur]);
+        for (int e : path) {
+            cur = graph.targets[e];
+            seq.add(graph.ids[cur]);
+        }
+        return Paths.toRoute(graph, seq, path, depart.toSecondOfDay());
+    }
+
+    // Cost in this hierarchy's static weights, or infinity when goal is unreachable
+    public double distance(int startId, int goalId) {
+        int s = graph.indexOf(startId);
+        int t = graph.indexOf(goalId);
+        if (s < 0 || t < 0 || !graph.connectivity().mayReach(s, t)) return Double.POSITIVE_INFINITY;
+        SearchContext fwd = SearchContext.local(graph.nodeCount);
+        SearchContext bwd = SearchContext.localBackward(graph.nodeCount);
+        int meet = search(fwd, bwd, s, t);
+        return meet < 0 ? Double.POSITIVE_INFINITY : fwd.dist[meet] + bwd.dist[meet];
+    }
+
+    // Bucket many-to-many: one backward upward search per target leaves (target, cost) entries
+    // in buckets at the nodes it settles, then one forward upward search per source scans the
+    // buckets of the nodes it settles. Both sweeps run in parallel; every pair costs one bucket
+    // scan instead of a point-to-point query. Unknown ids leave their row or column infinite.
+    public DistanceMatrix table(int[] sourceIds, int[] targetIds, boolean singlePrecision) {
+        int n = graph.nodeCount;
+        int[][] spaceNodes = new int[targetIds.length][];
+        double[][] spaceCosts = new double[targetIds.length][];
+        IntStream.range(0, targetIds.length).parallel().forEach(j -> {
+            int t = graph.indexOf(targetIds[j]);
+            if (t < 0) return;
+            SearchContext ctx = SearchContext.localBackward(n);
+            IntList nodes = new IntList();
+            sweep(ctx, t, false, nodes);
+            spaceNodes[j] = nodes.toArray();
+            double[] costs = new double[nodes.size];
+            for (int i = 0; i < costs.length; i++) costs[i] = ctx.dist[nodes.data[i]];
+            spaceCosts[j] = costs;
+        });
+
+        int[] bucketOffsets = new int[n + 1];
+        for (int[] nodes : spaceNodes) {
+            if (nodes != null) for (int v : nodes) bucketOffsets[v + 1]++;
+        }
+        for (int v = 0; v < n; v++) bucketOffsets[v + 1] += bucketOffsets[v];
+        int[] fill = Arrays.copyOf(bucketOffsets, n);
+        int[] bucketTarget = new int[bucketOffsets[n]];
+        double[] bucketCost = new double[bucketOffsets[n]];
+        for (int j = 0; j < spaceNodes.length; j++) {
+            int[] nodes = spaceNodes[j];
+            if (nodes == null) continue;
+            for (int i = 0; i < nodes.length; i++) {
+                int slot = fill[nodes[i]]++;
+                bucketTarget[slot] = j;
+                bucketCost[slot] = spaceCosts[j][i];
+            }
+        }
+
+        DistanceMatrix table = DistanceMatrix.of(sourceIds.length, targetIds.length, singlePrecision);
+        IntStream.range(0, sourceIds.length).parallel().forEach(i -> {
+            int s = graph.indexOf(sourceIds[i]);
+            if (s < 0) return;
+            SearchContext ctx = SearchContext.local(n);
+            IntList nodes = new IntList();
+            sweep(ctx, s, true, nodes);
+            double[] row = new double[targetIds.length];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            for (int k = 0; k < nodes.size; k++) {
+                int u = nodes.data[k];
+                double du = ctx.dist[u];
+                for (int b = bucketOffsets[u], end = bucketOffsets[u + 1]; b < end; b++) {
+                    double alt = du + bucketCost[b];
+                    if (alt < row[bucketTarget[b]]) row[bucketTarget[b]] = alt;
+                }
+            }
+            for (int j = 0; j < row.length; j++) table.set(i, j, row[j]);
+        });
+        return table;
+    }
+
+    // Exhaustive upward search from start; collects the settled nodes that were not stalled,
+    // whose labels are then exact up-down costs
+    private void sweep(SearchContext ctx, int start, boolean forward, IntList out) {
+        IndexedHeap heap = ctx.heap;
+        int[] offsets = forward ? upOffsets : downOffsets;
+        int[] heads = forward ? upTargets : downSources;
+        double[] weights = forward ? upWeights : downWeights;
+        ctx.label(start, 0.0, -1, -1);
+        heap.pushOrDecrease(start, 0.0);
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            ctx.settle(u);
+            double du = ctx.dist[u];
+            if (stalled(ctx, u, du, forward ? downOffsets : upOffsets, forward ? downSources : upTargets,
+                    forward ? downWeights : upWeights)) continue;
+            out.add(u);
+            for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+                int v = heads[i];
+                double alt = du + weights[i];
+                if (alt < ctx.dist(v)) {
+                    ctx.label(v, alt, u, -1);
+                    heap.pushOrDecrease(v, alt);
+                }
+            }
+        }
+    }
+
+    // Bidirectional upward search; each side stops once its queue minimum reaches mu.
+    // Stall-on-demand: a node that a higher neighbour already reaches more cheaply through a
+    // downward arc cannot be on a shortest up-down path, so its arcs are not relaxed.
+    private int search(SearchContext fwd, SearchContext bwd, int s, int t) {
+        IndexedHeap fh = fwd.heap;
+        IndexedHeap bh = bwd.heap;
+        fwd.label(s, 0.0, -1, -1);
+        bwd.label(t, 0.0, -1, -1);
+        fh.pushOrDecrease(s, 0.0);
+        bh.pushOrDecrease(t, 0.0);
+        double mu = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (true) {
+            boolean forwardLive = !fh.isEmpty() && fh.minKey() < mu;
+            boolean backwardLive = !bh.isEmpty() && bh.minKey() < mu;
+            if (!forwardLive && !backwardLive) break;
+            boolean forward = forwardLive && (!backwardLive || fh.minKey() <= bh.minKey());
+            SearchContext self = forward ? fwd : bwd;
+            SearchContext other = forward ? bwd : fwd;
+            int u = self.heap.pop();
+            self.settle(u);
+            double du = self.dist[u];
+            if (other.isReached(u) && du + other.dist[u] < mu) {
+                mu = du + other.dist[u];
+                meet = u;
+            }
+            if (stalled(self, u, du, forward ? downOffsets : upOffsets, forward ? downSources : upTargets,
+                    forward ? downWeights : upWeights)) continue;
+            int[] offsets = forward ? upOffsets : downOffsets;
+            int[] heads = forward ? upTargets : downSources;
+            double[] weights = forward ? upWeights : downWeights;
+            int[] arcs = forward ? upArcs : downArcs;
+            for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+                int v = heads[i];
+                double alt = du + weights[i];
+                if (alt < self.dist(v)) {
+                    self.label(v, alt, u, arcs[i]);
+                    self.heap.pushOrDecrease(v, alt);
+                }
+            }
+        }
+        return meet;
+    }
+
+    private static boolean stalled(SearchContext ctx, int u, double du, int[] offsets, int[] heads, double[] weights) {
+        for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+            if (ctx.dist(heads[i]) + weights[i] < du) return true;
+        }
+        return false;
+    }
+
+    // Expands an arc into original CSR edge slots, first child first
+    private void unpack(int arc, IntList out, IntList stack) {
+        stack.add(arc);
+        while (stack.size > 0) {
+            int a = stack.data[--stack.size];
+            if (arcEdge[a] >= 0) {
+                out.add(arcEdge[a]);
+            } else {
+                stack.add(arcSecond[a]);
+                stack.add(arcFirst[a]);
+            }
+        }
+    }
+
+    private static final class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    // Growable arc store; arcs are immutable once created and replaced arcs are marked dead
+    private static final class Arcs {
+        int size;
+        int[] from = new int[16];
+        int[] to = new int[16];
+        double[] weight = new double[16];
+        int[] edge = new int[16];
+        int[] first = new int[16];
+        int[] second = new int[16];
+        boolean[] live = new boolean[16];
+
+        int add(int u, int v, double w, int e, int a1, int a2) {
+            if (size == from.length) {
+                int cap = size * 2;
+                from = Arrays.copyOf(from, cap);
+                to = Arrays.copyOf(to, cap);
+                weight = Arrays.copyOf(weight, cap);
+                edge = Arrays.copyOf(edge, cap);
+                first = Arrays.copyOf(first, cap);
+                second = Arrays.copyOf(second, cap);
+                live = Arrays.copyOf(live, cap);
+            }
+            from[size] = u;
+            to[size] = v;
+            weight[size] = w;
+            edge[size] = e;
+            first[size] = a1;
+            second[size] = a2;
+            live[size] = true;
+            return size++;
+        }
+    }
+
+    private static final class Builder {
+        final CompactGraph g;
+        final int n;
+        final Arcs arcs = new Arcs();
+        final int[][] out;
+        final int[] outSize;
+        final int[][] in;
+        final int[] inSize;
+        final boolean[] contracted;
+        final int[] contractedNeighbors;
+        final int[] level;
+        final SearchContext witness = new SearchContext();
+        final IndexedHeap queue = new IndexedHeap();
+        final int[] targetStamp;
+        final int[] touchedStamp;
+        int stamp;
+
+        Builder(CompactGraph g, double[] weights) {
+            this.g = g;
+            this.n = g.nodeCount;
+            out = new int[n][];
+            in = new int[n][];
+            outSize = new int[n];
+            inSize = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbors = new int[n];
+            level = new int[n];
+            targetStamp = new int[n];
+            touchedStamp = new int[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new int[Math.max(2, g.degree(v))];
+                in[v] = new int[2];
+            }
+            for (int u = 0; u < n; u++) {
+                for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                    int v = g.targets[e];
+                    if (v != u) addOrImprove(u, v, weights[e], e, -1, -1);
+                }
+            }
+        }
+
+        ContractionHierarchy contract(WeightMode mode) {
+            queue.ensureCapacity(n);
+            for (int v = 0; v < n; v++) queue.pushOrDecrease(v, priority(v));
+            int[] rank = new int[n];
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.pop();
+                // Lazy update: re-queue if the priority went stale and v is no longer the minimum
+                double p = priority(v);
+                if (!queue.isEmpty() && p > queue.minKey()) {
+                    queue.pushOrDecrease(v, p);
+                    continue;
+                }
+                contractNode(v);
+                rank[v] = next++;
+            }
+            return new ContractionHierarchy(g, mode, rank, arcs);
+        }
+
+        double priority(int v) {
+            int shortcuts = contractNode(v, false);
+            int removed = inSize[v] + outSize[v];
+            return 2.0 * (shortcuts - removed) + contractedNeighbors[v] + level[v];
+        }
+
+        void contractNode(int v) {
+            contractNode(v, true);
+            contracted[v] = true;
+            for (int i = 0; i < inSize[v]; i++) removeArc(out, outSize, arcs.from[in[v][i]], in[v][i]);
+            for (int i = 0; i < outSize[v]; i++) removeArc(in, inSize, arcs.to[out[v][i]], out[v][i]);
+
+            int touch = ++stamp;
+            for (int i = 0; i < inSize[v] + outSize[v]; i++) {
+                int neighbor = i < inSize[v] ? arcs.from[in[v][i]] : arcs.to[out[v][i - inSize[v]]];
+                if (touchedStamp[neighbor] == touch) continue;
+                touchedStamp[neighbor] = touch;
+                contractedNeighbors[neighbor]++;
+                level[neighbor] = Math.max(level[neighbor], level[v] + 1);
+                if (queue.contains(neighbor)) queue.update(neighbor, priority(neighbor));
+            }
+        }
+
+        // Counts (and when apply is set, adds) the shortcuts needed to bypass v
+        int contractNode(int v, boolean apply) {
+            int shortcuts = 0;
+            double maxOut = 0.0;
+            int targets = ++stamp;
+            int targetCount = 0;
+            for (int j = 0; j < outSize[v]; j++) {
+                int x = arcs.to[out[v][j]];
+                maxOut = Math.max(maxOut, arcs.weight[out[v][j]]);
+                if (targetStamp[x] != targets) targetCount++;
+                targetStamp[x] = targets;
+            }
+            int limit = apply ? CONTRACTION_SETTLE_LIMIT : SIMULATION_SETTLE_LIMIT;
+            for (int i = 0; i < inSize[v]; i++) {
+                int inArc = in[v][i];
+                int u = arcs.from[inArc];
+                double w1 = arcs.weight[inArc];
+                witnessSearch(u, v, w1 + maxOut, targets, targetCount, limit);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int outArc = out[v][j];
+                    int x = arcs.to[outArc];
+                    if (x == u) continue;
+                    double via = w1 + arcs.weight[outArc];
+                    if (witness.dist(x) <= via) continue;
+                    shortcuts++;
+                    if (apply) addOrImprove(u, x, via, -1, inArc, outArc);
+                }
+            }
+            return shortcuts;
+        }
+
+        // Bounded Dijkstra from u over uncontracted nodes, never passing through v, that stops
+        // once every target (nodes stamped with targets) is settled
+        void witnessSearch(int u, int v, double maxCost, int targets, int targetCount, int limit) {
+            witness.reset(n);
+            IndexedHeap heap = witness.heap;
+            witness.label(u, 0.0, -1, -1);
+            heap.pushOrDecrease(u, 0.0);
+            int settled = 0;
+            while (!heap.isEmpty() && settled++ < limit) {
+                if (heap.minKey() > maxCost) break;
+                int a = heap.pop();
+                if (targetStamp[a] == targets && --targetCount == 0) break;
+                double da = witness.dist[a];
+                for (int i = 0; i < outSize[a]; i++) {
+                    int arc = out[a][i];
+                    int b = arcs.to[arc];
+                    if (b == v || contracted[b]) continue;
+                    double alt = da + arcs.weight[arc];
+                    if (alt < witness.dist(b)) {
+                        witness.label(b, alt, a, arc);
+                        heap.pushOrDecrease(b, alt);
+                    }
+                }
+            }
+        }
+
+        void addOrImprove(int u, int v, double w, int e, int a1, int a2) {
+            for (int i = 0; i < outSize[u]; i++) {
+                int existing = out[u][i];
+                if (arcs.to[existing] != v) continue;
+                if (arcs.weight[existing] <= w) return;
+                arcs.live[existing] = false;
+                removeArc(out, outSize, u, existing);
+                removeArc(in, inSize, v, existing);
+                break;
+            }
+            int arc = arcs.add(u, v, w, e, a1, a2);
+            appendArc(out, outSize, u, arc);
+            appendArc(in, inSize, v, arc);
+        }
+
+        static void appendArc(int[][] lists, int[] sizes, int node, int arc) {
+            if (sizes[node] == lists[node].length) lists[node] = Arrays.copyOf(lists[node], sizes[node] * 2);
+            lists[node][sizes[node]++] = arc;
+        }
+
+        static void removeArc(int[][] lists, int[] sizes, int node, int arc) {
+            int[] list = lists[node];
+            for (int i = 0; i < sizes[node]; i++) {
+                if (list[i] == arc) {
+                    list[i] = list[--sizes[node]];
+                    return;
+                }
+            }
+        }
+    }
+}
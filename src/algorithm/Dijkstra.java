@@ -1,83 +1,118 @@
 package algorithm;
-import model.Edge;
+import model.CompactGraph;
 import model.Graph;
 import route.Route;
 import route.WeightMode;
+import util.QueryLog;
+import util.QueryMetrics;
 
 import java.time.LocalTime;
-import java.util.*;
 
 //A better approach for shortest possible approach has been made that can take dijkstra's place
 //The said new Algorithm is said to be 4x faster and efficient than Dijkstra
 public final class Dijkstra {
+    private static final QueryMetrics.Series[] METRICS = QueryMetrics.register("Dijkstra");
+
     public static Route shortestPath(Graph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
-        Map<Integer, Double> dist = new HashMap<>();
-        Map<Integer, Integer> parent = new HashMap<>();
-        for (int id : g.idToNode.keySet()) dist.put(id, Double.POSITIVE_INFINITY);
-        dist.put(startId, 0.0);
+        return shortestPath(g.compact(), startId, goalId, mode, depart);
+    }
 
-        Map<Integer, Double> timeSoFar = new HashMap<>();
-        timeSoFar.put(startId, 0.0);
+    public static Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        SearchStats stats = SearchStats.local();
+        stats.log(QueryLog.Op.DIJKSTRA_ROUTE, mode, startId, goalId, depart, 0, null);
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        if (s < 0 || t < 0) return null;
+        long departSecond = depart.toSecondOfDay();
+        stats.begin();
+        try {
+            if (!g.connectivity().mayReach(s, t)) return null;
+            SearchContext ctx = SearchContext.local(g.nodeCount);
+            if (!search(g, ctx, s, t, mode, departSecond)) return null;
+            return ctx.toRoute(g, s, t, departSecond);
+        } finally {
+            stats.end(METRICS[mode.ordinal()]);
+        }
+    }
 
-        PriorityQueue<int[]> pq = new PriorityQueue<>(Comparator.comparingDouble(a -> dist.get(a[0])));
-        pq.add(new int[]{startId});
+    // Cost of the best path without building a Route; allocation-free once the thread's context is warm
+    public static double distance(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        SearchStats stats = SearchStats.local();
+        stats.log(QueryLog.Op.DIJKSTRA_DISTANCE, mode, startId, goalId, depart, 0, null);
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        if (s < 0 || t < 0) return Double.POSITIVE_INFINITY;
+        stats.begin();
+        try {
+            if (!g.connectivity().mayReach(s, t)) return Double.POSITIVE_INFINITY;
+            SearchContext ctx = SearchContext.local(g.nodeCount);
+            search(g, ctx, s, t, mode, depart.toSecondOfDay());
+            return ctx.dist(t);
+        } finally {
+            stats.end(METRICS[mode.ordinal()]);
+        }
+    }
 
-        while (!pq.isEmpty()) {
-            int u = pq.poll()[0];
-            if (u == goalId) break;
-            for (Edge e : g.neighbors(u)) {
-                double weight;
-                if (mode == WeightMode.DISTANCE) {
-                    weight = e.distanceMeters;
-                } else {
-                    double minutesIntoTrip = timeSoFar.getOrDefault(u, 0.0);
-                    LocalTime t = depart.plusMinutes((long) Math.floor(minutesIntoTrip));
-                    double mult = Graph.trafficMultiplierFor(t, e);
-                    weight = e.baseMinutes * mult;
-                }
-                double alt = dist.get(u) + weight;
-                if (alt < dist.get(e.toId)) {
-                    dist.put(e.toId, alt);
-                    parent.put(e.toId, u);
-                    if (mode == WeightMode.TIME) {
-                        double minutesIntoTrip = timeSoFar.getOrDefault(u, 0.0);
-                        double edgeMinutes = (dist.get(e.toId) - dist.get(u));
-                        timeSoFar.put(e.toId, minutesIntoTrip + edgeMinutes);
-                    }
-                    pq.add(new int[]{e.toId});
+    // Settles nodes from s until t pops (or the queue drains when t < 0); returns whether t was reached
+    static boolean search(CompactGraph g, SearchContext ctx, int s, int t, WeightMode mode, long departSecond) {
+        IndexedHeap heap = ctx.heap;
+        ctx.label(s, 0.0, -1, -1);
+        heap.pushOrDecrease(s, 0.0);
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            ctx.settle(u);
+            if (u == t) return true;
+            double du = ctx.dist[u];
+            ctx.scan(g.offsets[u + 1] - g.offsets[u]);
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (ctx.isSettled(v)) continue;
+                double alt = du + Paths.weight(g, e, mode, departSecond, du);
+                if (alt < ctx.dist(v)) {
+                    ctx.label(v, alt, u, e);
+                    heap.pushOrDecrease(v, alt);
                 }
             }
         }
+        return t < 0;
+    }
 
-        if (!parent.containsKey(goalId) && startId != goalId) return null;
-
-        List<Integer> seq = new ArrayList<>();
-        int cur = goalId;
-        seq.add(cur);
-        while (cur != startId) {
-            Integer p = parent.get(cur);
-            if (p == null) break;
-            cur = p;
-            seq.add(cur);
+    // Static-weight search from s over every reachable node, following edges backwards when
+    // reverse is set (distances to s); weights are indexed by forward edge slot. Extra sources
+    // may be labelled and queued on ctx beforehand. When order is given it receives the nodes
+    // in settling order; returns the number of settled nodes.
+    static int oneToAll(CompactGraph g, SearchContext ctx, int s, double[] weights, boolean reverse, int[] order) {
+        int[] offsets = g.offsets;
+        int[] heads = g.targets;
+        int[] slots = null;
+        if (reverse) {
+            CompactGraph.Incoming in = g.incoming();
+            offsets = in.offsets;
+            heads = in.sources;
+            slots = in.edges;
         }
-        Collections.reverse(seq);
-
-        double distance = 0.0;
-        double minutes = 0.0;
-        LocalTime t = depart;
-        for (int i = 0; i < seq.size() - 1; i++) {
-            int a = seq.get(i);
-            int b = seq.get(i + 1);
-            Edge edge = g.getEdge(a, b);
-            if (edge == null) continue;
-            distance += edge.distanceMeters;
-            double mult = Graph.trafficMultiplierFor(t, edge);
-            double dt = edge.baseMinutes * mult;
-            minutes += dt;
-            t = t.plusMinutes((long) Math.floor(dt));
+        IndexedHeap heap = ctx.heap;
+        ctx.label(s, 0.0, -1, -1);
+        heap.pushOrDecrease(s, 0.0);
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            ctx.settle(u);
+            if (order != null) order[settled] = u;
+            settled++;
+            double du = ctx.dist[u];
+            ctx.scan(offsets[u + 1] - offsets[u]);
+            for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+                int v = heads[i];
+                if (ctx.isSettled(v)) continue;
+                int e = slots == null ? i : slots[i];
+                double alt = du + weights[e];
+                if (alt < ctx.dist(v)) {
+                    ctx.label(v, alt, u, e);
+                    heap.pushOrDecrease(v, alt);
+                }
+            }
         }
-        return new Route(seq, distance, minutes);
+        return settled;
     }
 }
-
-
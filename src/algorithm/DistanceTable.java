@@ -0,0 +1,109 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.DistanceMatrix;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Source x target cost tables. Rows follow sourceIds and columns targetIds; TIME costs use
+// static weights for the traffic regime at a sample time of day, as ContractionHierarchy does.
+// Unknown ids and unreachable pairs hold positive infinity.
+//
+// Without a hierarchy this runs one Dijkstra per row (or, when there are fewer targets, one
+// reverse Dijkstra per column) in parallel, each stopping once every target is settled.
+// With a hierarchy the bucket many-to-many in ContractionHierarchy.table does the same in
+// small upward search spaces, which is far cheaper once the hierarchy exists.
+public final class DistanceTable {
+    private DistanceTable() {}
+
+    public static DistanceMatrix compute(Graph g, int[] sourceIds, int[] targetIds, WeightMode mode,
+                                         LocalTime regime, boolean singlePrecision) {
+        return compute(g.compact(), sourceIds, targetIds, mode, regime, singlePrecision);
+    }
+
+    public static DistanceMatrix compute(CompactGraph g, int[] sourceIds, int[] targetIds, WeightMode mode,
+                                         LocalTime regime, boolean singlePrecision) {
+        long regimeSecond = regime.toSecondOfDay();
+        double[] weights = new double[g.edgeCount];
+        for (int e = 0; e < g.edgeCount; e++) weights[e] = Paths.weight(g, e, mode, regimeSecond, 0.0);
+
+        DistanceMatrix table = DistanceMatrix.of(sourceIds.length, targetIds.length, singlePrecision);
+        boolean reverse = targetIds.length < sourceIds.length;
+        int[] origins = reverse ? targetIds : sourceIds;
+        int[] goals = reverse ? sourceIds : targetIds;
+
+        // Goals by node index: first column at each node, chained through duplicates
+        int[] firstGoal = new int[g.nodeCount];
+        Arrays.fill(firstGoal, -1);
+        int[] nextGoal = new int[goals.length];
+        int[] goalNodes = new int[goals.length];
+        int distinct = 0;
+        for (int j = goals.length - 1; j >= 0; j--) {
+            int v = g.indexOf(goals[j]);
+            if (v < 0) continue;
+            if (firstGoal[v] < 0) goalNodes[distinct++] = v;
+            nextGoal[j] = firstGoal[v];
+            firstGoal[v] = j;
+        }
+        int goalCount = distinct;
+
+        IntStream.range(0, origins.length).parallel().forEach(i -> {
+            int s = g.indexOf(origins[i]);
+            if (s < 0 || goalCount == 0) return;
+            SearchContext ctx = SearchContext.local(g.nodeCount);
+            search(g, ctx, s, weights, reverse, firstGoal, goalCount);
+            for (int k = 0; k < goalCount; k++) {
+                int v = goalNodes[k];
+                if (!ctx.isSettled(v)) continue;
+                double d = ctx.dist[v];
+                for (int j = firstGoal[v]; j >= 0; j = nextGoal[j]) {
+                    if (reverse) table.set(j, i, d);
+                    else table.set(i, j, d);
+                }
+            }
+        });
+        return table;
+    }
+
+    public static DistanceMatrix compute(ContractionHierarchy ch, int[] sourceIds, int[] targetIds,
+                                         boolean singlePrecision) {
+        return ch.table(sourceIds, targetIds, singlePrecision);
+    }
+
+    // Dijkstra from s that stops once goalCount distinct goal nodes are settled
+    private static void search(CompactGraph g, SearchContext ctx, int s, double[] weights, boolean reverse,
+                               int[] firstGoal, int goalCount) {
+        int[] offsets = g.offsets;
+        int[] heads = g.targets;
+        int[] slots = null;
+        if (reverse) {
+            CompactGraph.Incoming in = g.incoming();
+            offsets = in.offsets;
+            heads = in.sources;
+            slots = in.edges;
+        }
+        IndexedHeap heap = ctx.heap;
+        ctx.label(s, 0.0, -1, -1);
+        heap.pushOrDecrease(s, 0.0);
+        int remaining = goalCount;
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            ctx.settle(u);
+            if (firstGoal[u] >= 0 && --remaining == 0) return;
+            double du = ctx.dist[u];
+            for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+                int v = heads[i];
+                if (ctx.isSettled(v)) continue;
+                double alt = du + weights[slots == null ? i : slots[i]];
+                if (alt < ctx.dist(v)) {
+                    ctx.label(v, alt, u, -1);
+                    heap.pushOrDecrease(v, alt);
+                }
+            }
+        }
+    }
+}
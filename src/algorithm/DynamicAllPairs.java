@@ -0,0 +1,248 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.DistanceMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// All-pairs shortest distances kept up to date as link weights change, instead of rerunning
+// FloydWarshall. A link is the cheapest edge from one node to another; setting its weight to
+// infinity deletes it and setting an absent link inserts it. Rows and columns follow the
+// CompactGraph index order, as in FloydWarshall.
+//
+// A cheaper link (u, v) can only help pairs that reach v through it, so every row i is relaxed
+// as d[i][j] = min(d[i][j], d[i][u] + w + d[v][j]) in O(n^2), skipping the rows whose distance
+// to v does not improve. A dearer link only changes the rows of the sources whose shortest-path
+// tree uses it (d[i][u] + old weight == d[i][v]); those rows are recomputed by Dijkstra over
+// the new links and every other row is left alone. A batch applies all of its increases in one
+// recomputation pass, then its decreases one relaxation pass each.
+//
+// Not thread-safe: updates must not overlap each other or reads of matrix().
+public final class DynamicAllPairs {
+    private static final double EPS = 1e-9;
+
+    private final CompactGraph graph;
+    private final int n;
+    private final double[][] d;
+    private final DistanceMatrix matrix;
+    // Out-links of each node: targets and weights, the first degree[u] slots in use
+    private final int[][] out;
+    private final double[][] weight;
+    private final int[] degree;
+    private int lastRecomputedRows;
+
+    private DynamicAllPairs(CompactGraph g) {
+        this.graph = g;
+        this.n = g.nodeCount;
+        this.out = new int[n][];
+        this.weight = new double[n][];
+        this.degree = new int[n];
+        for (int u = 0; u < n; u++) {
+            out[u] = new int[Math.max(2, g.degree(u))];
+            weight[u] = new double[out[u].length];
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (v == u) continue;
+                int slot = slot(u, v);
+                if (slot < 0) add(u, v, g.distanceMeters[e]);
+                else weight[u][slot] = Math.min(weight[u][slot], g.distanceMeters[e]);
+            }
+        }
+        this.matrix = FloydWarshall.matrix(g, FloydWarshall.Engine.AUTO, false);
+        this.d = matrix.doubleRows();
+    }
+
+    public static DynamicAllPairs of(Graph g) {
+        return of(g.compact());
+    }
+
+    // Starts from g's distances; later changes are made here and leave g untouched
+    public static DynamicAllPairs of(CompactGraph g) {
+        return new DynamicAllPairs(g);
+    }
+
+    public CompactGraph graph() {
+        return graph;
+    }
+
+    // The live matrix, updated in place by every change
+    public DistanceMatrix matrix() {
+        return matrix;
+    }
+
+    public double distance(int fromId, int toId) {
+        return d[index(fromId)][index(toId)];
+    }
+
+    // Current weight of the link, or infinity if there is none
+    public double linkWeight(int fromId, int toId) {
+        return weightOf(index(fromId), index(toId));
+    }
+
+    // Rows rebuilt by Dijkstra in the last update; the rest were relaxed or untouched
+    public int lastRecomputedRows() {
+        return lastRecomputedRows;
+    }
+
+    public void setWeight(int fromId, int toId, double meters) {
+        batch().setWeight(fromId, toId, meters).apply();
+    }
+
+    public void removeLink(int fromId, int toId) {
+        setWeight(fromId, toId, Double.POSITIVE_INFINITY);
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    // Changes collected and applied in one update; a later change to the same link wins
+    public final class Batch {
+        private final Map<Long, Double> changes = new LinkedHashMap<>();
+
+        private Batch() {}
+
+        public Batch setWeight(int fromId, int toId, double meters) {
+            if (Double.isNaN(meters) || meters < 0) throw new IllegalArgumentException("Invalid weight " + meters);
+            int u = index(fromId);
+            int v = index(toId);
+            if (u == v) throw new IllegalArgumentException("Self-loops do not affect distances");
+            changes.put(((long) u << 32) | v, meters);
+            return this;
+        }
+
+        public Batch removeLink(int fromId, int toId) {
+            return setWeight(fromId, toId, Double.POSITIVE_INFINITY);
+        }
+
+        public void apply() {
+            List<long[]> decreases = new ArrayList<>();
+            boolean[] affected = new boolean[n];
+            boolean anyIncrease = false;
+            for (Map.Entry<Long, Double> c : changes.entrySet()) {
+                int u = (int) (c.getKey() >>> 32);
+                int v = (int) (long) c.getKey();
+                double now = c.getValue();
+                double before = weightOf(u, v);
+                if (now < before) {
+                    decreases.add(new long[]{u, v, Double.doubleToLongBits(now)});
+                } else if (now > before) {
+                    markTightSources(u, v, before, affected);
+                    setLink(u, v, now);
+                    anyIncrease = true;
+                }
+            }
+            changes.clear();
+            // Rows not marked use no dearer link, so they are still exact without the decreases
+            lastRecomputedRows = anyIncrease ? recompute(affected) : 0;
+            for (long[] dec : decreases) {
+                int u = (int) dec[0];
+                int v = (int) dec[1];
+                double w = Double.longBitsToDouble(dec[2]);
+                setLink(u, v, w);
+                relax(u, v, w);
+            }
+        }
+    }
+
+    // Rows i that reach v through the link (u, v) at its old weight
+    private void markTightSources(int u, int v, double before, boolean[] affected) {
+        for (int i = 0; i < n; i++) {
+            double iu = d[i][u];
+            if (iu == Double.POSITIVE_INFINITY) continue;
+            double iv = d[i][v];
+            if (iu + before <= iv + EPS * Math.max(1.0, iv)) affected[i] = true;
+        }
+    }
+
+    private int recompute(boolean[] affected) {
+        int[] rows = IntStream.range(0, n).filter(i -> affected[i]).toArray();
+        IntStream.of(rows).parallel().forEach(this::dijkstraRow);
+        return rows.length;
+    }
+
+    private void dijkstraRow(int s) {
+        SearchContext ctx = SearchContext.local(n);
+        IndexedHeap heap = ctx.heap;
+        ctx.label(s, 0.0, -1, -1);
+        heap.pushOrDecrease(s, 0.0);
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            ctx.settle(u);
+            double du = ctx.dist[u];
+            int[] to = out[u];
+            double[] w = weight[u];
+            for (int i = 0, deg = degree[u]; i < deg; i++) {
+                int v = to[i];
+                if (ctx.isSettled(v)) continue;
+                double alt = du + w[i];
+                if (alt < ctx.dist(v)) {
+                    ctx.label(v, alt, u, -1);
+                    heap.pushOrDecrease(v, alt);
+                }
+            }
+        }
+        double[] row = d[s];
+        for (int v = 0; v < n; v++) row[v] = ctx.dist(v);
+    }
+
+    // Paths through the cheaper link (u, v). Row v never improves through it (that would be a
+    // cycle back to v) and each row reads only itself and row v, so rows run in parallel.
+    private void relax(int u, int v, double w) {
+        if (d[u][v] <= w) return;
+        double[] rowV = d[v];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            double[] rowI = d[i];
+            double through = rowI[u] + w;
+            if (through >= rowI[v]) return;
+            for (int j = 0; j < n; j++) rowI[j] = Math.min(rowI[j], through + rowV[j]);
+        });
+    }
+
+    private double weightOf(int u, int v) {
+        int slot = slot(u, v);
+        return slot < 0 ? Double.POSITIVE_INFINITY : weight[u][slot];
+    }
+
+    private void setLink(int u, int v, double w) {
+        int slot = slot(u, v);
+        if (w == Double.POSITIVE_INFINITY) {
+            if (slot < 0) return;
+            int last = --degree[u];
+            out[u][slot] = out[u][last];
+            weight[u][slot] = weight[u][last];
+        } else if (slot < 0) {
+            add(u, v, w);
+        } else {
+            weight[u][slot] = w;
+        }
+    }
+
+    private void add(int u, int v, double w) {
+        if (degree[u] == out[u].length) {
+            out[u] = Arrays.copyOf(out[u], degree[u] * 2);
+            weight[u] = Arrays.copyOf(weight[u], degree[u] * 2);
+        }
+        out[u][degree[u]] = v;
+        weight[u][degree[u]] = w;
+        degree[u]++;
+    }
+
+    private int slot(int u, int v) {
+        int[] to = out[u];
+        for (int i = 0, deg = degree[u]; i < deg; i++) if (to[i] == v) return i;
+        return -1;
+    }
+
+    private int index(int id) {
+        int i = graph.indexOf(id);
+        if (i < 0) throw new IllegalArgumentException("Unknown node " + id);
+        return i;
+    }
+}
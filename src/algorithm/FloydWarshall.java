@@ -1,41 +1,187 @@
 package algorithm;
 
-import model.Edge;
+import model.CompactGraph;
 import model.Graph;
+import route.DistanceMatrix;
+import route.WeightMode;
+import util.QueryMetrics;
 
-import java.util.*;
+import java.util.stream.IntStream;
 
+// All-pairs shortest distances. Rows and columns follow the CompactGraph index order
+// (ascending node id).
+//
+// BLOCKED is tiled Floyd–Warshall: per pivot block, the diagonal tile is closed first, then
+// its row and column tiles in parallel, then every remaining tile in parallel. Tiles are
+// sized to stay in cache, and the min-plus inner loop runs Math.min over two distinct row
+// arrays, which is the shape HotSpot turns into vector min instructions. REPEATED_DIJKSTRA
+// runs one search per source in parallel and wins on sparse graphs; AUTO picks by estimated work.
 public final class FloydWarshall {
+    public enum Engine { AUTO, BLOCKED, REPEATED_DIJKSTRA }
+
+    private static final int BLOCK = 128;
+    private static final QueryMetrics.Series METRICS = QueryMetrics.register("FloydWarshall", WeightMode.DISTANCE);
+
     public static double[][] allPairsShortestDistance(Graph g) {
-        int n = g.idToNode.size();
-        List<Integer> ids = new ArrayList<>(g.idToNode.keySet());
-        Collections.sort(ids);
-        Map<Integer, Integer> idx = new HashMap<>();
-        for (int i = 0; i < ids.size(); i++) idx.put(ids.get(i), i);
+        return allPairsShortestDistance(g.compact());
+    }
+
+    public static double[][] allPairsShortestDistance(CompactGraph g) {
+        return matrix(g, Engine.AUTO, false).toArray();
+    }
+
+    public static DistanceMatrix matrix(CompactGraph g, Engine engine, boolean singlePrecision) {
+        if (engine == Engine.AUTO) engine = prefersDijkstra(g) ? Engine.REPEATED_DIJKSTRA : Engine.BLOCKED;
+        SearchStats stats = SearchStats.local();
+        stats.begin();
+        try {
+            DistanceMatrix d = DistanceMatrix.of(g.nodeCount, g.nodeCount, singlePrecision);
+            if (engine == Engine.REPEATED_DIJKSTRA) {
+                repeatedDijkstra(g, d);
+            } else if (singlePrecision) {
+                blocked(g, d.floatRows());
+            } else {
+                blocked(g, d.doubleRows());
+            }
+            return d;
+        } finally {
+            stats.end(METRICS);
+        }
+    }
+
+    // n heap searches cost about n (m + n) log n against n^3 vectorized min-plus steps
+    private static boolean prefersDijkstra(CompactGraph g) {
+        double n = g.nodeCount;
+        double log = Math.max(1.0, Math.log(n) / Math.log(2));
+        return (g.edgeCount + n) * log * 16 < n * n;
+    }
 
-        double[][] dist = new double[n][n];
-        for (int i = 0; i < n; i++) Arrays.fill(dist[i], Double.POSITIVE_INFINITY);
-        for (int i = 0; i < n; i++) dist[i][i] = 0.0;
+    private static void repeatedDijkstra(CompactGraph g, DistanceMatrix d) {
+        int n = g.nodeCount;
+        double[] weights = g.distanceMeters;
+        IntStream.range(0, n).parallel().forEach(s -> {
+            SearchContext ctx = SearchContext.local(n);
+            Dijkstra.oneToAll(g, ctx, s, weights, false, null);
+            for (int v = 0; v < n; v++) {
+                if (ctx.isReached(v)) d.set(s, v, ctx.dist(v));
+            }
+        });
+    }
 
-        for (int u : ids) {
-            int iu = idx.get(u);
-            for (Edge e : g.neighbors(u)) {
-                int iv = idx.get(e.toId);
-                dist[iu][iv] = Math.min(dist[iu][iv], e.distanceMeters);
+    private static void blocked(CompactGraph g, double[][] d) {
+        int n = g.nodeCount;
+        for (int u = 0; u < n; u++) {
+            d[u][u] = 0.0;
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                d[u][v] = Math.min(d[u][v], g.distanceMeters[e]);
             }
         }
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        for (int kb = 0; kb < blocks; kb++) {
+            int k = kb;
+            pivot(d, n, k, k, k);
+            IntStream.range(0, 2 * blocks).parallel().forEach(t -> {
+                int other = t >> 1;
+                if (other == k) return;
+                if ((t & 1) == 0) pivot(d, n, k, other, k);
+                else pivot(d, n, other, k, k);
+            });
+            IntStream.range(0, blocks * blocks).parallel().forEach(t -> {
+                int ib = t / blocks;
+                int jb = t % blocks;
+                if (ib != k && jb != k) update(d, n, ib, jb, k);
+            });
+        }
+    }
 
-        for (int k = 0; k < n; k++) {
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    if (dist[i][k] + dist[k][j] < dist[i][j]) {
-                        dist[i][j] = dist[i][k] + dist[k][j];
-                    }
-                }
+    // Tile (ib, jb) against pivot block kb when the tile shares a row or column with it:
+    // k must be the outer loop because the tile feeds its own updates
+    private static void pivot(double[][] d, int n, int ib, int jb, int kb) {
+        int k0 = kb * BLOCK, k1 = Math.min(n, k0 + BLOCK);
+        int i0 = ib * BLOCK, i1 = Math.min(n, i0 + BLOCK);
+        int j0 = jb * BLOCK, j1 = Math.min(n, j0 + BLOCK);
+        for (int k = k0; k < k1; k++) {
+            double[] rowK = d[k];
+            for (int i = i0; i < i1; i++) {
+                double[] rowI = d[i];
+                double ik = rowI[k];
+                if (ik == Double.POSITIVE_INFINITY) continue;
+                for (int j = j0; j < j1; j++) rowI[j] = Math.min(rowI[j], ik + rowK[j]);
             }
         }
-        return dist;
     }
-}
 
+    // Tile (ib, jb) off the pivot row and column: its inputs are fixed for this round
+    private static void update(double[][] d, int n, int ib, int jb, int kb) {
+        int k0 = kb * BLOCK, k1 = Math.min(n, k0 + BLOCK);
+        int i0 = ib * BLOCK, i1 = Math.min(n, i0 + BLOCK);
+        int j0 = jb * BLOCK, j1 = Math.min(n, j0 + BLOCK);
+        for (int i = i0; i < i1; i++) {
+            double[] rowI = d[i];
+            for (int k = k0; k < k1; k++) {
+                double ik = rowI[k];
+                if (ik == Double.POSITIVE_INFINITY) continue;
+                double[] rowK = d[k];
+                for (int j = j0; j < j1; j++) rowI[j] = Math.min(rowI[j], ik + rowK[j]);
+            }
+        }
+    }
+
+    private static void blocked(CompactGraph g, float[][] d) {
+        int n = g.nodeCount;
+        for (int u = 0; u < n; u++) {
+            d[u][u] = 0f;
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                d[u][v] = Math.min(d[u][v], (float) g.distanceMeters[e]);
+            }
+        }
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        for (int kb = 0; kb < blocks; kb++) {
+            int k = kb;
+            pivot(d, n, k, k, k);
+            IntStream.range(0, 2 * blocks).parallel().forEach(t -> {
+                int other = t >> 1;
+                if (other == k) return;
+                if ((t & 1) == 0) pivot(d, n, k, other, k);
+                else pivot(d, n, other, k, k);
+            });
+            IntStream.range(0, blocks * blocks).parallel().forEach(t -> {
+                int ib = t / blocks;
+                int jb = t % blocks;
+                if (ib != k && jb != k) update(d, n, ib, jb, k);
+            });
+        }
+    }
 
+    private static void pivot(float[][] d, int n, int ib, int jb, int kb) {
+        int k0 = kb * BLOCK, k1 = Math.min(n, k0 + BLOCK);
+        int i0 = ib * BLOCK, i1 = Math.min(n, i0 + BLOCK);
+        int j0 = jb * BLOCK, j1 = Math.min(n, j0 + BLOCK);
+        for (int k = k0; k < k1; k++) {
+            float[] rowK = d[k];
+            for (int i = i0; i < i1; i++) {
+                float[] rowI = d[i];
+                float ik = rowI[k];
+                if (ik == Float.POSITIVE_INFINITY) continue;
+                for (int j = j0; j < j1; j++) rowI[j] = Math.min(rowI[j], ik + rowK[j]);
+            }
+        }
+    }
+
+    private static void update(float[][] d, int n, int ib, int jb, int kb) {
+        int k0 = kb * BLOCK, k1 = Math.min(n, k0 + BLOCK);
+        int i0 = ib * BLOCK, i1 = Math.min(n, i0 + BLOCK);
+        int j0 = jb * BLOCK, j1 = Math.min(n, j0 + BLOCK);
+        for (int i = i0; i < i1; i++) {
+            float[] rowI = d[i];
+            for (int k = k0; k < k1; k++) {
+                float ik = rowI[k];
+                if (ik == Float.POSITIVE_INFINITY) continue;
+                float[] rowK = d[k];
+                for (int j = j0; j < j1; j++) rowI[j] = Math.min(rowI[j], ik + rowK[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package algorithm;
+
+import model.CompactGraph;
+import route.WeightMode;
+
+// Lower bound on the remaining cost from node index v to node index t, used to guide A*.
+// Implementations must be consistent for the mode's lower-bound edge weights.
+public interface Heuristic {
+    double estimate(CompactGraph g, int v, int t, WeightMode mode);
+
+    Heuristic ZERO = (g, v, t, mode) -> 0.0;
+
+    // The original estimate: raw x/y distance, divided by 80 m/min for TIME. Only a lower bound
+    // where nothing beats walking pace, as on the built-in campus graph, so it is opt-in; road
+    // graphs need scaledEuclidean or Landmarks.
+    Heuristic FIXED_SPEED = AStar::heuristic;
+
+    // Euclidean distance scaled by the smallest weight per unit of x/y distance over all edges,
+    // so it is a valid bound whatever units x/y are in. Live factors are left out (they only
+    // slow edges down), so the bound holds for every live snapshot of g.
+    static Heuristic scaledEuclidean(CompactGraph g) {
+        double[] scale = new double[WeightMode.values().length];
+        for (WeightMode mode : WeightMode.values()) {
+            double min = Double.POSITIVE_INFINITY;
+            for (int u = 0; u < g.nodeCount; u++) {
+                for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                    double len = g.euclidean(u, g.targets[e]);
+                    double bound = mode == WeightMode.DISTANCE
+                            ? g.distanceMeters[e]
+                            : g.baseMinutes[e] * g.profiles.minFactor(g.profile[e]);
+                    if (len > 0) min = Math.min(min, bound / len);
+                }
+            }
+            scale[mode.ordinal()] = min == Double.POSITIVE_INFINITY ? 0.0 : min;
+        }
+        return (graph, v, t, mode) -> graph.euclidean(v, t) * scale[mode.ordinal()];
+    }
+}
@@ -0,0 +1,134 @@
+package algorithm;
+
+import java.util.Arrays;
+
+// 4-ary min-heap over int items 0..capacity-1 with decrease-key.
+// Keys live next to the items by heap position; pos[item] is -1 when the item is not queued.
+public final class IndexedHeap {
+    private static final int ARITY = 4;
+
+    private int[] items = new int[16];
+    private double[] keys = new double[16];
+    private int[] pos = new int[0];
+    private int size;
+
+    public void ensureCapacity(int capacity) {
+        if (pos.length >= capacity) return;
+        int old = pos.length;
+        pos = Arrays.copyOf(pos, capacity);
+        Arrays.fill(pos, old, capacity, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int item) {
+        return pos[item] >= 0;
+    }
+
+    public double minKey() {
+        return keys[0];
+    }
+
+    public int peek() {
+        return items[0];
+    }
+
+    public double keyOf(int item) {
+        return keys[pos[item]];
+    }
+
+    // Inserts item or lowers its key; returns false if it is queued with a key <= key already
+    public boolean pushOrDecrease(int item, double key) {
+        int p = pos[item];
+        if (p < 0) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            siftUp(size++, item, key);
+            return true;
+        }
+        if (key >= keys[p]) return false;
+        siftUp(p, item, key);
+        return true;
+    }
+
+    // Sets the key of a queued item in either direction
+    public void update(int item, double key) {
+        int p = pos[item];
+        if (key < keys[p]) siftUp(p, item, key);
+        else siftDown(p, item, key);
+    }
+
+    public int pop() {
+        int top = items[0];
+        pos[top] = -1;
+        int last = --size;
+        if (last > 0) siftDown(0, items[last], keys[last]);
+        return top;
+    }
+
+    // Empties the heap, copying the queued items into out; returns how many there were
+    public int drainTo(int[] out) {
+        int n = size;
+        for (int i = 0; i < n; i++) {
+            out[i] = items[i];
+            pos[items[i]] = -1;
+        }
+        size = 0;
+        return n;
+    }
+
+    // Empties the heap in O(size), leaving every pos slot at -1 for the next query
+    public void clear() {
+        for (int i = 0; i < size; i++) pos[items[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int p, int item, double key) {
+        while (p > 0) {
+            int parent = (p - 1) / ARITY;
+            double pk = keys[parent];
+            if (pk <= key) break;
+            int pi = items[parent];
+            items[p] = pi;
+            keys[p] = pk;
+            pos[pi] = p;
+            p = parent;
+        }
+        items[p] = item;
+        keys[p] = key;
+        pos[item] = p;
+    }
+
+    private void siftDown(int p, int item, double key) {
+        while (true) {
+            int first = p * ARITY + 1;
+            if (first >= size) break;
+            int end = Math.min(first + ARITY, size);
+            int best = first;
+            double bestKey = keys[first];
+            for (int c = first + 1; c < end; c++) {
+                if (keys[c] < bestKey) {
+                    bestKey = keys[c];
+                    best = c;
+                }
+            }
+            if (bestKey >= key) break;
+            int bi = items[best];
+            items[p] = bi;
+            keys[p] = bestKey;
+            pos[bi] = p;
+            p = best;
+        }
+        items[p] = item;
+        keys[p] = key;
+        pos[item] = p;
+    }
+}
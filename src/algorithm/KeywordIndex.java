@@ -0,0 +1,260 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import model.GraphFile;
+import model.Node;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+// Inverted index from normalized name and tag tokens to node ids. Tokens are lowercased,
+// accent-stripped runs of letters and digits. Terms are kept sorted, so every term with a
+// given prefix is one contiguous range found by binary search, and each term's postings are a
+// sorted, duplicate-free int array.
+//
+// A query matches a node when each of its tokens is a prefix of one of the node's tokens
+// ("bank" matches "Banking Square", "balme lib" matches "Balme Library"). A query token that
+// has synonyms also matches whatever its synonyms match.
+public final class KeywordIndex {
+    public static final Map<String, List<String>> DEFAULT_SYNONYMS = Map.of("banking", List.of("bank"));
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Map<Graph, KeywordIndex> CACHE = new WeakHashMap<>();
+
+    private final String[] terms;
+    private final int[] postingOffsets;
+    private final int[] postings;
+    private final Map<String, String[]> synonyms;
+    // The Graph snapshot this index was built from, or null when built from elsewhere
+    private final CompactGraph snapshot;
+
+    private KeywordIndex(String[] terms, int[] postingOffsets, int[] postings, Map<String, String[]> synonyms,
+                         CompactGraph snapshot) {
+        this.terms = terms;
+        this.postingOffsets = postingOffsets;
+        this.postings = postings;
+        this.synonyms = synonyms;
+        this.snapshot = snapshot;
+    }
+
+    // Shared index for g with the default synonyms, rebuilt when g's nodes change
+    public static KeywordIndex of(Graph g) {
+        CompactGraph current = g.compact();
+        synchronized (CACHE) {
+            KeywordIndex index = CACHE.get(g);
+            if (index == null || index.snapshot != current) {
+                index = build(g, DEFAULT_SYNONYMS);
+                CACHE.put(g, index);
+            }
+            return index;
+        }
+    }
+
+    public static KeywordIndex build(Graph g, Map<String, List<String>> synonyms) {
+        Builder b = new Builder();
+        for (Node node : g.idToNode.values()) b.add(node.id, node.name, node.tags);
+        return b.build(synonyms, g.compact());
+    }
+
+    public static KeywordIndex build(GraphFile file, Map<String, List<String>> synonyms) {
+        Builder b = new Builder();
+        CompactGraph c = file.graph;
+        for (int i = 0; i < c.nodeCount; i++) b.add(c.ids[i], file.name(i), file.tags(i));
+        return b.build(synonyms, null);
+    }
+
+    // Sorted ids of the nodes matching query; empty if the query has no tokens
+    public int[] lookup(String query) {
+        List<String> tokens = tokens(query);
+        if (tokens.isEmpty()) return new int[0];
+        int[] result = null;
+        for (String token : tokens) {
+            int[] ids = matchToken(token);
+            result = result == null ? ids : intersect(result, ids);
+            if (result.length == 0) break;
+        }
+        return result;
+    }
+
+    public boolean matches(String query, int nodeId) {
+        return Arrays.binarySearch(lookup(query), nodeId) >= 0;
+    }
+
+    // Up to limit indexed terms starting with prefix, most frequent first, for autocomplete
+    public List<String> complete(String prefix, int limit) {
+        String p = normalize(prefix);
+        int lo = lowerBound(p);
+        int hi = prefixEnd(p, lo);
+        List<Integer> range = new ArrayList<>(hi - lo);
+        for (int t = lo; t < hi; t++) range.add(t);
+        range.sort((a, b) -> {
+            int byCount = Integer.compare(postingCount(b), postingCount(a));
+            return byCount != 0 ? byCount : terms[a].compareTo(terms[b]);
+        });
+        List<String> out = new ArrayList<>(Math.min(limit, range.size()));
+        for (int i = 0; i < range.size() && i < limit; i++) out.add(terms[range.get(i)]);
+        return out;
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    private int[] matchToken(String token) {
+        String[] alternatives = synonyms.get(token);
+        int[] ids = prefixPostings(token);
+        if (alternatives != null) {
+            for (String alt : alternatives) ids = union(ids, prefixPostings(alt));
+        }
+        return ids;
+    }
+
+    private int[] prefixPostings(String prefix) {
+        int lo = lowerBound(prefix);
+        int hi = prefixEnd(prefix, lo);
+        if (hi - lo == 1) return Arrays.copyOfRange(postings, postingOffsets[lo], postingOffsets[lo + 1]);
+        int[] all = Arrays.copyOfRange(postings, postingOffsets[lo], postingOffsets[hi]);
+        Arrays.sort(all);
+        return dedupe(all);
+    }
+
+    private int postingCount(int term) {
+        return postingOffsets[term + 1] - postingOffsets[term];
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int prefixEnd(String prefix, int from) {
+        int lo = from;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].startsWith(prefix)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    static String normalize(String s) {
+        if (s == null) return "";
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                String stripped = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+                return stripped.toLowerCase(Locale.ROOT);
+            }
+        }
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokens(String s) {
+        String n = normalize(s);
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= n.length(); i++) {
+            boolean word = i < n.length() && Character.isLetterOrDigit(n.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(n.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length || j < b.length) {
+            int v;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) v = a[i++];
+            else if (i >= a.length || b[j] < a[i]) v = b[j++];
+            else {
+                v = a[i++];
+                j++;
+            }
+            out[k++] = v;
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    private static int[] dedupe(int[] sorted) {
+        int k = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[k++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, k);
+    }
+
+    private static final class Builder {
+        private final Map<String, List<Integer>> postings = new HashMap<>();
+
+        void add(int id, String name, Collection<String> tags) {
+            Set<String> own = new LinkedHashSet<>(tokens(name));
+            for (String tag : tags == null ? Collections.<String>emptySet() : tags) own.addAll(tokens(tag));
+            for (String token : own) postings.computeIfAbsent(token, k -> new ArrayList<>()).add(id);
+        }
+
+        KeywordIndex build(Map<String, List<String>> synonymMap, CompactGraph snapshot) {
+            String[] terms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            int[] offsets = new int[terms.length + 1];
+            for (int t = 0; t < terms.length; t++) offsets[t + 1] = offsets[t] + postings.get(terms[t]).size();
+            int[] flat = new int[offsets[terms.length]];
+            for (int t = 0; t < terms.length; t++) {
+                List<Integer> ids = postings.get(terms[t]);
+                for (int i = 0; i < ids.size(); i++) flat[offsets[t] + i] = ids.get(i);
+                Arrays.sort(flat, offsets[t], offsets[t + 1]);
+            }
+            Map<String, String[]> synonyms = new HashMap<>();
+            if (synonymMap != null) {
+                for (Map.Entry<String, List<String>> e : synonymMap.entrySet()) {
+                    List<String> alts = new ArrayList<>();
+                    for (String alt : e.getValue()) alts.addAll(tokens(alt));
+                    synonyms.put(normalize(e.getKey()), alts.toArray(new String[0]));
+                }
+            }
+            return new KeywordIndex(terms, offsets, flat, synonyms, snapshot);
+        }
+    }
+}
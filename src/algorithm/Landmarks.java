@@ -0,0 +1,181 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import route.WeightMode;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// ALT heuristic: exact lower-bound distances to and from a few landmarks give, by the
+// triangle inequality, d(v, t) >= max(d(L, t) - d(L, v), d(v, L) - d(t, L)).
+// TIME tables use lower-bound weights, so the bound also holds for time-dependent queries.
+public final class Landmarks implements Heuristic {
+    public enum Selection { FARTHEST, AVOID }
+
+    // Largest array length the JVM reliably allocates
+    private static final int MAX_TABLE = Integer.MAX_VALUE - 8;
+
+    public final CompactGraph graph;
+    public final int[] landmarks;
+    private final int count;
+    // Per mode, node-major: from[v * count + l] = d(landmark l, v), to[v * count + l] = d(v, landmark l)
+    private final float[][] from;
+    private final float[][] to;
+
+    private Landmarks(CompactGraph graph, int[] landmarks, float[][] from, float[][] to) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.count = landmarks.length;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static Landmarks build(Graph g, int count, Selection selection) {
+        return build(g.compact(), count, selection, 1L);
+    }
+
+    public static Landmarks build(CompactGraph g, int count, Selection selection, long seed) {
+        int n = g.nodeCount;
+        int k = Math.min(count, n);
+        int modes = WeightMode.values().length;
+        // No nodes (or no landmarks asked for): an empty table, whose bound is always 0
+        if (k <= 0) return new Landmarks(g, new int[0], new float[modes][0], new float[modes][0]);
+        // One row of k entries per node; the v * k offsets in bound and fill stay in int range
+        // only while the whole table fits in one array
+        if ((long) n * k > MAX_TABLE) {
+            throw new IllegalArgumentException(
+                    k + " landmarks over " + n + " nodes need more than " + MAX_TABLE + " table entries");
+        }
+        float[][] from = new float[modes][n * k];
+        float[][] to = new float[modes][from[0].length];
+        double[][] weights = new double[modes][];
+        for (WeightMode mode : WeightMode.values()) weights[mode.ordinal()] = Paths.lowerBounds(g, mode);
+
+        // Selection runs on DISTANCE weights and fills the DISTANCE tables as it goes
+        int dist = WeightMode.DISTANCE.ordinal();
+        int[] chosen = selection == Selection.FARTHEST
+                ? farthest(g, k, weights[dist], seed)
+                : avoid(g, k, weights[dist], from[dist], to[dist], seed);
+
+        boolean distanceDone = selection == Selection.AVOID;
+        IntStream.range(0, modes * k * 2).parallel().forEach(task -> {
+            int mode = task / (k * 2);
+            int l = (task / 2) % k;
+            boolean reverse = (task & 1) == 1;
+            if (mode == dist && distanceDone) return;
+            fill(g, weights[mode], chosen[l], l, k, reverse ? to[mode] : from[mode], reverse);
+        });
+        return new Landmarks(g, chosen, from, to);
+    }
+
+    @Override
+    public double estimate(CompactGraph g, int v, int t, WeightMode mode) {
+        return bound(from[mode.ordinal()], to[mode.ordinal()], count, count, v, t);
+    }
+
+    // Float tables round both ways, so each difference gives back two ulps to stay admissible
+    private static double bound(float[] from, float[] to, int k, int used, int v, int t) {
+        double best = 0.0;
+        int vb = v * k;
+        int tb = t * k;
+        for (int l = 0; l < used; l++) {
+            float lv = from[vb + l];
+            float lt = from[tb + l];
+            if (lv != Float.POSITIVE_INFINITY && lt != Float.POSITIVE_INFINITY) {
+                best = Math.max(best, (double) lt - lv - Math.ulp(lt) - Math.ulp(lv));
+            }
+            float vl = to[vb + l];
+            float tl = to[tb + l];
+            if (vl != Float.POSITIVE_INFINITY && tl != Float.POSITIVE_INFINITY) {
+                best = Math.max(best, (double) vl - tl - Math.ulp(vl) - Math.ulp(tl));
+            }
+        }
+        return best;
+    }
+
+    private static void fill(CompactGraph g, double[] weights, int landmark, int l, int k, float[] table, boolean reverse) {
+        SearchContext ctx = SearchContext.local(g.nodeCount);
+        Dijkstra.oneToAll(g, ctx, landmark, weights, reverse, null);
+        for (int v = 0; v < g.nodeCount; v++) table[v * k + l] = (float) ctx.dist(v);
+    }
+
+    // Each landmark is the node farthest from all landmarks chosen so far
+    private static int[] farthest(CompactGraph g, int k, double[] weights, long seed) {
+        int n = g.nodeCount;
+        int[] chosen = new int[k];
+        SearchContext ctx = new SearchContext();
+        int start = new Random(seed).nextInt(n);
+        for (int i = 0; i < k; i++) {
+            ctx.reset(n);
+            int source = i == 0 ? start : chosen[0];
+            for (int j = 1; j < i; j++) {
+                ctx.label(chosen[j], 0.0, -1, -1);
+                ctx.heap.pushOrDecrease(chosen[j], 0.0);
+            }
+            Dijkstra.oneToAll(g, ctx, source, weights, false, null);
+            int best = -1;
+            double bestDist = -1.0;
+            for (int v = 0; v < n; v++) {
+                double d = ctx.dist(v);
+                if (d != Double.POSITIVE_INFINITY && d > bestDist && !contains(chosen, i, v)) {
+                    bestDist = d;
+                    best = v;
+                }
+            }
+            chosen[i] = best >= 0 ? best : firstUnused(chosen, i, n);
+        }
+        return chosen;
+    }
+
+    // Goldberg and Werneck's avoid: grow a shortest-path tree from a random root, weight each
+    // node by how badly the current landmarks bound it, and descend the heaviest subtree that
+    // holds no landmark to a leaf
+    private static int[] avoid(CompactGraph g, int k, double[] weights, float[] from, float[] to, long seed) {
+        int n = g.nodeCount;
+        int[] chosen = new int[k];
+        SearchContext ctx = new SearchContext();
+        Random rnd = new Random(seed);
+        int[] order = new int[n];
+        double[] size = new double[n];
+        int[] bestChild = new int[n];
+        boolean[] blocked = new boolean[n];
+        for (int i = 0; i < k; i++) {
+            int root = rnd.nextInt(n);
+            ctx.reset(n);
+            int settled = Dijkstra.oneToAll(g, ctx, root, weights, false, order);
+            for (int j = 0; j < settled; j++) {
+                int v = order[j];
+                size[v] = ctx.dist(v) - bound(from, to, k, i, root, v);
+                bestChild[v] = -1;
+                blocked[v] = contains(chosen, i, v);
+            }
+            for (int j = settled - 1; j > 0; j--) {
+                int v = order[j];
+                int p = ctx.parentNode(v);
+                if (blocked[v]) {
+                    blocked[p] = true;
+                    continue;
+                }
+                size[p] += size[v];
+                if (bestChild[p] < 0 || size[v] > size[bestChild[p]]) bestChild[p] = v;
+            }
+            int cur = root;
+            while (bestChild[cur] >= 0 && !blocked[bestChild[cur]]) cur = bestChild[cur];
+            chosen[i] = contains(chosen, i, cur) ? firstUnused(chosen, i, n) : cur;
+            fill(g, weights, chosen[i], i, k, from, false);
+            fill(g, weights, chosen[i], i, k, to, true);
+        }
+        return chosen;
+    }
+
+    private static boolean contains(int[] chosen, int count, int v) {
+        for (int i = 0; i < count; i++) if (chosen[i] == v) return true;
+        return false;
+    }
+
+    private static int firstUnused(int[] chosen, int count, int n) {
+        for (int v = 0; v < n; v++) if (!contains(chosen, count, v)) return v;
+        return 0;
+    }
+}
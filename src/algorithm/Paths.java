@@ -0,0 +1,111 @@
+package algorithm;
+
+import model.CompactGraph;
+import route.Route;
+import route.WeightMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Shared helpers for the searches that run on a CompactGraph
+final class Paths {
+    private Paths() {}
+
+    static double weight(CompactGraph g, int e, WeightMode mode, long departSecond, double minutesIntoTrip) {
+        if (mode == WeightMode.DISTANCE) return g.distanceMeters[e];
+        return g.travelMinutes(e, departSecond, minutesIntoTrip);
+    }
+
+    // Time-independent lower bound on weight(...) for the same edge
+    static double lowerBound(CompactGraph g, int e, WeightMode mode) {
+        if (mode == WeightMode.DISTANCE) return g.distanceMeters[e];
+        return g.minTravelMinutes(e);
+    }
+
+    static double[] lowerBounds(CompactGraph g, WeightMode mode) {
+        double[] w = new double[g.edgeCount];
+        for (int e = 0; e < w.length; e++) w[e] = lowerBound(g, e, mode);
+        return w;
+    }
+
+    // Walks parentEdge/parentNode back from goal and totals the path from departSecond
+    static Route toRoute(CompactGraph g, int[] parentNode, int[] parentEdge, int start, int goal, long departSecond) {
+        int hops = 0;
+        for (int cur = goal; cur != start; cur = parentNode[cur]) hops++;
+        int[] edges = new int[hops];
+        List<Integer> seq = new ArrayList<>(hops + 1);
+        int cur = goal;
+        seq.add(g.ids[cur]);
+        for (int i = hops - 1; i >= 0; i--) {
+            edges[i] = parentEdge[cur];
+            cur = parentNode[cur];
+            seq.add(g.ids[cur]);
+        }
+        Collections.reverse(seq);
+        return toRoute(g, seq, edges, departSecond);
+    }
+
+    // Joins the forward tree path s -> meet with the backward tree path meet -> t
+    static Route join(CompactGraph g, SearchContext fwd, SearchContext bwd, int s, int meet, int t, long departSecond) {
+        int hops = 0;
+        for (int cur = meet; cur != s; cur = fwd.parentNode[cur]) hops++;
+        int forwardHops = hops;
+        for (int cur = meet; cur != t; cur = bwd.parentNode[cur]) hops++;
+        int[] edges = new int[hops];
+        List<Integer> seq = new ArrayList<>(hops + 1);
+        int cur = meet;
+        for (int i = forwardHops - 1; i >= 0; i--) {
+            edges[i] = fwd.parentEdge[cur];
+            cur = fwd.parentNode[cur];
+        }
+        for (int i = 0; i < forwardHops; i++) {
+            seq.add(g.ids[cur]);
+            cur = g.targets[edges[i]];
+        }
+        seq.add(g.ids[meet]);
+        for (int i = forwardHops; i < hops; i++) {
+            edges[i] = bwd.parentEdge[cur];
+            cur = bwd.parentNode[cur];
+            seq.add(g.ids[cur]);
+        }
+        return toRoute(g, seq, edges, departSecond);
+    }
+
+    // Edge slots along a node id sequence, taking the cheapest parallel edge at each hop;
+    // null if some hop has no edge in g
+    static int[] edgesOf(CompactGraph g, List<Integer> seq, WeightMode mode, long departSecond) {
+        int[] edges = new int[Math.max(0, seq.size() - 1)];
+        double elapsed = 0.0;
+        for (int i = 0; i < edges.length; i++) {
+            int u = g.indexOf(seq.get(i));
+            int v = g.indexOf(seq.get(i + 1));
+            if (u < 0 || v < 0) return null;
+            int best = -1;
+            double bestWeight = Double.POSITIVE_INFINITY;
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                if (g.targets[e] != v) continue;
+                double w = weight(g, e, mode, departSecond, elapsed);
+                if (w < bestWeight) {
+                    bestWeight = w;
+                    best = e;
+                }
+            }
+            if (best < 0) return null;
+            edges[i] = best;
+            elapsed += bestWeight;
+        }
+        return edges;
+    }
+
+    // Totals use the same clock as the searches, so a TIME route's minutes equal its search cost
+    static Route toRoute(CompactGraph g, List<Integer> seq, int[] edges, long departSecond) {
+        double distance = 0.0;
+        double minutes = 0.0;
+        for (int e : edges) {
+            distance += g.distanceMeters[e];
+            minutes += g.travelMinutes(e, departSecond, minutes);
+        }
+        return new Route(seq, distance, minutes);
+    }
+}
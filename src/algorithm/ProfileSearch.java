@@ -0,0 +1,287 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import model.TrafficProfiles;
+import route.Profile;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Earliest arrival for every departure in a window from a single label-correcting search over
+// piecewise-linear arrival functions. Each node's label is its arrival time as a function of
+// the departure time; relaxing an edge composes the label with the edge's travel-time profile
+// and merging keeps the pointwise minimum. Every piece of a label remembers the edge it came
+// through, so routes change only at breakpoints of the goal's function.
+public final class ProfileSearch {
+    private static final double EPS = 1e-9;
+
+    public static Profile profile(Graph g, int startId, int goalId, LocalTime from, LocalTime to) {
+        return profile(g.compact(), startId, goalId, from, to);
+    }
+
+    // A window whose end is before its start runs past midnight
+    public static Profile profile(CompactGraph g, int startId, int goalId, LocalTime from, LocalTime to) {
+        int s = g.indexOf(startId);
+        int t = g.indexOf(goalId);
+        if (s < 0 || t < 0 || !g.connectivity().mayReach(s, t)) return null;
+        double begin = from.toSecondOfDay() / 60.0;
+        double end = to.toSecondOfDay() / 60.0;
+        if (end < begin) end += TrafficProfiles.MINUTES_PER_DAY;
+
+        Label[] labels = new Label[g.nodeCount];
+        labels[s] = begin == end
+                ? new Label(new double[]{begin}, new double[]{begin}, new int[]{-1}, new int[]{-1})
+                : new Label(new double[]{begin, end}, new double[]{begin, end}, new int[]{-1, -1}, new int[]{-1, -1});
+        // Keys are a label's first arrival (its minimum, as FIFO labels never decrease) plus a
+        // lower bound on the time left to t, so once the smallest key reaches the goal's latest
+        // arrival no label can still improve the goal's function
+        SearchContext toGoal = SearchContext.localBackward(g.nodeCount);
+        Dijkstra.oneToAll(g, toGoal, t, Paths.lowerBounds(g, WeightMode.TIME), true, null);
+        if (!toGoal.isReached(s)) return null;
+        IndexedHeap heap = SearchContext.local(g.nodeCount).heap;
+        heap.pushOrDecrease(s, begin + toGoal.dist(s));
+        Builder scratch = new Builder();
+
+        while (!heap.isEmpty()) {
+            double bound = labels[t] == null ? Double.POSITIVE_INFINITY : labels[t].latest();
+            if (heap.minKey() >= bound) break;
+            int u = heap.pop();
+            Label lu = labels[u];
+            for (int e = g.offsets[u], endEdge = g.offsets[u + 1]; e < endEdge; e++) {
+                int v = g.targets[e];
+                if (v == s || !toGoal.isReached(v)) continue;
+                Label candidate = compose(g, lu, u, e, scratch);
+                double key = candidate.earliest() + toGoal.dist(v);
+                if (key >= bound || (labels[t] != null && dominated(candidate, toGoal.dist(v), labels[t]))) continue;
+                Label merged = labels[v] == null ? candidate : merge(labels[v], candidate, scratch);
+                if (merged == null) continue;
+                labels[v] = merged;
+                key = merged.earliest() + toGoal.dist(v);
+                if (heap.contains(v)) heap.update(v, key);
+                else heap.pushOrDecrease(v, key);
+            }
+        }
+        if (labels[t] == null) return null;
+        return toProfile(g, labels, s, t);
+    }
+
+    private static Profile toProfile(CompactGraph g, Label[] labels, int s, int t) {
+        Label lt = labels[t];
+        List<Profile.Change> changes = new ArrayList<>();
+        String previous = null;
+        int pieces = Math.max(1, lt.size() - 1);
+        for (int i = 0; i < pieces; i++) {
+            double at = lt.size() == 1 ? lt.xs[0] : (lt.xs[i] + lt.xs[i + 1]) / 2;
+            int[] edges = edgesAt(g, labels, s, t, at);
+            String signature = Arrays.toString(edges);
+            if (signature.equals(previous)) continue;
+            previous = signature;
+            double depart = lt.xs[i];
+            changes.add(new Profile.Change(depart, route(g, s, edges, depart)));
+        }
+        return new Profile(lt.xs, lt.ys, changes);
+    }
+
+    // Follows the pieces covering departure time at back from t
+    private static int[] edgesAt(CompactGraph g, Label[] labels, int s, int t, double at) {
+        int[] path = new int[16];
+        int hops = 0;
+        for (int v = t; v != s; ) {
+            Label lv = labels[v];
+            int i = lv.pieceAt(at);
+            if (hops == path.length) path = Arrays.copyOf(path, hops * 2);
+            path[hops++] = lv.edge[i];
+            v = lv.from[i];
+            if (hops > g.nodeCount) throw new IllegalStateException("Profile labels form a cycle");
+        }
+        int[] edges = new int[hops];
+        for (int i = 0; i < hops; i++) edges[i] = path[hops - 1 - i];
+        return edges;
+    }
+
+    private static Route route(CompactGraph g, int s, int[] edges, double departMinute) {
+        List<Integer> seq = new ArrayList<>(edges.length + 1);
+        seq.add(g.ids[s]);
+        for (int e : edges) seq.add(g.ids[g.targets[e]]);
+        return Paths.toRoute(g, seq, edges, Math.round(departMinute * 60));
+    }
+
+    // Arrival at the head of e given arrival label lu at its tail. Travel time is linear in the
+    // entry time between profile breakpoints, so the composition needs the label's own
+    // breakpoints plus the departures that reach e exactly at a profile breakpoint.
+    private static Label compose(CompactGraph g, Label lu, int u, int e, Builder out) {
+        TrafficProfiles profiles = g.profiles;
+        int p = g.profile[e];
+        int first = profiles.offsets[p];
+        int last = profiles.offsets[p + 1] - 1;
+        out.clear();
+        for (int i = 0; i < lu.size(); i++) {
+            out.add(lu.xs[i], arrive(g, e, lu.ys[i]), u, e);
+            if (i + 1 == lu.size() || first == last) continue;
+            double y0 = lu.ys[i];
+            double y1 = lu.ys[i + 1];
+            if (y1 - y0 <= EPS) continue;
+            long day = (long) Math.floor(y0 / TrafficProfiles.MINUTES_PER_DAY);
+            for (; day * TrafficProfiles.MINUTES_PER_DAY < y1; day++) {
+                for (int j = first; j <= last; j++) {
+                    double b = profiles.minutes[j] + day * TrafficProfiles.MINUTES_PER_DAY;
+                    if (b <= y0 + EPS || b >= y1 - EPS) continue;
+                    double x = lu.xs[i] + (b - y0) / (y1 - y0) * (lu.xs[i + 1] - lu.xs[i]);
+                    out.add(x, arrive(g, e, b), u, e);
+                }
+            }
+        }
+        return out.build();
+    }
+
+    private static double arrive(CompactGraph g, int e, double minute) {
+        return minute + g.baseMinutes[e] * g.trafficMultiplier(e, minute);
+    }
+
+    // Pointwise minimum of a and b, or null when b is nowhere better than a
+    private static Label merge(Label a, Label b, Builder out) {
+        out.clear();
+        boolean improved = false;
+        int ia = 0;
+        int ib = 0;
+        double x = Math.min(a.xs[0], b.xs[0]);
+        while (true) {
+            ia = a.pieceAt(x, ia);
+            ib = b.pieceAt(x, ib);
+            double va = a.valueAt(x, ia);
+            double vb = b.valueAt(x, ib);
+            double next = Math.min(ia + 1 < a.size() ? a.xs[ia + 1] : Double.POSITIVE_INFINITY,
+                    ib + 1 < b.size() ? b.xs[ib + 1] : Double.POSITIVE_INFINITY);
+            double na = next == Double.POSITIVE_INFINITY ? va : a.valueAt(next, ia);
+            double nb = next == Double.POSITIVE_INFINITY ? vb : b.valueAt(next, ib);
+            double d0 = va - vb;
+            double d1 = na - nb;
+            // On a tie the piece goes to whichever is lower at its far end
+            boolean useB = Math.abs(d0) <= EPS ? d1 > EPS : d0 > 0;
+            improved |= useB;
+            if (useB) out.add(x, vb, b.from[ib], b.edge[ib]);
+            else out.add(x, va, a.from[ia], a.edge[ia]);
+            if (next == Double.POSITIVE_INFINITY) break;
+
+            // Both are linear on (x, next); add the crossing if they swap order there
+            if ((d0 > EPS && d1 < -EPS) || (d0 < -EPS && d1 > EPS)) {
+                double cross = x + (next - x) * d0 / (d0 - d1);
+                if (cross > x + EPS && cross < next - EPS) {
+                    double vc = va + (na - va) * (cross - x) / (next - x);
+                    boolean afterB = d1 > 0;
+                    improved |= afterB;
+                    if (afterB) out.add(cross, vc, b.from[ib], b.edge[ib]);
+                    else out.add(cross, vc, a.from[ia], a.edge[ia]);
+                }
+            }
+            x = next;
+        }
+        return improved ? out.build() : null;
+    }
+
+    // True when a plus the lower bound offset arrives no earlier than goal at every departure,
+    // checked at the breakpoints of both since both are linear in between
+    private static boolean dominated(Label a, double offset, Label goal) {
+        int ia = 0;
+        int ig = 0;
+        for (int i = 0; i < a.size(); i++) {
+            ig = goal.pieceAt(a.xs[i], ig);
+            if (a.ys[i] + offset < goal.valueAt(a.xs[i], ig) - EPS) return false;
+        }
+        for (int i = 0; i < goal.size(); i++) {
+            ia = a.pieceAt(goal.xs[i], ia);
+            if (a.valueAt(goal.xs[i], ia) + offset < goal.ys[i] - EPS) return false;
+        }
+        return true;
+    }
+
+    // Arrival label: ys[i] at departure xs[i], linear in between; piece i, which starts at
+    // xs[i], was reached over edge[i] from node from[i]
+    private static final class Label {
+        final double[] xs;
+        final double[] ys;
+        final int[] from;
+        final int[] edge;
+
+        Label(double[] xs, double[] ys, int[] from, int[] edge) {
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.edge = edge;
+        }
+
+        int size() {
+            return xs.length;
+        }
+
+        double earliest() {
+            return ys[0];
+        }
+
+        double latest() {
+            return ys[ys.length - 1];
+        }
+
+        int pieceAt(double x) {
+            return pieceAt(x, 0);
+        }
+
+        // Last breakpoint at or before x, scanning forward from hint
+        int pieceAt(double x, int hint) {
+            int i = hint;
+            while (i + 1 < xs.length && xs[i + 1] <= x) i++;
+            return i;
+        }
+
+        double valueAt(double x, int i) {
+            if (i + 1 == xs.length || x <= xs[i]) return ys[i];
+            double t = (x - xs[i]) / (xs[i + 1] - xs[i]);
+            return ys[i] + (ys[i + 1] - ys[i]) * t;
+        }
+    }
+
+    // Growable breakpoint list that drops a point when it sits on the line through its
+    // neighbours and both of its pieces came over the same edge
+    private static final class Builder {
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        int[] from = new int[16];
+        int[] edge = new int[16];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(double x, double y, int f, int e) {
+            if (size > 0 && x <= xs[size - 1] + EPS) return;
+            if (size >= 2 && edge[size - 1] == edge[size - 2] && from[size - 1] == from[size - 2]) {
+                double x0 = xs[size - 2];
+                double y0 = ys[size - 2];
+                double onLine = y0 + (y - y0) * (xs[size - 1] - x0) / (x - x0);
+                if (Math.abs(onLine - ys[size - 1]) <= EPS) size--;
+            }
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+                from = Arrays.copyOf(from, size * 2);
+                edge = Arrays.copyOf(edge, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            from[size] = f;
+            edge[size] = e;
+            size++;
+        }
+
+        Label build() {
+            return new Label(Arrays.copyOf(xs, size), Arrays.copyOf(ys, size),
+                    Arrays.copyOf(from, size), Arrays.copyOf(edge, size));
+        }
+    }
+}
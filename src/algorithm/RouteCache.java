@@ -0,0 +1,456 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+import model.TrafficOverlay;
+import route.Route;
+import route.WeightMode;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Size-bounded, thread-safe cache of routes in front of the point-to-point searches.
+// Keys are (start, goal, mode, regime): for TIME the regime is the stretch of the day between
+// two traffic profile breakpoints, and a hit re-totals the cached path for the actual
+// departure. Eviction is segmented LRU: new entries go on probation and move to the protected
+// segment when hit again, so a burst of one-off queries cannot flush the popular pairs.
+// Lookups go through a ConcurrentHashMap; the recency lists are only reordered when their
+// lock is free, so a hit never waits on another thread.
+public final class RouteCache {
+    @FunctionalInterface
+    public interface Router {
+        Route route(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart);
+    }
+
+    // What App uses: Dijkstra for distance, A* for travel time
+    public static final Router DEFAULT_ROUTER = (g, s, t, mode, depart) -> mode == WeightMode.DISTANCE
+            ? Dijkstra.shortestPath(g, s, t, mode, depart)
+            : AStar.shortestPath(g, s, t, mode, depart);
+
+    // Past this many added or changed edges, checking each entry costs more than recomputing
+    private static final int MAX_CHECKED_CHANGES = 64;
+    private static final double EPS = 1e-9;
+
+    private final int capacity;
+    private final int protectedCapacity;
+    private final Router router;
+    private final ConcurrentHashMap<Key, Entry> map = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Entry probation = Entry.sentinel();
+    private final Entry protectedSegment = Entry.sentinel();
+    private int probationSize;
+    private int protectedSize;
+
+    private volatile CompactGraph graph;
+    private volatile double[] regimeBounds = new double[0];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public RouteCache(int capacity) {
+        this(capacity, DEFAULT_ROUTER);
+    }
+
+    public RouteCache(int capacity, Router router) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.protectedCapacity = Math.max(1, capacity * 4 / 5);
+        this.router = router;
+    }
+
+    public Route shortestPath(Graph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        return shortestPath(g.compact(), startId, goalId, mode, depart);
+    }
+
+    public Route shortestPath(CompactGraph g, int startId, int goalId, WeightMode mode, LocalTime depart) {
+        CompactGraph current = graph;
+        if (g != current) {
+            // A query still running on an older live snapshot goes straight to the router, so
+            // in-flight queries on two snapshots cannot flip the cache back and forth
+            if (!supersedes(g, current)) {
+                misses.increment();
+                return router.route(g, startId, goalId, mode, depart);
+            }
+            rebind(g);
+        }
+        long departSecond = depart.toSecondOfDay();
+        Key key = new Key(startId, goalId, mode, mode == WeightMode.DISTANCE ? -1 : regimeOf(departSecond));
+        Entry entry = map.get(key);
+        if (entry != null && entry.graph == g) {
+            hits.increment();
+            if (lock.tryLock()) {
+                try {
+                    if (entry.prev != null) promote(entry);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return entry.routeAt(g, mode, departSecond);
+        }
+
+        misses.increment();
+        Route route = router.route(g, startId, goalId, mode, depart);
+        if (route == null) return null;
+        int[] edges = Paths.edgesOf(g, route.nodeSequence, mode, departSecond);
+        if (edges == null) return route;
+        Entry fresh = new Entry(key, g, route, edges, departSecond);
+        lock.lock();
+        try {
+            if (graph != g) return route;
+            // Another thread's miss on the same key, or an entry from an older snapshot
+            Entry old = map.put(key, fresh);
+            if (old != null) remove(old);
+            linkFirst(probation, fresh);
+            probationSize++;
+            while (probationSize + protectedSize > capacity) evict();
+        } finally {
+            lock.unlock();
+        }
+        return route;
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            invalidations.add(map.size());
+            map.clear();
+            probation.prev = probation.next = probation;
+            protectedSegment.prev = protectedSegment.next = protectedSegment;
+            probationSize = protectedSize = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops the entries whose route uses an edge from fromId to toId, e.g. after it got slower
+    public void invalidateEdge(int fromId, int toId) {
+        lock.lock();
+        try {
+            for (Entry e : new ArrayList<>(map.values())) {
+                List<Integer> seq = e.route.nodeSequence;
+                for (int i = 0; i + 1 < seq.size(); i++) {
+                    if (seq.get(i) == fromId && seq.get(i + 1) == toId) {
+                        remove(e);
+                        invalidations.increment();
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long invalidations;
+
+        Stats(long hits, long misses, long evictions, long invalidations) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d",
+                    hits, misses, hitRate(), evictions, invalidations);
+        }
+    }
+
+    // Index of the regime containing departSecond; the stretch after the last breakpoint wraps
+    // around midnight into the one before the first, so both map to 0
+    private int regimeOf(long departSecond) {
+        double[] bounds = regimeBounds;
+        double minute = (departSecond % 86_400L) / 60.0;
+        int i = Arrays.binarySearch(bounds, minute);
+        int regime = i >= 0 ? i + 1 : -i - 1;
+        return regime == bounds.length ? 0 : regime;
+    }
+
+    private static double[] regimeBounds(CompactGraph g) {
+        float[] minutes = g.profiles.minutes;
+        double[] bounds = new double[minutes.length];
+        for (int i = 0; i < minutes.length; i++) bounds[i] = minutes[i];
+        Arrays.sort(bounds);
+        int n = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            if (n == 0 || bounds[i] != bounds[n - 1]) bounds[n++] = bounds[i];
+        }
+        return Arrays.copyOf(bounds, n);
+    }
+
+    // Moves the cache onto a new snapshot, keeping the entries the change provably cannot
+    // affect: every hop still exists at the same cost, and no added or changed edge could
+    // open a cheaper route by the euclidean lower bound
+    private void rebind(CompactGraph g) {
+        lock.lock();
+        try {
+            if (graph == g || !supersedes(g, graph)) return;
+            CompactGraph old = graph;
+            graph = g;
+            regimeBounds = regimeBounds(g);
+            if (old == null || map.isEmpty()) return;
+            if (!Arrays.equals(regimeBounds(old), regimeBounds)) {
+                invalidateAll();
+                return;
+            }
+            int[] changed = changedEdges(old, g);
+            if (changed == null) {
+                invalidateAll();
+                return;
+            }
+            Heuristic bound = changed.length == 0 ? null : Heuristic.scaledEuclidean(g);
+            for (Entry e : new ArrayList<>(map.values())) {
+                WeightMode mode = e.key.mode;
+                int[] edges = Paths.edgesOf(g, e.route.nodeSequence, mode, e.departSecond);
+                if (edges == null || Math.abs(cost(g, edges, mode, e.departSecond) - e.cost) > EPS
+                        || (bound != null && mayImprove(g, bound, changed, e))) {
+                    remove(e);
+                    invalidations.increment();
+                    continue;
+                }
+                Entry moved = new Entry(e.key, g, e.route, edges, e.departSecond);
+                map.put(e.key, moved);
+                replace(e, moved);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether the cache should move from current to g: always for a different graph, and for
+    // another live snapshot of the same graph only if its overlay is newer
+    private static boolean supersedes(CompactGraph g, CompactGraph current) {
+        if (current == null || !sameBase(current, g)) return true;
+        return version(g) > version(current);
+    }
+
+    private static long version(CompactGraph g) {
+        return g.traffic == null ? 0L : g.traffic.version;
+    }
+
+    // Same nodes, edges and profiles, possibly under different live-traffic overlays
+    private static boolean sameBase(CompactGraph old, CompactGraph g) {
+        return old.targets == g.targets && old.distanceMeters == g.distanceMeters && old.baseMinutes == g.baseMinutes
+                && old.profile == g.profile && old.profiles == g.profiles;
+    }
+
+    // Edge slots of g with no identical edge in old, or null if there are too many to check
+    private static int[] changedEdges(CompactGraph old, CompactGraph g) {
+        if (sameBase(old, g)) {
+            // One base snapshot under two live-traffic overlays. A slower edge can only make the
+            // routes through it dearer, which the per-entry cost check catches, so only edges
+            // that got faster could open a cheaper route.
+            TrafficOverlay before = old.traffic != null ? old.traffic : TrafficOverlay.none(old.edgeCount);
+            TrafficOverlay after = g.traffic != null ? g.traffic : TrafficOverlay.none(g.edgeCount);
+            return after.relievedEdges(before, MAX_CHECKED_CHANGES);
+        }
+        int[] changed = new int[MAX_CHECKED_CHANGES];
+        int count = 0;
+        for (int u = 0; u < g.nodeCount; u++) {
+            int ou = old.indexOf(g.ids[u]);
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                if (ou >= 0 && hasSameEdge(old, ou, g, e)) continue;
+                if (count == changed.length) return null;
+                changed[count++] = e;
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    private static boolean hasSameEdge(CompactGraph old, int ou, CompactGraph g, int e) {
+        int targetId = g.ids[g.targets[e]];
+        for (int oe = old.offsets[ou]; oe < old.offsets[ou + 1]; oe++) {
+            if (old.ids[old.targets[oe]] == targetId
+                    && old.distanceMeters[oe] == g.distanceMeters[e]
+                    && old.baseMinutes[oe] == g.baseMinutes[e]
+                    && old.liveFactor(oe) == g.liveFactor(e)
+                    && sameProfile(old, oe, g, e)) return true;
+        }
+        return false;
+    }
+
+    private static boolean sameProfile(CompactGraph old, int oe, CompactGraph g, int e) {
+        int op = old.profile[oe];
+        int p = g.profile[e];
+        return Arrays.equals(
+                old.profiles.minutes, old.profiles.offsets[op], old.profiles.offsets[op + 1],
+                g.profiles.minutes, g.profiles.offsets[p], g.profiles.offsets[p + 1])
+                && Arrays.equals(
+                old.profiles.factors, old.profiles.offsets[op], old.profiles.offsets[op + 1],
+                g.profiles.factors, g.profiles.offsets[p], g.profiles.offsets[p + 1]);
+    }
+
+    private static boolean mayImprove(CompactGraph g, Heuristic bound, int[] changed, Entry entry) {
+        int s = g.indexOf(entry.key.startId);
+        int t = g.indexOf(entry.key.goalId);
+        WeightMode mode = entry.key.mode;
+        for (int e : changed) {
+            int u = sourceOf(g, e);
+            int v = g.targets[e];
+            double through = bound.estimate(g, s, u, mode) + Paths.lowerBound(g, e, mode) + bound.estimate(g, v, t, mode);
+            if (through < entry.cost - EPS) return true;
+        }
+        return false;
+    }
+
+    private static int sourceOf(CompactGraph g, int e) {
+        int lo = 0;
+        int hi = g.nodeCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (g.offsets[mid] <= e) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static double cost(CompactGraph g, int[] edges, WeightMode mode, long departSecond) {
+        double total = 0.0;
+        for (int e : edges) total += Paths.weight(g, e, mode, departSecond, total);
+        return total;
+    }
+
+    // Callers hold the lock for everything below
+
+    private void promote(Entry e) {
+        if (e.inProtected) {
+            unlink(e);
+            linkFirst(protectedSegment, e);
+            return;
+        }
+        unlink(e);
+        probationSize--;
+        e.inProtected = true;
+        linkFirst(protectedSegment, e);
+        protectedSize++;
+        if (protectedSize > protectedCapacity) {
+            Entry demoted = protectedSegment.prev;
+            unlink(demoted);
+            protectedSize--;
+            demoted.inProtected = false;
+            linkFirst(probation, demoted);
+            probationSize++;
+        }
+    }
+
+    private void evict() {
+        Entry victim = probation.prev != probation ? probation.prev : protectedSegment.prev;
+        remove(victim);
+        evictions.increment();
+    }
+
+    private void remove(Entry e) {
+        map.remove(e.key, e);
+        if (e.prev == null) return;
+        unlink(e);
+        if (e.inProtected) protectedSize--;
+        else probationSize--;
+    }
+
+    private void replace(Entry old, Entry fresh) {
+        fresh.inProtected = old.inProtected;
+        fresh.prev = old.prev;
+        fresh.next = old.next;
+        old.prev.next = fresh;
+        old.next.prev = fresh;
+        old.prev = old.next = null;
+    }
+
+    private static void linkFirst(Entry head, Entry e) {
+        e.prev = head;
+        e.next = head.next;
+        head.next.prev = e;
+        head.next = e;
+    }
+
+    private static void unlink(Entry e) {
+        if (e.prev == null) return;
+        e.prev.next = e.next;
+        e.next.prev = e.prev;
+        e.prev = e.next = null;
+    }
+
+    private static final class Key {
+        final int startId;
+        final int goalId;
+        final WeightMode mode;
+        final int regime;
+
+        Key(int startId, int goalId, WeightMode mode, int regime) {
+            this.startId = startId;
+            this.goalId = goalId;
+            this.mode = mode;
+            this.regime = regime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return startId == k.startId && goalId == k.goalId && mode == k.mode && regime == k.regime;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * startId + goalId) + mode.ordinal()) + regime;
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final CompactGraph graph;
+        final Route route;
+        final int[] edges;
+        final long departSecond;
+        final double cost;
+        boolean inProtected;
+        Entry prev;
+        Entry next;
+
+        Entry(Key key, CompactGraph graph, Route route, int[] edges, long departSecond) {
+            this.key = key;
+            this.graph = graph;
+            this.route = route;
+            this.edges = edges;
+            this.departSecond = departSecond;
+            this.cost = key == null ? 0.0 : RouteCache.cost(graph, edges, key.mode, departSecond);
+        }
+
+        static Entry sentinel() {
+            Entry e = new Entry(null, null, null, null, 0L);
+            e.prev = e.next = e;
+            return e;
+        }
+
+        // Distance routes do not depend on the clock; travel-time ones are re-totaled
+        Route routeAt(CompactGraph g, WeightMode mode, long depart) {
+            if (mode == WeightMode.DISTANCE || depart == departSecond) return route;
+            return Paths.toRoute(g, route.nodeSequence, edges, depart);
+        }
+    }
+}
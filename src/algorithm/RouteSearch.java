@@ -1,81 +1,125 @@
 package algorithm;
 
+import model.CompactGraph;
+import model.Connectivity;
 import model.Graph;
-import model.Node;
-import model.Edge;
 import route.Route;
 import route.WeightMode;
+import util.QueryLog;
+import util.QueryMetrics;
 
 import java.time.LocalTime;
 import java.util.*;
 
+// Via-node routes: the best start -> mid path followed by the best mid -> goal path departing
+// when the first half arrives. One forward time-dependent search from the start gives every
+// first half; one backward search from the goal over lower-bound weights gives a lower bound
+// on every second half (the exact second half for DISTANCE). Candidates are evaluated in order
+// of that bound and the rest are pruned once the bound exceeds the k-th best route; for TIME
+// the remaining second halves are A* searches guided by the backward distances.
 public final class RouteSearch {
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final QueryMetrics.Series[] METRICS = QueryMetrics.register("RouteSearch");
+
     // Returns up to k routes passing through any node whose name or tag matches keyword
+    // (see KeywordIndex for the matching rules)
     public static List<Route> routesViaKeyword(
             Graph g, int startId, int goalId, String keyword, int k, WeightMode mode, LocalTime depart
     ) {
-        String kw = keyword.toLowerCase(Locale.ROOT);
-        List<Integer> candidateMidpoints = new ArrayList<>();
-        for (Node node : g.idToNode.values()) {
-            if (node.id == startId || node.id == goalId) continue;
-            if (node.name.toLowerCase(Locale.ROOT).contains(kw)) {
-                candidateMidpoints.add(node.id);
-                continue;
-            }
-            for (String tag : node.tags) {
-                if (tag.toLowerCase(Locale.ROOT).contains(kw)) {
-                    candidateMidpoints.add(node.id);
-                    break;
-                }
-            }
-        }
-        if (kw.equals("bank") || kw.equals("banking")) {
-            for (Node n : g.idToNode.values()) {
-                if (n.name.toLowerCase(Locale.ROOT).contains("bank")) {
-                    if (!candidateMidpoints.contains(n.id)) candidateMidpoints.add(n.id);
-                }
-            }
+        return routesViaKeyword(g, KeywordIndex.of(g), startId, goalId, keyword, k, mode, depart);
+    }
+
+    public static List<Route> routesViaKeyword(
+            Graph g, KeywordIndex index, int startId, int goalId, String keyword, int k, WeightMode mode,
+            LocalTime depart
+    ) {
+        return routesViaKeyword(g.compact(), index, startId, goalId, keyword, k, mode, depart);
+    }
+
+    // On a given snapshot of the graph, e.g. one carrying live traffic
+    public static List<Route> routesViaKeyword(
+            CompactGraph c, KeywordIndex index, int startId, int goalId, String keyword, int k, WeightMode mode,
+            LocalTime depart
+    ) {
+        SearchStats stats = SearchStats.local();
+        stats.log(QueryLog.Op.VIA_KEYWORD, mode, startId, goalId, depart, k, keyword);
+        stats.begin();
+        try {
+            return search(c, index, startId, goalId, keyword, k, mode, depart);
+        } finally {
+            stats.end(METRICS[mode.ordinal()]);
         }
+    }
 
-        Set<String> seen = new HashSet<>();
+    private static List<Route> search(
+            CompactGraph c, KeywordIndex index, int startId, int goalId, String keyword, int k, WeightMode mode,
+            LocalTime depart
+    ) {
+        int s = c.indexOf(startId);
+        int t = c.indexOf(goalId);
         List<Route> routes = new ArrayList<>();
-        for (int mid : candidateMidpoints) {
-            Route left = AStar.shortestPath(g, startId, mid, mode, depart);
-            if (left == null) continue;
-            LocalTime t2 = depart.plusMinutes((long) Math.floor(left.totalMinutes));
-            Route right = AStar.shortestPath(g, mid, goalId, mode, t2);
-            if (right == null) continue;
+        Connectivity reach = c.connectivity();
+        if (s < 0 || t < 0 || k <= 0 || !reach.mayReach(s, t)) return routes;
+        long departSecond = depart.toSecondOfDay();
 
-            List<Integer> seq = new ArrayList<>(left.nodeSequence);
-            seq.addAll(right.nodeSequence.subList(1, right.nodeSequence.size()));
-            double distance = left.totalDistanceMeters + right.totalDistanceMeters;
-            double minutes = left.totalMinutes + right.totalMinutes;
+        // Midpoints that cannot be on a start -> goal path are dropped before the searches,
+        // which would otherwise run until their whole component is settled looking for them
+        List<Integer> candidateMidpoints = new ArrayList<>();
+        for (int id : index.lookup(keyword)) {
+            int mid = c.indexOf(id);
+            if (id == startId || id == goalId || mid < 0) continue;
+            if (reach.mayReach(s, mid) && reach.mayReach(mid, t)) candidateMidpoints.add(mid);
+        }
+        // Fallback midpoints: the start's out-neighbours, in adjacency order
+        int[] neighbours = Arrays.stream(c.targets, c.offsets[s], c.offsets[s + 1])
+                .filter(v -> reach.mayReach(v, t))
+                .toArray();
 
-            String sig = seq.toString();
-            if (seen.add(sig)) {
-                routes.add(new Route(seq, distance, minutes));
-            }
+        int[] needed = new int[candidateMidpoints.size() + neighbours.length + 1];
+        int m = 0;
+        for (int v : candidateMidpoints) needed[m++] = v;
+        for (int v : neighbours) needed[m++] = v;
+        needed[m] = t;
+        Arrays.sort(needed);
+
+        Trees trees = new Trees(c, s, t, mode, departSecond, needed);
+
+        // Candidates by lower bound, ties in keyword order; unreachable ones drop out here
+        int count = candidateMidpoints.size();
+        Integer[] order = new Integer[count];
+        double[] bound = new double[count];
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            double b = trees.lowerBound(candidateMidpoints.get(i));
+            if (b == Double.POSITIVE_INFINITY) continue;
+            bound[i] = b;
+            order[live++] = i;
         }
+        Arrays.sort(order, 0, live, Comparator.comparingDouble((Integer i) -> bound[i]).thenComparingInt(i -> i));
+
+        Set<String> seen = new HashSet<>();
+        Route[] byCandidate = new Route[count];
+        double[] best = new double[k];
+        int accepted = 0;
+        for (int o = 0; o < live; o++) {
+            int i = order[o];
+            if (accepted >= k && bound[i] > best[k - 1]) break;
+            Route r = trees.via(candidateMidpoints.get(i));
+            if (r == null || !seen.add(r.nodeSequence.toString())) continue;
+            byCandidate[i] = r;
+            accepted = insertCost(best, accepted, cost(r, mode));
+        }
+        for (Route r : byCandidate) if (r != null) routes.add(r);
 
         if (routes.size() < k) {
-            Route direct = AStar.shortestPath(g, startId, goalId, mode, depart);
+            Route direct = trees.direct();
             if (direct != null && seen.add(direct.nodeSequence.toString())) {
                 routes.add(direct);
             }
-            for (Edge e : g.neighbors(startId)) {
+            for (int mid : neighbours) {
                 if (routes.size() >= k) break;
-                int mid = e.toId;
-                Route left = AStar.shortestPath(g, startId, mid, mode, depart);
-                if (left == null) continue;
-                LocalTime t2 = depart.plusMinutes((long) Math.floor(left.totalMinutes));
-                Route right = AStar.shortestPath(g, mid, goalId, mode, t2);
-                if (right == null) continue;
-                List<Integer> seq = new ArrayList<>(left.nodeSequence);
-                seq.addAll(right.nodeSequence.subList(1, right.nodeSequence.size()));
-                double distance = left.totalDistanceMeters + right.totalDistanceMeters;
-                double minutes = left.totalMinutes + right.totalMinutes;
-                String sig = seq.toString();
-                if (seen.add(sig)) routes.add(new Route(seq, distance, minutes));
+                Route r = trees.via(mid);
+                if (r != null && seen.add(r.nodeSequence.toString())) routes.add(r);
             }
         }
 
@@ -86,6 +130,140 @@ public final class RouteSearch {
         if (routes.size() > k) return new ArrayList<>(routes.subList(0, k));
         return routes;
     }
-}
 
+    private static double cost(Route r, WeightMode mode) {
+        return mode == WeightMode.DISTANCE ? r.totalDistanceMeters : r.totalMinutes;
+    }
+
+    // Keeps the smallest best.length costs in ascending order; returns the new count
+    private static int insertCost(double[] best, int size, double cost) {
+        if (best.length == 0) return 0;
+        if (size == best.length) {
+            if (cost >= best[size - 1]) return size;
+            size--;
+        }
+        int i = size;
+        while (i > 0 && best[i - 1] > cost) {
+            best[i] = best[i - 1];
+            i--;
+        }
+        best[i] = cost;
+        return size + 1;
+    }
+
+    // The forward tree from the start and the backward lower-bound tree into the goal, each
+    // grown until every needed node is settled
+    private static final class Trees {
+        final CompactGraph g;
+        final int s;
+        final int t;
+        final WeightMode mode;
+        final long departSecond;
+        final SearchContext fwd;
+        final SearchContext bwd;
+        // Every node the backward search left unsettled is at least this far from the goal
+        final double radius;
+        final Heuristic toGoal;
+
+        Trees(CompactGraph g, int s, int t, WeightMode mode, long departSecond, int[] needed) {
+            this.g = g;
+            this.s = s;
+            this.t = t;
+            this.mode = mode;
+            this.departSecond = departSecond;
+            fwd = SearchWorkspace.current().via;
+            fwd.reset(g.nodeCount);
+            forward(needed);
+            bwd = SearchContext.localBackward(g.nodeCount);
+            radius = backward(needed);
+            // Consistent: lower-bound distances are, and an unsettled node is at least radius away
+            toGoal = (graph, v, goal, m) -> bwd.isSettled(v) ? bwd.dist[v] : radius;
+        }
 
+        double lowerBound(int mid) {
+            if (!fwd.isSettled(mid) || !bwd.isSettled(mid)) return Double.POSITIVE_INFINITY;
+            return fwd.dist[mid] + bwd.dist[mid];
+        }
+
+        Route direct() {
+            return fwd.isSettled(t) ? Paths.toRoute(g, fwd.parentNode, fwd.parentEdge, s, t, departSecond) : null;
+        }
+
+        // start -> mid from the forward tree, then mid -> goal departing on arrival at mid
+        Route via(int mid) {
+            if (!fwd.isSettled(mid) || !bwd.isSettled(mid)) return null;
+            Route left = Paths.toRoute(g, fwd.parentNode, fwd.parentEdge, s, mid, departSecond);
+            long rightDepart = Math.floorMod(departSecond + Math.round(left.totalMinutes * 60), SECONDS_PER_DAY);
+            Route right;
+            if (mode == WeightMode.DISTANCE) {
+                right = Paths.join(g, fwd, bwd, mid, mid, t, rightDepart);
+            } else {
+                SearchContext ctx = SearchContext.local(g.nodeCount);
+                if (!AStar.search(g, ctx, mid, t, mode, rightDepart, toGoal)) return null;
+                right = ctx.toRoute(g, mid, t, rightDepart);
+            }
+            List<Integer> seq = new ArrayList<>(left.nodeSequence);
+            seq.addAll(right.nodeSequence.subList(1, right.nodeSequence.size()));
+            return new Route(seq, left.totalDistanceMeters + right.totalDistanceMeters,
+                    left.totalMinutes + right.totalMinutes);
+        }
+
+        private void forward(int[] needed) {
+            IndexedHeap heap = fwd.heap;
+            fwd.label(s, 0.0, -1, -1);
+            heap.pushOrDecrease(s, 0.0);
+            int remaining = distinct(needed);
+            while (!heap.isEmpty()) {
+                int u = heap.pop();
+                fwd.settle(u);
+                if (Arrays.binarySearch(needed, u) >= 0 && --remaining == 0) return;
+                double du = fwd.dist[u];
+                fwd.scan(g.offsets[u + 1] - g.offsets[u]);
+                for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                    int v = g.targets[e];
+                    if (fwd.isSettled(v)) continue;
+                    double alt = du + Paths.weight(g, e, mode, departSecond, du);
+                    if (alt < fwd.dist(v)) {
+                        fwd.label(v, alt, u, e);
+                        heap.pushOrDecrease(v, alt);
+                    }
+                }
+            }
+        }
+
+        // Returns the radius reached, or infinity when the search ran out of nodes
+        private double backward(int[] needed) {
+            CompactGraph.Incoming in = g.incoming();
+            IndexedHeap heap = bwd.heap;
+            bwd.label(t, 0.0, -1, -1);
+            heap.pushOrDecrease(t, 0.0);
+            int remaining = distinct(needed);
+            while (!heap.isEmpty()) {
+                int u = heap.pop();
+                bwd.settle(u);
+                if (Arrays.binarySearch(needed, u) >= 0 && --remaining == 0) {
+                    return heap.isEmpty() ? Double.POSITIVE_INFINITY : heap.minKey();
+                }
+                double du = bwd.dist[u];
+                bwd.scan(in.offsets[u + 1] - in.offsets[u]);
+                for (int i = in.offsets[u], end = in.offsets[u + 1]; i < end; i++) {
+                    int v = in.sources[i];
+                    if (bwd.isSettled(v)) continue;
+                    int e = in.edges[i];
+                    double alt = du + Paths.lowerBound(g, e, mode);
+                    if (alt < bwd.dist(v)) {
+                        bwd.label(v, alt, u, e);
+                        heap.pushOrDecrease(v, alt);
+                    }
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+
+        private static int distinct(int[] sorted) {
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) if (i == 0 || sorted[i] != sorted[i - 1]) n++;
+            return n;
+        }
+    }
+}
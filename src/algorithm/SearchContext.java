@@ -0,0 +1,105 @@
+package algorithm;
+
+import model.CompactGraph;
+import route.Route;
+
+import java.util.Arrays;
+
+// Reusable per-thread search state (see SearchWorkspace). Labels are only valid when their
+// stamp equals the current epoch, so starting a query is O(1) instead of re-seeding every node.
+public final class SearchContext {
+    final IndexedHeap heap = new IndexedHeap();
+    private final SearchStats stats;
+    double[] dist = new double[0];
+    int[] parentNode = new int[0];
+    int[] parentEdge = new int[0];
+    int[] scratch = new int[0];
+    private int[] reached = new int[0];
+    private int[] settled = new int[0];
+    private int epoch;
+
+    // A private context, counting into the calling thread's SearchStats
+    public SearchContext() {
+        this(SearchStats.local());
+    }
+
+    SearchContext(SearchStats stats) {
+        this.stats = stats;
+    }
+
+    // The calling thread's context, reset for a query on a graph with n nodes
+    public static SearchContext local(int n) {
+        SearchContext ctx = SearchWorkspace.current().forward;
+        ctx.reset(n);
+        return ctx;
+    }
+
+    // A second per-thread context for the reverse half of bidirectional searches
+    public static SearchContext localBackward(int n) {
+        SearchContext ctx = SearchWorkspace.current().backward;
+        ctx.reset(n);
+        return ctx;
+    }
+
+    public void reset(int n) {
+        if (dist.length < n) {
+            dist = new double[n];
+            parentNode = new int[n];
+            parentEdge = new int[n];
+            scratch = new int[n];
+            reached = new int[n];
+            settled = new int[n];
+            epoch = 0;
+        }
+        heap.ensureCapacity(n);
+        heap.clear();
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            epoch = 1;
+        }
+    }
+
+    public boolean isReached(int v) {
+        return reached[v] == epoch;
+    }
+
+    public double dist(int v) {
+        return reached[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    public int parentNode(int v) {
+        return parentNode[v];
+    }
+
+    public int parentEdge(int v) {
+        return parentEdge[v];
+    }
+
+    void label(int v, double d, int pNode, int pEdge) {
+        if (reached[v] != epoch) stats.reached++;
+        stats.relaxed++;
+        reached[v] = epoch;
+        dist[v] = d;
+        parentNode[v] = pNode;
+        parentEdge[v] = pEdge;
+    }
+
+    public boolean isSettled(int v) {
+        return settled[v] == epoch;
+    }
+
+    void settle(int v) {
+        settled[v] = epoch;
+        stats.settled++;
+    }
+
+    // Counts the out-edges a search is about to look at
+    void scan(int edges) {
+        stats.scanned += edges;
+    }
+
+    Route toRoute(CompactGraph g, int s, int t, long departSecond) {
+        return Paths.toRoute(g, parentNode, parentEdge, s, t, departSecond);
+    }
+}
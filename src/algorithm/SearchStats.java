@@ -0,0 +1,90 @@
+package algorithm;
+
+import route.WeightMode;
+import util.QueryLog;
+import util.QueryMetrics;
+
+import java.time.LocalTime;
+
+// Per-thread search counters, held in the thread's SearchWorkspace. Every SearchContext a
+// thread owns bumps its thread's plain long fields on settle, scan and label, which costs no
+// more than the stores themselves; the public query entry points bracket a query with
+// begin()/end(), which turns the deltas into one QueryMetrics sample and leaves them readable
+// as the thread's last query.
+//
+// Work done for a query on other threads (parallel fan-outs) is not attributed to it.
+public final class SearchStats {
+    private static final int MAX_DEPTH = 8;
+
+    long settled;
+    long scanned;
+    long relaxed;
+    long reached;
+
+    // begin() marks for nested queries: settled, scanned, relaxed, reached, start time
+    private final long[] marks = new long[MAX_DEPTH * 5];
+    private int depth;
+
+    private long lastNanos;
+    private long lastSettled;
+    private long lastScanned;
+    private long lastRelaxed;
+    private long lastReached;
+
+    SearchStats() {}
+
+    public static SearchStats local() {
+        return SearchWorkspace.current().stats;
+    }
+
+    // Appends the call to the query log if one is recording, unless it comes from inside
+    // another query; call before begin()
+    void log(QueryLog.Op op, WeightMode mode, int startId, int goalId, LocalTime depart, int k, String keyword) {
+        if (depth == 0 && QueryLog.recording()) QueryLog.record(op, mode, startId, goalId, depart, k, keyword);
+    }
+
+    void begin() {
+        if (depth < MAX_DEPTH) {
+            int b = depth * 5;
+            marks[b] = settled;
+            marks[b + 1] = scanned;
+            marks[b + 2] = relaxed;
+            marks[b + 3] = reached;
+            marks[b + 4] = System.nanoTime();
+        }
+        depth++;
+    }
+
+    void end(QueryMetrics.Series series) {
+        if (--depth >= MAX_DEPTH) return;
+        int b = depth * 5;
+        lastNanos = System.nanoTime() - marks[b + 4];
+        lastSettled = settled - marks[b];
+        lastScanned = scanned - marks[b + 1];
+        lastRelaxed = relaxed - marks[b + 2];
+        lastReached = reached - marks[b + 3];
+        series.record(lastNanos, lastSettled, lastScanned, lastRelaxed, lastReached, 0L);
+    }
+
+    // The calling thread's most recent instrumented query
+    public long lastNanos() {
+        return lastNanos;
+    }
+
+    public long lastSettled() {
+        return lastSettled;
+    }
+
+    public long lastScanned() {
+        return lastScanned;
+    }
+
+    public long lastRelaxed() {
+        return lastRelaxed;
+    }
+
+    // Nodes the last query labelled at all: its search space, and its queue pushes
+    public long lastSearchSpace() {
+        return lastReached;
+    }
+}
@@ -0,0 +1,70 @@
+package algorithm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Everything the searches keep per thread: the forward, backward and via-search contexts and
+// the SearchStats they count into. A platform thread keeps one workspace for its lifetime.
+// A virtual thread usually serves a single request, so a workspace of its own would rebuild
+// the O(n) context arrays every time; servers that run requests on virtual threads borrow one
+// from a Pool for the length of each request instead.
+public final class SearchWorkspace {
+    private static final ThreadLocal<SearchWorkspace> LOCAL = new ThreadLocal<>();
+
+    final SearchStats stats = new SearchStats();
+    final SearchContext forward = new SearchContext(stats);
+    final SearchContext backward = new SearchContext(stats);
+    // RouteSearch's forward tree, which stays live while A* uses the forward context
+    final SearchContext via = new SearchContext(stats);
+
+    private SearchWorkspace() {}
+
+    // The calling thread's workspace, created on first use unless a lease has bound one
+    static SearchWorkspace current() {
+        SearchWorkspace w = LOCAL.get();
+        if (w == null) {
+            w = new SearchWorkspace();
+            LOCAL.set(w);
+        }
+        return w;
+    }
+
+    // Idle workspaces for short-lived threads. Leases beyond the pool's capacity get a fresh
+    // workspace, which is dropped rather than kept when it comes back to a full pool.
+    public static final class Pool {
+        private final ArrayBlockingQueue<SearchWorkspace> idle;
+
+        public Pool(int capacity) {
+            if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+            this.idle = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // Binds a workspace to the calling thread until the lease is closed
+        public Lease lease() {
+            SearchWorkspace w = idle.poll();
+            return new Lease(this, w != null ? w : new SearchWorkspace());
+        }
+    }
+
+    public static final class Lease implements AutoCloseable {
+        private final Pool pool;
+        private final SearchWorkspace workspace;
+        private final SearchWorkspace previous;
+        private boolean closed;
+
+        private Lease(Pool pool, SearchWorkspace workspace) {
+            this.pool = pool;
+            this.workspace = workspace;
+            this.previous = LOCAL.get();
+            LOCAL.set(workspace);
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            if (previous == null) LOCAL.remove();
+            else LOCAL.set(previous);
+            pool.idle.offer(workspace);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Graph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Nearest-node and nearest-edge lookups by coordinate, over two STR-packed R-trees: one of
+// node points and one of edge segments (straight lines between endpoint coordinates; a
+// two-way road is indexed once). Trees are bulk loaded and immutable, so queries are
+// thread-safe. Each query is a best-first descent ordered by squared distance to the
+// bounding boxes, which visits O(log n) boxes for typical inputs and pops leaves in
+// increasing exact distance, so k-nearest is the first k leaves popped.
+public final class SpatialIndex {
+    private static final int FANOUT = 16;
+
+    // A point snapped onto an edge: fraction 0 is the from node, 1 the to node.
+    // reverseEdge is the slot of the opposite direction of a two-way road, or -1.
+    public static final class Snap {
+        public final int edge;
+        public final int reverseEdge;
+        public final int fromId;
+        public final int toId;
+        public final double fraction;
+        public final double x;
+        public final double y;
+        public final double distance;
+
+        Snap(int edge, int reverseEdge, int fromId, int toId, double fraction, double x, double y, double distance) {
+            this.edge = edge;
+            this.reverseEdge = reverseEdge;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.fraction = fraction;
+            this.x = x;
+            this.y = y;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d -> %d at %.3f (%.1f, %.1f), %.1f away", fromId, toId, fraction, x, y, distance);
+        }
+    }
+
+    public final CompactGraph graph;
+    private final RTree nodes;
+    private final RTree edges;
+    // Indexed edge slot and its reverse slot (or -1), by edge tree item
+    private final int[] edgeSlot;
+    private final int[] reverseSlot;
+
+    private SpatialIndex(CompactGraph graph, RTree nodes, RTree edges, int[] edgeSlot, int[] reverseSlot) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.edgeSlot = edgeSlot;
+        this.reverseSlot = reverseSlot;
+    }
+
+    public static SpatialIndex build(Graph g) {
+        return build(g.compact());
+    }
+
+    public static SpatialIndex build(CompactGraph g) {
+        int n = g.nodeCount;
+        RTree nodes = new RTree(g.x, g.y, g.x, g.y, n);
+
+        int[] slot = new int[g.edgeCount];
+        int[] reverse = new int[g.edgeCount];
+        int count = 0;
+        for (int u = 0; u < n; u++) {
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (v == u) continue;
+                int back = g.edgeBetween(v, u);
+                // The lower-indexed endpoint owns a two-way pair
+                if (back >= 0 && v < u) continue;
+                slot[count] = e;
+                reverse[count] = back;
+                count++;
+            }
+        }
+        double[] minX = new double[count];
+        double[] minY = new double[count];
+        double[] maxX = new double[count];
+        double[] maxY = new double[count];
+        for (int i = 0; i < count; i++) {
+            int u = sourceOf(g, slot[i]);
+            int v = g.targets[slot[i]];
+            minX[i] = Math.min(g.x[u], g.x[v]);
+            maxX[i] = Math.max(g.x[u], g.x[v]);
+            minY[i] = Math.min(g.y[u], g.y[v]);
+            maxY[i] = Math.max(g.y[u], g.y[v]);
+        }
+        RTree edges = new RTree(minX, minY, maxX, maxY, count);
+        return new SpatialIndex(g, nodes, edges, Arrays.copyOf(slot, count), Arrays.copyOf(reverse, count));
+    }
+
+    // Id of the node nearest to (x, y), or -1 if the graph is empty
+    public int nearestNode(double x, double y) {
+        int[] one = nearestNodes(x, y, 1);
+        return one.length == 0 ? -1 : one[0];
+    }
+
+    // Ids of the k nodes nearest to (x, y), nearest first
+    public int[] nearestNodes(double x, double y, int k) {
+        int[] found = new int[Math.min(k, graph.nodeCount)];
+        Query q = new Query(nodes);
+        for (int i = 0; i < found.length; i++) {
+            int item = q.next(x, y, this::nodeDistanceSquared);
+            found[i] = graph.ids[item];
+        }
+        return found;
+    }
+
+    // The point on any edge nearest to (x, y), or null if the graph has no edges
+    public Snap nearestEdge(double x, double y) {
+        if (edgeSlot.length == 0) return null;
+        int item = new Query(edges).next(x, y, this::edgeDistanceSquared);
+        return snapTo(item, x, y);
+    }
+
+    // Nearest node ids for many points at once, in parallel
+    public int[] nearestNodes(double[] xs, double[] ys) {
+        int[] out = new int[xs.length];
+        IntStream.range(0, xs.length).parallel().forEach(i -> out[i] = nearestNode(xs[i], ys[i]));
+        return out;
+    }
+
+    // Edge snaps for many points at once, in parallel
+    public Snap[] snapAll(double[] xs, double[] ys) {
+        Snap[] out = new Snap[xs.length];
+        IntStream.range(0, xs.length).parallel().forEach(i -> out[i] = nearestEdge(xs[i], ys[i]));
+        return out;
+    }
+
+    private double nodeDistanceSquared(int item, double x, double y) {
+        double dx = graph.x[item] - x;
+        double dy = graph.y[item] - y;
+        return dx * dx + dy * dy;
+    }
+
+    private double edgeDistanceSquared(int item, double x, double y) {
+        int e = edgeSlot[item];
+        int u = sourceOf(graph, e);
+        int v = graph.targets[e];
+        double t = fraction(u, v, x, y);
+        double px = graph.x[u] + t * (graph.x[v] - graph.x[u]) - x;
+        double py = graph.y[u] + t * (graph.y[v] - graph.y[u]) - y;
+        return px * px + py * py;
+    }
+
+    private Snap snapTo(int item, double x, double y) {
+        int e = edgeSlot[item];
+        int u = sourceOf(graph, e);
+        int v = graph.targets[e];
+        double t = fraction(u, v, x, y);
+        double sx = graph.x[u] + t * (graph.x[v] - graph.x[u]);
+        double sy = graph.y[u] + t * (graph.y[v] - graph.y[u]);
+        return new Snap(e, reverseSlot[item], graph.ids[u], graph.ids[v], t, sx, sy, Math.hypot(sx - x, sy - y));
+    }
+
+    // Projection of (x, y) onto segment u-v, clamped to [0, 1]
+    private double fraction(int u, int v, double x, double y) {
+        double dx = graph.x[v] - graph.x[u];
+        double dy = graph.y[v] - graph.y[u];
+        double len2 = dx * dx + dy * dy;
+        if (len2 == 0.0) return 0.0;
+        double t = ((x - graph.x[u]) * dx + (y - graph.y[u]) * dy) / len2;
+        return Math.max(0.0, Math.min(1.0, t));
+    }
+
+    private static int sourceOf(CompactGraph g, int e) {
+        int lo = 0;
+        int hi = g.nodeCount - 1;
+        // Last u with offsets[u] <= e
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (g.offsets[mid] <= e) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private interface ItemDistance {
+        double squared(int item, double x, double y);
+    }
+
+    // Packed R-tree. Entries 0..items-1 are the leaves in STR order; every later entry is an
+    // inner box covering the contiguous entry range [first, end) of the level below, and the
+    // last entry is the root.
+    private static final class RTree {
+        final int items;
+        final int root;
+        final double[] minX;
+        final double[] minY;
+        final double[] maxX;
+        final double[] maxY;
+        // Leaves: the item index in first and -1 in end
+        final int[] first;
+        final int[] end;
+
+        RTree(double[] x0, double[] y0, double[] x1, double[] y1, int count) {
+            items = count;
+            int total = count;
+            for (int level = count; level > 1; ) {
+                level = (level + FANOUT - 1) / FANOUT;
+                total += level;
+            }
+            minX = new double[Math.max(total, 1)];
+            minY = new double[minX.length];
+            maxX = new double[minX.length];
+            maxY = new double[minX.length];
+            first = new int[minX.length];
+            end = new int[minX.length];
+
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) order[i] = i;
+            strSort(order, 0, count, x0, y0, x1, y1);
+            for (int i = 0; i < count; i++) {
+                int item = order[i];
+                minX[i] = x0[item];
+                minY[i] = y0[item];
+                maxX[i] = x1[item];
+                maxY[i] = y1[item];
+                first[i] = item;
+                end[i] = -1;
+            }
+
+            int levelStart = 0;
+            int levelSize = count;
+            int next = count;
+            while (levelSize > 1) {
+                // Order this level's entries with STR, then group runs of FANOUT under parents.
+                // Entries only move within their level, so ranges below stay valid.
+                if (levelStart > 0) reorderLevel(levelStart, levelSize);
+                int parents = (levelSize + FANOUT - 1) / FANOUT;
+                for (int p = 0; p < parents; p++) {
+                    int lo = levelStart + p * FANOUT;
+                    int hi = Math.min(levelStart + levelSize, lo + FANOUT);
+                    int at = next + p;
+                    first[at] = lo;
+                    end[at] = hi;
+                    minX[at] = Double.POSITIVE_INFINITY;
+                    minY[at] = Double.POSITIVE_INFINITY;
+                    maxX[at] = Double.NEGATIVE_INFINITY;
+                    maxY[at] = Double.NEGATIVE_INFINITY;
+                    for (int c = lo; c < hi; c++) {
+                        minX[at] = Math.min(minX[at], minX[c]);
+                        minY[at] = Math.min(minY[at], minY[c]);
+                        maxX[at] = Math.max(maxX[at], maxX[c]);
+                        maxY[at] = Math.max(maxY[at], maxY[c]);
+                    }
+                }
+                levelStart = next;
+                levelSize = parents;
+                next += parents;
+            }
+            root = count == 0 ? -1 : next - 1;
+        }
+
+        private void reorderLevel(int start, int size) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = start + i;
+            strSort(order, 0, size, minX, minY, maxX, maxY);
+            double[][] boxes = {minX.clone(), minY.clone(), maxX.clone(), maxY.clone()};
+            int[] f = first.clone();
+            int[] en = end.clone();
+            for (int i = 0; i < size; i++) {
+                int from = order[i];
+                int to = start + i;
+                minX[to] = boxes[0][from];
+                minY[to] = boxes[1][from];
+                maxX[to] = boxes[2][from];
+                maxY[to] = boxes[3][from];
+                first[to] = f[from];
+                end[to] = en[from];
+            }
+        }
+
+        // Sort-Tile-Recursive: sort by centre x, cut into sqrt(P) vertical slices of whole
+        // pages, and sort each slice by centre y
+        private static void strSort(int[] order, int from, int to,
+                                    double[] x0, double[] y0, double[] x1, double[] y1) {
+            int count = to - from;
+            if (count <= FANOUT) return;
+            double[] cx = new double[x0.length];
+            double[] cy = new double[y0.length];
+            for (int i = from; i < to; i++) {
+                int k = order[i];
+                cx[k] = x0[k] + x1[k];
+                cy[k] = y0[k] + y1[k];
+            }
+            sortByKey(order, from, to, cx);
+            int pages = (count + FANOUT - 1) / FANOUT;
+            int slices = (int) Math.ceil(Math.sqrt(pages));
+            int perSlice = ((pages + slices - 1) / slices) * FANOUT;
+            for (int lo = from; lo < to; lo += perSlice) sortByKey(order, lo, Math.min(to, lo + perSlice), cy);
+        }
+
+        private static void sortByKey(int[] idx, int lo, int hi, double[] key) {
+            while (hi - lo > 24) {
+                int mid = (lo + hi) >>> 1;
+                double pivot = median(key[idx[lo]], key[idx[mid]], key[idx[hi - 1]]);
+                int i = lo;
+                int j = hi - 1;
+                while (i <= j) {
+                    while (key[idx[i]] < pivot) i++;
+                    while (key[idx[j]] > pivot) j--;
+                    if (i <= j) {
+                        int t = idx[i];
+                        idx[i] = idx[j];
+                        idx[j] = t;
+                        i++;
+                        j--;
+                    }
+                }
+                // Recurse into the smaller side to bound stack depth
+                if (j + 1 - lo < hi - i) {
+                    sortByKey(idx, lo, j + 1, key);
+                    lo = i;
+                } else {
+                    sortByKey(idx, i, hi, key);
+                    hi = j + 1;
+                }
+            }
+            for (int i = lo + 1; i < hi; i++) {
+                int v = idx[i];
+                double k = key[v];
+                int j = i - 1;
+                while (j >= lo && key[idx[j]] > k) {
+                    idx[j + 1] = idx[j];
+                    j--;
+                }
+                idx[j + 1] = v;
+            }
+        }
+
+        private static double median(double a, double b, double c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+
+        double boxDistanceSquared(int entry, double x, double y) {
+            double dx = Math.max(0.0, Math.max(minX[entry] - x, x - maxX[entry]));
+            double dy = Math.max(0.0, Math.max(minY[entry] - y, y - maxY[entry]));
+            return dx * dx + dy * dy;
+        }
+    }
+
+    // Incremental best-first search: successive next() calls return items in increasing
+    // distance. Leaves are queued under their exact distance, boxes under a lower bound.
+    private static final class Query {
+        final RTree tree;
+        double[] keys = new double[64];
+        int[] entries = new int[64];
+        int size;
+        boolean started;
+
+        Query(RTree tree) {
+            this.tree = tree;
+        }
+
+        int next(double x, double y, ItemDistance distance) {
+            if (!started) {
+                started = true;
+                int root = tree.root;
+                if (root >= 0 && tree.end[root] < 0) push(distance.squared(tree.first[root], x, y), ~root);
+                else if (root >= 0) push(tree.boxDistanceSquared(root, x, y), root);
+            }
+            while (size > 0) {
+                int entry = entries[0];
+                pop();
+                // Leaves are queued negated, under their exact distance
+                if (entry < 0) return tree.first[~entry];
+                for (int c = tree.first[entry]; c < tree.end[entry]; c++) {
+                    if (tree.end[c] < 0) push(distance.squared(tree.first[c], x, y), ~c);
+                    else push(tree.boxDistanceSquared(c, x, y), c);
+                }
+            }
+            throw new IllegalStateException("No more items");
+        }
+
+        private void push(double key, int entry) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                keys[i] = keys[parent];
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+        }
+
+        private void pop() {
+            double key = keys[--size];
+            int entry = entries[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (keys[child] >= key) break;
+                keys[i] = keys[child];
+                entries[i] = entries[child];
+                i = child;
+            }
+            if (size > 0) {
+                keys[i] = key;
+                entries[i] = entry;
+            }
+        }
+    }
+}
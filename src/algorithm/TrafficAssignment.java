@@ -0,0 +1,462 @@
+package algorithm;
+
+import model.CompactGraph;
+import model.Connectivity;
+import model.Graph;
+import model.LiveTraffic;
+import route.WeightMode;
+import util.RoadClass;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+// Flow assignment over the road network: demand routed along edges with capacities, instead
+// of a hand-written cost matrix. Edge costs are static weights for the traffic regime at a
+// sample time of day, as in DistanceTable; capacities are per edge slot, in the same unit per
+// hour as the demand (see capacities()). Everything runs on arrays indexed by edge slot.
+//
+//   minCostFlow  system-optimal shipping: supplies at some nodes, demands at others, any
+//                source may serve any sink, no edge above capacity. Successive shortest
+//                paths with node potentials, so every search is a Dijkstra on nonnegative
+//                reduced costs over the residual network.
+//   equilibrium  user equilibrium for origin-destination trips: every trip takes a path that
+//                is fastest under the congestion all trips cause together. Travel times follow
+//                the BPR curve t = t0 * (1 + 0.15 * (flow / capacity)^4), and Frank-Wolfe
+//                alternates all-or-nothing assignments on the current congested times with a
+//                line search towards them. Origins are searched in parallel, one tree each.
+public final class TrafficAssignment {
+    public static final double BPR_ALPHA = 0.15;
+    public static final double BPR_BETA = 4.0;
+    private static final double EPS = 1e-9;
+    private static final int MERGE_CHUNK = 1 << 14;
+
+    private TrafficAssignment() {}
+
+    // Capacity of each edge slot from the road class with the closest free-flow speed
+    public static double[] capacities(CompactGraph g) {
+        double[] capacity = new double[g.edgeCount];
+        for (int e = 0; e < g.edgeCount; e++) {
+            double kmh = g.baseMinutes[e] > 0 ? g.distanceMeters[e] / g.baseMinutes[e] * 0.06 : Double.POSITIVE_INFINITY;
+            capacity[e] = RoadClass.bySpeed(kmh).capacityPerHour;
+        }
+        return capacity;
+    }
+
+    // Edge costs in the given mode for the traffic regime at that time of day
+    public static double[] costs(CompactGraph g, WeightMode mode, LocalTime regime) {
+        long regimeSecond = regime.toSecondOfDay();
+        double[] cost = new double[g.edgeCount];
+        for (int e = 0; e < g.edgeCount; e++) cost[e] = Paths.weight(g, e, mode, regimeSecond, 0.0);
+        return cost;
+    }
+
+    public static final class Flow {
+        // Flow on each edge slot
+        public final double[] edgeFlow;
+        public final double totalCost;
+        public final double shipped;
+        // Supply or demand that could not be matched, for lack of capacity, connection or a
+        // counterpart (when total supply and demand differ)
+        public final double unshippedSupply;
+        public final double unmetDemand;
+        public final int augmentations;
+
+        Flow(double[] edgeFlow, double totalCost, double shipped, double unshippedSupply, double unmetDemand,
+             int augmentations) {
+            this.edgeFlow = edgeFlow;
+            this.totalCost = totalCost;
+            this.shipped = shipped;
+            this.unshippedSupply = unshippedSupply;
+            this.unmetDemand = unmetDemand;
+            this.augmentations = augmentations;
+        }
+    }
+
+    public static Flow minCostFlow(Graph g, int[] sourceIds, double[] supply, int[] sinkIds, double[] demand,
+                                   WeightMode mode, LocalTime regime) {
+        CompactGraph c = g.compact();
+        return minCostFlow(c, sourceIds, supply, sinkIds, demand, capacities(c), costs(c, mode, regime));
+    }
+
+    // Ships as much as possible, min(total supply, total demand) when capacities allow, at the
+    // least total cost. Costs must be nonnegative; capacities may be infinite. An infinite cost
+    // (an edge closed by live traffic) carries nothing, as if its capacity were zero.
+    public static Flow minCostFlow(CompactGraph g, int[] sourceIds, double[] supply, int[] sinkIds, double[] demand,
+                                   double[] capacity, double[] cost) {
+        int n = g.nodeCount;
+        int m = g.edgeCount;
+        if (sourceIds.length != supply.length || sinkIds.length != demand.length) {
+            throw new IllegalArgumentException("Each source and sink needs one amount");
+        }
+        checkEdgeArray(g, capacity, "capacity");
+        checkEdgeArray(g, cost, "cost");
+        for (int e = 0; e < m; e++) {
+            if (!(cost[e] >= 0)) throw new IllegalArgumentException("Edge cost must be nonnegative: " + cost[e]);
+        }
+        double[] left = amountsByNode(g, sourceIds, supply, "source");
+        double[] need = amountsByNode(g, sinkIds, demand, "sink");
+        int[] sources = IntStream.range(0, n).filter(v -> left[v] > 0).toArray();
+
+        CompactGraph.Incoming in = g.incoming();
+        double[] flow = new double[m];
+        // Virtual super source and super sink
+        int superSource = n;
+        int superSink = n + 1;
+        double[] potential = new double[n + 2];
+        double totalCost = 0;
+        double shipped = 0;
+        int augmentations = 0;
+
+        while (true) {
+            SearchContext ctx = SearchContext.local(n + 2);
+            IndexedHeap heap = ctx.heap;
+            ctx.label(superSource, 0.0, -1, -1);
+            heap.pushOrDecrease(superSource, 0.0);
+            while (!heap.isEmpty()) {
+                int u = heap.pop();
+                ctx.settle(u);
+                if (u == superSink) break;
+                double du = ctx.dist[u];
+                if (u == superSource) {
+                    for (int s : sources) {
+                        if (left[s] > EPS) relax(ctx, s, du + potential[u] - potential[s], u, -1);
+                    }
+                    continue;
+                }
+                ctx.scan(g.degree(u) + in.offsets[u + 1] - in.offsets[u]);
+                for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                    int v = g.targets[e];
+                    if (capacity[e] - flow[e] <= EPS || cost[e] == Double.POSITIVE_INFINITY || ctx.isSettled(v)) continue;
+                    relax(ctx, v, du + cost[e] + potential[u] - potential[v], u, e);
+                }
+                // Residual reverse arcs cancel flow already sent along an edge into u
+                for (int k = in.offsets[u], end = in.offsets[u + 1]; k < end; k++) {
+                    int e = in.edges[k];
+                    int v = in.sources[k];
+                    if (flow[e] <= EPS || ctx.isSettled(v)) continue;
+                    relax(ctx, v, du - cost[e] + potential[u] - potential[v], u, -e - 2);
+                }
+                if (need[u] > EPS) relax(ctx, superSink, du + potential[u] - potential[superSink], u, -1);
+            }
+            if (!ctx.isSettled(superSink)) break;
+
+            // Keeps every residual reduced cost nonnegative for the next search
+            double dt = ctx.dist[superSink];
+            for (int v = 0; v < n + 2; v++) potential[v] += Math.min(ctx.dist(v), dt);
+
+            int sink = ctx.parentNode(superSink);
+            double amount = need[sink];
+            int source = sink;
+            for (int v = sink; ctx.parentNode(v) != superSource; v = ctx.parentNode(v)) {
+                int arc = ctx.parentEdge(v);
+                amount = Math.min(amount, arc >= 0 ? capacity[arc] - flow[arc] : flow[-arc - 2]);
+                source = ctx.parentNode(v);
+            }
+            amount = Math.min(amount, left[source]);
+            for (int v = sink; v != source; v = ctx.parentNode(v)) {
+                int arc = ctx.parentEdge(v);
+                if (arc >= 0) {
+                    flow[arc] += amount;
+                    totalCost += amount * cost[arc];
+                } else {
+                    flow[-arc - 2] -= amount;
+                    totalCost -= amount * cost[-arc - 2];
+                }
+            }
+            left[source] -= amount;
+            need[sink] -= amount;
+            shipped += amount;
+            augmentations++;
+        }
+        double unshipped = 0;
+        double unmet = 0;
+        for (int v = 0; v < n; v++) {
+            unshipped += Math.max(0.0, left[v]);
+            unmet += Math.max(0.0, need[v]);
+        }
+        for (int e = 0; e < m; e++) if (flow[e] < EPS) flow[e] = 0.0;
+        return new Flow(flow, totalCost, shipped, unshipped, unmet, augmentations);
+    }
+
+    private static void relax(SearchContext ctx, int v, double d, int u, int arc) {
+        // Reduced costs are nonnegative up to rounding
+        double alt = Math.max(d, ctx.dist[u]);
+        if (alt < ctx.dist(v)) {
+            ctx.label(v, alt, u, arc);
+            ctx.heap.pushOrDecrease(v, alt);
+        }
+    }
+
+    public static final class Equilibrium {
+        public final double[] edgeFlow;
+        // Congested and free-flow travel minutes of each edge slot
+        public final double[] minutes;
+        public final double[] freeFlowMinutes;
+        public final int iterations;
+        // (total travel time - total shortest-path time) / total travel time; 0 at equilibrium
+        public final double relativeGap;
+        public final double totalTravelMinutes;
+        // Trips whose destination cannot be reached from their origin
+        public final double unassignedTrips;
+        private final CompactGraph graph;
+
+        Equilibrium(CompactGraph graph, double[] edgeFlow, double[] minutes, double[] freeFlowMinutes, int iterations,
+                    double relativeGap, double totalTravelMinutes, double unassignedTrips) {
+            this.graph = graph;
+            this.edgeFlow = edgeFlow;
+            this.minutes = minutes;
+            this.freeFlowMinutes = freeFlowMinutes;
+            this.iterations = iterations;
+            this.relativeGap = relativeGap;
+            this.totalTravelMinutes = totalTravelMinutes;
+            this.unassignedTrips = unassignedTrips;
+        }
+
+        // Congestion as live traffic factors for the edges it slows (factor above 1), on top
+        // of any live factor the graph already had
+        public CompactGraph applyTo(LiveTraffic live) {
+            if (live.base().edgeCount != graph.edgeCount) {
+                throw new IllegalArgumentException("Live traffic is for a different graph");
+            }
+            int[] edges = new int[graph.edgeCount];
+            double[] factors = new double[graph.edgeCount];
+            int count = 0;
+            for (int e = 0; e < graph.edgeCount; e++) {
+                if (freeFlowMinutes[e] <= 0 || freeFlowMinutes[e] == Double.POSITIVE_INFINITY) continue;
+                double slowdown = minutes[e] / freeFlowMinutes[e];
+                if (slowdown <= 1.0 + 1e-6) continue;
+                edges[count] = e;
+                factors[count++] = graph.liveFactor(e) * slowdown;
+            }
+            return live.apply(Arrays.copyOf(edges, count), Arrays.copyOf(factors, count));
+        }
+    }
+
+    public static Equilibrium equilibrium(Graph g, int[] originIds, int[] destinationIds, double[] trips,
+                                          LocalTime regime, int maxIterations, double targetGap) {
+        CompactGraph c = g.compact();
+        return equilibrium(c, originIds, destinationIds, trips, capacities(c), regime, maxIterations, targetGap);
+    }
+
+    // Trip i goes from originIds[i] to destinationIds[i], trips[i] per hour. Stops after
+    // maxIterations line searches or once the relative gap is below targetGap (1e-4 is tight
+    // for planning; 1e-2 is a quick look).
+    public static Equilibrium equilibrium(CompactGraph g, int[] originIds, int[] destinationIds, double[] trips,
+                                          double[] capacity, LocalTime regime, int maxIterations, double targetGap) {
+        if (originIds.length != destinationIds.length || originIds.length != trips.length) {
+            throw new IllegalArgumentException("Each trip needs an origin, a destination and an amount");
+        }
+        checkEdgeArray(g, capacity, "capacity");
+        for (double c : capacity) {
+            if (!(c > 0)) throw new IllegalArgumentException("Capacities must be positive: " + c);
+        }
+        int m = g.edgeCount;
+        double[] t0 = costs(g, WeightMode.TIME, regime);
+        Demand demand = new Demand(g, originIds, destinationIds, trips);
+
+        double[] minutes = Arrays.copyOf(t0, m);
+        double[] x = new double[m];
+        double unassigned = demand.assign(g, minutes, x);
+        double[] y = new double[m];
+        int iterations = 0;
+        double gap = Double.POSITIVE_INFINITY;
+        double total = 0;
+        while (true) {
+            for (int e = 0; e < m; e++) minutes[e] = bpr(t0[e], x[e], capacity[e]);
+            total = 0;
+            for (int e = 0; e < m; e++) if (x[e] > 0) total += x[e] * minutes[e];
+            Arrays.fill(y, 0.0);
+            demand.assign(g, minutes, y);
+            double shortest = demand.lastShortest;
+            gap = total > 0 ? Math.max(0.0, (total - shortest) / total) : 0.0;
+            if (gap <= targetGap || iterations >= maxIterations) break;
+            double step = lineSearch(t0, capacity, x, y);
+            for (int e = 0; e < m; e++) x[e] += step * (y[e] - x[e]);
+            iterations++;
+        }
+        return new Equilibrium(g, x, minutes, t0, iterations, gap, total, unassigned);
+    }
+
+    static double bpr(double t0, double flow, double capacity) {
+        if (flow <= 0) return t0;
+        double ratio = flow / capacity;
+        return t0 * (1.0 + BPR_ALPHA * ratio * ratio * ratio * ratio);
+    }
+
+    // Step in [0, 1] minimising the Beckmann objective along x -> y: the root of
+    // sum (y - x) * t(x + step * (y - x)), which increases with step
+    private static double lineSearch(double[] t0, double[] capacity, double[] x, double[] y) {
+        int m = x.length;
+        int[] moved = IntStream.range(0, m).filter(e -> y[e] != x[e] && t0[e] < Double.POSITIVE_INFINITY).toArray();
+        double lo = 0.0;
+        double hi = 1.0;
+        if (derivative(t0, capacity, x, y, moved, hi) <= 0) return hi;
+        for (int it = 0; it < 40; it++) {
+            double mid = 0.5 * (lo + hi);
+            if (derivative(t0, capacity, x, y, moved, mid) > 0) hi = mid;
+            else lo = mid;
+        }
+        return 0.5 * (lo + hi);
+    }
+
+    private static double derivative(double[] t0, double[] capacity, double[] x, double[] y, int[] moved, double step) {
+        double sum = 0;
+        for (int e : moved) {
+            double d = y[e] - x[e];
+            sum += d * bpr(t0[e], x[e] + step * d, capacity[e]);
+        }
+        return sum;
+    }
+
+    // Trips grouped by origin node, so each all-or-nothing pass is one shortest-path tree per
+    // origin, stopped once its last destination settles
+    private static final class Demand {
+        final int[] origins;
+        // Trips of origin k are destinations/amounts[start[k] .. start[k + 1] - 1], sorted by
+        // destination
+        final int[] start;
+        final int[] distinctDestinations;
+        final int[] destinations;
+        final double[] amounts;
+        double lastShortest;
+        // One load accumulator per worker, kept across passes
+        private double[][] partLoads;
+
+        Demand(CompactGraph g, int[] originIds, int[] destinationIds, double[] trips) {
+            int count = originIds.length;
+            int[] o = new int[count];
+            int[] d = new int[count];
+            for (int i = 0; i < count; i++) {
+                o[i] = g.indexOf(originIds[i]);
+                d[i] = g.indexOf(destinationIds[i]);
+                if (o[i] < 0 || d[i] < 0) {
+                    throw new IllegalArgumentException("Unknown node in trip " + originIds[i] + " -> " + destinationIds[i]);
+                }
+                if (!(trips[i] >= 0) || trips[i] == Double.POSITIVE_INFINITY) {
+                    throw new IllegalArgumentException("Trips must be finite and nonnegative: " + trips[i]);
+                }
+            }
+            Connectivity connectivity = g.connectivity();
+            Integer[] byOrigin = new Integer[count];
+            for (int i = 0; i < count; i++) byOrigin[i] = i;
+            Arrays.sort(byOrigin, (a, b) -> o[a] != o[b] ? Integer.compare(o[a], o[b]) : Integer.compare(d[a], d[b]));
+            int[] originList = new int[count];
+            int[] starts = new int[count + 1];
+            int[] distinct = new int[count];
+            int origins = 0;
+            this.destinations = new int[count];
+            this.amounts = new double[count];
+            for (int k = 0; k < count; k++) {
+                int i = byOrigin[k];
+                if (k == 0 || o[i] != originList[origins - 1]) {
+                    starts[origins] = k;
+                    originList[origins++] = o[i];
+                }
+                // Destinations the labels rule out would only make the search run to exhaustion
+                boolean fresh = k == starts[origins - 1] || d[i] != destinations[k - 1];
+                if (fresh && connectivity.mayReach(o[i], d[i])) distinct[origins - 1]++;
+                destinations[k] = d[i];
+                amounts[k] = trips[i];
+            }
+            starts[origins] = count;
+            this.origins = Arrays.copyOf(originList, origins);
+            this.start = Arrays.copyOf(starts, origins + 1);
+            this.distinctDestinations = Arrays.copyOf(distinct, origins);
+        }
+
+        // Adds every trip to its fastest path under minutes; returns the unreachable trips
+        // and leaves the total shortest-path time in lastShortest
+        double assign(CompactGraph g, double[] minutes, double[] load) {
+            int parts = Math.max(1, Math.min(origins.length, ForkJoinPool.getCommonPoolParallelism()));
+            if (partLoads == null || partLoads.length != parts) partLoads = new double[parts][g.edgeCount];
+            double[][] loads = partLoads;
+            double[] partShortest = new double[parts];
+            double[] partUnreachable = new double[parts];
+            AtomicInteger next = new AtomicInteger();
+            IntStream.range(0, parts).parallel().forEach(p -> {
+                for (int k; (k = next.getAndIncrement()) < origins.length; ) {
+                    tree(g, minutes, k, loads[p], partShortest, partUnreachable, p);
+                }
+            });
+            // Merged by edge range, zeroing the accumulators for the next pass
+            int m = load.length;
+            int chunks = (m + MERGE_CHUNK - 1) / MERGE_CHUNK;
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                int end = Math.min(m, (c + 1) * MERGE_CHUNK);
+                for (double[] local : loads) {
+                    for (int e = c * MERGE_CHUNK; e < end; e++) {
+                        load[e] += local[e];
+                        local[e] = 0.0;
+                    }
+                }
+            });
+            double shortest = 0;
+            double lost = 0;
+            for (int p = 0; p < parts; p++) {
+                shortest += partShortest[p];
+                lost += partUnreachable[p];
+            }
+            lastShortest = shortest;
+            return lost;
+        }
+
+        private void tree(CompactGraph g, double[] minutes, int k, double[] load, double[] shortest,
+                          double[] unreachable, int part) {
+            int s = origins[k];
+            SearchContext ctx = SearchContext.local(g.nodeCount);
+            IndexedHeap heap = ctx.heap;
+            int pending = distinctDestinations[k];
+            ctx.label(s, 0.0, -1, -1);
+            heap.pushOrDecrease(s, 0.0);
+            while (!heap.isEmpty() && pending > 0) {
+                int u = heap.pop();
+                ctx.settle(u);
+                if (Arrays.binarySearch(destinations, start[k], start[k + 1], u) >= 0) pending--;
+                double du = ctx.dist[u];
+                ctx.scan(g.degree(u));
+                for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                    int v = g.targets[e];
+                    if (ctx.isSettled(v)) continue;
+                    double alt = du + minutes[e];
+                    if (alt < ctx.dist(v)) {
+                        ctx.label(v, alt, u, e);
+                        heap.pushOrDecrease(v, alt);
+                    }
+                }
+            }
+            for (int i = start[k]; i < start[k + 1]; i++) {
+                int t = destinations[i];
+                double amount = amounts[i];
+                if (amount == 0) continue;
+                if (!ctx.isSettled(t)) {
+                    unreachable[part] += amount;
+                    continue;
+                }
+                shortest[part] += amount * ctx.dist[t];
+                for (int v = t; v != s; v = ctx.parentNode(v)) load[ctx.parentEdge(v)] += amount;
+            }
+        }
+    }
+
+    private static double[] amountsByNode(CompactGraph g, int[] ids, double[] amounts, String what) {
+        double[] byNode = new double[g.nodeCount];
+        for (int i = 0; i < ids.length; i++) {
+            int v = g.indexOf(ids[i]);
+            if (v < 0) throw new IllegalArgumentException("Unknown " + what + " node " + ids[i]);
+            if (!(amounts[i] >= 0) || amounts[i] == Double.POSITIVE_INFINITY) {
+                throw new IllegalArgumentException("Amount at " + what + " " + ids[i] + " must be finite and nonnegative");
+            }
+            byNode[v] += amounts[i];
+        }
+        return byNode;
+    }
+
+    private static void checkEdgeArray(CompactGraph g, double[] values, String what) {
+        if (values.length != g.edgeCount) {
+            throw new IllegalArgumentException("Need one " + what + " per edge: " + values.length + " for " + g.edgeCount);
+        }
+    }
+}
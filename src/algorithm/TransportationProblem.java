@@ -1,8 +1,18 @@
 package algorithm;
 
 import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 public final class TransportationProblem {
+    // Below these sizes a parallel stream costs more than the loop it splits
+    private static final int PARALLEL_LINES = 512;
+    private static final long PARALLEL_CELLS = 1L << 15;
+    // Vogel penalty of a line with no live cells, below any real one. A line with a single live
+    // cell has that cell's cost as its penalty, which can be negative.
+    private static final int NO_PENALTY = Integer.MIN_VALUE;
+
     // Returns allocation matrix using Northwest Corner Method
     public static int[][] northwestCorner(int[] supply, int[] demand) {
         int m = supply.length, n = demand.length;
@@ -21,113 +31,414 @@ public final class TransportationProblem {
         return alloc;
     }
 
-    // Vogel Approximation Method: returns allocation matrix for cost matrix
+    // Vogel Approximation Method: returns allocation matrix for cost matrix.
+    // Every row keeps its columns sorted by (cost, index) and a pointer to its cheapest and
+    // second-cheapest live column, and every column the same over rows, so a penalty is read in
+    // O(1). Closing a column only moves the pointers of rows that pointed at it; pointers only
+    // move forward, so all penalty upkeep is O(m * n) over the whole run on top of the
+    // O(m * n log) sorts, against O((m + n) * m * n) for rescanning. Picks match rescanning
+    // exactly: highest penalty, first index on ties, rows before columns on equal penalties.
     public static int[][] vogelApproximation(int[] supply, int[] demand, int[][] cost) {
         int m = supply.length, n = demand.length;
         int[] s = Arrays.copyOf(supply, m);
         int[] d = Arrays.copyOf(demand, n);
         int[][] alloc = new int[m][n];
+        if (m == 0 || n == 0) return alloc;
         boolean[] rowDone = new boolean[m];
         boolean[] colDone = new boolean[n];
         int remainingRows = m, remainingCols = n;
+        for (int i = 0; i < m; i++) {
+            if (s[i] == 0) {
+                rowDone[i] = true;
+                remainingRows--;
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            if (d[j] == 0) {
+                colDone[j] = true;
+                remainingCols--;
+            }
+        }
 
-        while (remainingRows > 0 && remainingCols > 0) {
-            int bestRow = -1, bestRowPen = -1;
-            int bestCol = -1, bestColPen = -1;
+        int[][] rowOrder = new int[m][];
+        int[][] colOrder = new int[n][];
+        IntStream.range(0, m).parallel().forEach(i -> rowOrder[i] = sortedBy(n, j -> cost[i][j]));
+        IntStream.range(0, n).parallel().forEach(j -> colOrder[j] = sortedBy(m, i -> cost[i][j]));
+        Penalties rows = new Penalties(rowOrder, colDone, (i, j) -> cost[i][j]);
+        Penalties cols = new Penalties(colOrder, rowDone, (j, i) -> cost[i][j]);
+        rows.refreshAll(rowDone);
+        cols.refreshAll(colDone);
 
-            // Row penalties
+        while (remainingRows > 0 && remainingCols > 0) {
+            int bestRow = -1, bestRowPen = NO_PENALTY;
+            int bestCol = -1, bestColPen = NO_PENALTY;
             for (int i = 0; i < m; i++) {
-                if (rowDone[i] || s[i] == 0) continue;
-                int min1 = Integer.MAX_VALUE, min2 = Integer.MAX_VALUE;
-                for (int j = 0; j < n; j++) {
-                    if (colDone[j] || d[j] == 0) continue;
-                    int c = cost[i][j];
-                    if (c < min1) {
-                        min2 = min1;
-                        min1 = c;
-                    } else if (c < min2) {
-                        min2 = c;
-                    }
-                }
-                int pen = (min2 == Integer.MAX_VALUE) ? min1 : (min2 - min1);
-                if (pen > bestRowPen) {
-                    bestRowPen = pen;
+                if (!rowDone[i] && rows.penalty[i] > bestRowPen) {
+                    bestRowPen = rows.penalty[i];
                     bestRow = i;
                 }
             }
-
-            // Column penalties
             for (int j = 0; j < n; j++) {
-                if (colDone[j] || d[j] == 0) continue;
-                int min1 = Integer.MAX_VALUE, min2 = Integer.MAX_VALUE;
-                for (int i = 0; i < m; i++) {
-                    if (rowDone[i] || s[i] == 0) continue;
-                    int c = cost[i][j];
-                    if (c < min1) {
-                        min2 = min1;
-                        min1 = c;
-                    } else if (c < min2) {
-                        min2 = c;
-                    }
-                }
-                int pen = (min2 == Integer.MAX_VALUE) ? min1 : (min2 - min1);
-                if (pen > bestColPen) {
-                    bestColPen = pen;
+                if (!colDone[j] && cols.penalty[j] > bestColPen) {
+                    bestColPen = cols.penalty[j];
                     bestCol = j;
                 }
             }
-
-            boolean pickRow = bestRowPen >= bestColPen;
             if (bestRow == -1 && bestCol == -1) break;
 
-            if (pickRow) {
-                int i = bestRow;
-                int bestJ = -1, bestC = Integer.MAX_VALUE;
+            int i, j;
+            if (bestRowPen >= bestColPen) {
+                i = bestRow;
+                j = rows.cheapest(i);
+            } else {
+                j = bestCol;
+                i = cols.cheapest(j);
+            }
+            int x = Math.min(s[i], d[j]);
+            alloc[i][j] += x;
+            s[i] -= x;
+            d[j] -= x;
+            if (s[i] == 0) {
+                rowDone[i] = true;
+                remainingRows--;
+                cols.closed(i, colDone);
+            }
+            if (d[j] == 0) {
+                colDone[j] = true;
+                remainingCols--;
+                rows.closed(j, rowDone);
+            }
+        }
+        return alloc;
+    }
+
+    // Vogel penalties of the lines on one side (rows, say), over the live lines of the other
+    private static final class Penalties {
+        private final int[][] order;
+        private final boolean[] otherDone;
+        private final IntBinaryOperator cost;
+        // Positions in order[k] of the cheapest and second-cheapest live lines
+        private final int[] first;
+        private final int[] second;
+        final int[] penalty;
+
+        Penalties(int[][] order, boolean[] otherDone, IntBinaryOperator cost) {
+            this.order = order;
+            this.otherDone = otherDone;
+            this.cost = cost;
+            this.first = new int[order.length];
+            this.second = new int[order.length];
+            this.penalty = new int[order.length];
+        }
+
+        void refreshAll(boolean[] done) {
+            IntStream.range(0, order.length).parallel().forEach(k -> {
+                if (!done[k]) refresh(k);
+            });
+        }
+
+        int cheapest(int k) {
+            return order[k][first[k]];
+        }
+
+        // Line other of the opposite side just closed; only lines pointing at it change
+        void closed(int other, boolean[] done) {
+            IntStream range = IntStream.range(0, order.length);
+            if (order.length >= PARALLEL_LINES) range = range.parallel();
+            range.forEach(k -> {
+                if (done[k]) return;
+                int[] o = order[k];
+                if (o[first[k]] == other || (second[k] < o.length && o[second[k]] == other)) refresh(k);
+            });
+        }
+
+        private void refresh(int k) {
+            int[] o = order[k];
+            int a = first[k];
+            while (a < o.length && otherDone[o[a]]) a++;
+            int b = Math.max(second[k], a + 1);
+            while (b < o.length && otherDone[o[b]]) b++;
+            first[k] = a;
+            second[k] = b;
+            if (a >= o.length) {
+                penalty[k] = NO_PENALTY;
+            } else {
+                int min1 = cost.applyAsInt(k, o[a]);
+                penalty[k] = b >= o.length ? min1 : cost.applyAsInt(k, o[b]) - min1;
+            }
+        }
+    }
+
+    // 0..count-1 ordered by key, ties by index
+    private static int[] sortedBy(int count, IntUnaryOperator key) {
+        long[] packed = new long[count];
+        for (int k = 0; k < count; k++) packed[k] = ((long) key.applyAsInt(k) << 32) | k;
+        Arrays.sort(packed);
+        int[] out = new int[count];
+        for (int k = 0; k < count; k++) out[k] = (int) packed[k];
+        return out;
+    }
+
+    // Minimum-cost allocation: Vogel's start improved by modi() to optimality. Supply and
+    // demand must balance; add a dummy row or column with zero costs to absorb any excess.
+    public static int[][] optimalAllocation(int[] supply, int[] demand, int[][] cost) {
+        return modi(supply, demand, cost, vogelApproximation(supply, demand, cost));
+    }
+
+    public static long totalCost(int[][] alloc, int[][] cost) {
+        long total = 0;
+        for (int i = 0; i < alloc.length; i++) {
+            for (int j = 0; j < alloc[i].length; j++) total += (long) alloc[i][j] * cost[i][j];
+        }
+        return total;
+    }
+
+    // MODI (u-v) method: improves a basic feasible allocation, such as northwestCorner or
+    // vogelApproximation returns, to an optimal one. The basis is kept sparse, as the spanning
+    // tree of its m + n - 1 cells over row and column nodes (padded with zero cells when the
+    // start is degenerate), so potentials cost O(m + n) per pivot and the stepping-stone loop
+    // is the tree path between the entering cell's row and column. Pricing is partial: rows
+    // are scanned a block at a time, in parallel, from where the last scan stopped, and the
+    // most negative reduced cost of the first block that has one enters.
+    public static int[][] modi(int[] supply, int[] demand, int[][] cost, int[][] initial) {
+        int m = supply.length, n = demand.length;
+        long supplied = 0, demanded = 0;
+        for (int v : supply) supplied += v;
+        for (int v : demand) demanded += v;
+        if (supplied != demanded) {
+            throw new IllegalArgumentException("Unbalanced problem: supply " + supplied + ", demand " + demanded);
+        }
+        if (initial.length != m) throw new IllegalArgumentException("Allocation has " + initial.length + " rows, expected " + m);
+        int[][] alloc = new int[m][];
+        for (int i = 0; i < m; i++) {
+            if (initial[i].length != n) throw new IllegalArgumentException("Allocation row " + i + " has wrong length");
+            alloc[i] = Arrays.copyOf(initial[i], n);
+        }
+        if (m == 0 || n == 0) return alloc;
+        for (int i = 0; i < m; i++) {
+            long sum = 0;
+            for (int j = 0; j < n; j++) sum += alloc[i][j];
+            if (sum != supply[i]) throw new IllegalArgumentException("Allocation row " + i + " does not match supply");
+        }
+        for (int j = 0; j < n; j++) {
+            long sum = 0;
+            for (int i = 0; i < m; i++) sum += alloc[i][j];
+            if (sum != demand[j]) throw new IllegalArgumentException("Allocation column " + j + " does not match demand");
+        }
+        new Basis(m, n, cost, alloc).optimize();
+        return alloc;
+    }
+
+    // Basic cells as tree edges between row nodes 0..m-1 and column nodes m..m+n-1
+    private static final class Basis {
+        private static final int PRICING_ROWS = 64;
+
+        private final int m, n;
+        private final int[][] cost;
+        private final int[][] alloc;
+        private final int[] cellRow, cellCol;
+        // Incident cells of each node; the first degree[node] slots in use
+        private final int[][] incident;
+        private final int[] degree;
+        // Potentials (u for rows, v for columns) and the BFS tree they were computed on
+        private final long[] potential;
+        private final int[] parentCell, depth, queue;
+        private int nextRow;
+
+        Basis(int m, int n, int[][] cost, int[][] alloc) {
+            this.m = m;
+            this.n = n;
+            this.cost = cost;
+            this.alloc = alloc;
+            int nodes = m + n;
+            this.cellRow = new int[nodes - 1];
+            this.cellCol = new int[nodes - 1];
+            this.incident = new int[nodes][];
+            for (int v = 0; v < nodes; v++) incident[v] = new int[4];
+            this.degree = new int[nodes];
+            this.potential = new long[nodes];
+            this.parentCell = new int[nodes];
+            this.depth = new int[nodes];
+            this.queue = new int[nodes];
+
+            int[] parent = new int[nodes];
+            for (int v = 0; v < nodes; v++) parent[v] = v;
+            int cells = 0;
+            for (int i = 0; i < m; i++) {
                 for (int j = 0; j < n; j++) {
-                    if (colDone[j] || d[j] == 0) continue;
-                    if (cost[i][j] < bestC) {
-                        bestC = cost[i][j];
-                        bestJ = j;
+                    if (alloc[i][j] < 0) throw new IllegalArgumentException("Negative allocation at " + i + ", " + j);
+                    if (alloc[i][j] == 0) continue;
+                    if (!union(parent, i, m + j)) {
+                        throw new IllegalArgumentException("Allocation is not a basic solution: its cells form a loop");
                     }
+                    link(cells++, i, j);
                 }
-                int x = Math.min(s[i], d[bestJ]);
-                alloc[i][bestJ] += x;
-                s[i] -= x;
-                d[bestJ] -= x;
-                if (s[i] == 0) {
-                    rowDone[i] = true;
-                    remainingRows--;
+            }
+            // Degenerate start: zero cells join the remaining pieces into one tree
+            for (int i = 0; i < m && cells < nodes - 1; i++) {
+                for (int j = 0; j < n && cells < nodes - 1; j++) {
+                    if (union(parent, i, m + j)) link(cells++, i, j);
                 }
-                if (d[bestJ] == 0) {
-                    colDone[bestJ] = true;
-                    remainingCols--;
+            }
+        }
+
+        void optimize() {
+            while (true) {
+                computePotentials();
+                long entering = price();
+                if (entering < 0) return;
+                pivot((int) (entering >>> 32), (int) entering);
+            }
+        }
+
+        // u[0] = 0 and u[i] + v[j] = cost[i][j] over the basic cells
+        private void computePotentials() {
+            int head = 0, tail = 0;
+            Arrays.fill(parentCell, -2);
+            parentCell[0] = -1;
+            potential[0] = 0;
+            depth[0] = 0;
+            queue[tail++] = 0;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int k = 0; k < degree[v]; k++) {
+                    int c = incident[v][k];
+                    int w = v < m ? m + cellCol[c] : cellRow[c];
+                    if (parentCell[w] != -2) continue;
+                    parentCell[w] = c;
+                    depth[w] = depth[v] + 1;
+                    potential[w] = cost[cellRow[c]][cellCol[c]] - potential[v];
+                    queue[tail++] = w;
                 }
-            } else {
-                int j = bestCol;
-                int bestI = -1, bestC = Integer.MAX_VALUE;
-                for (int i = 0; i < m; i++) {
-                    if (rowDone[i] || s[i] == 0) continue;
-                    if (cost[i][j] < bestC) {
-                        bestC = cost[i][j];
-                        bestI = i;
+            }
+        }
+
+        // Cell (i << 32 | j) with the most negative reduced cost in the first block of rows
+        // that has one, or -1 if the allocation is optimal
+        private long price() {
+            long[] best = new long[PRICING_ROWS];
+            long[] bestCell = new long[PRICING_ROWS];
+            for (int scanned = 0; scanned < m; ) {
+                int from = nextRow;
+                int rows = Math.min(PRICING_ROWS, m - scanned);
+                IntStream range = IntStream.range(0, rows);
+                if ((long) rows * n >= PARALLEL_CELLS) range = range.parallel();
+                range.forEach(r -> {
+                    int i = (from + r) % m;
+                    long u = potential[i];
+                    int[] c = cost[i];
+                    long min = 0;
+                    int arg = -1;
+                    for (int j = 0; j < n; j++) {
+                        long reduced = c[j] - u - potential[m + j];
+                        if (reduced < min) {
+                            min = reduced;
+                            arg = j;
+                        }
                     }
+                    best[r] = min;
+                    bestCell[r] = arg < 0 ? -1 : ((long) i << 32) | arg;
+                });
+                scanned += rows;
+                nextRow = (from + rows) % m;
+                long min = 0;
+                long cell = -1;
+                for (int r = 0; r < rows; r++) {
+                    if (best[r] < min) {
+                        min = best[r];
+                        cell = bestCell[r];
+                    }
+                }
+                if (cell >= 0) return cell;
+            }
+            return -1;
+        }
+
+        // Stepping stone around the loop the entering cell closes in the tree
+        private void pivot(int i, int j) {
+            // Tree path from column node m + j to row node i, cells alternately losing and gaining
+            int[] up = new int[m + n];
+            int[] down = new int[m + n];
+            int ups = 0, downs = 0;
+            int a = m + j, b = i;
+            while (a != b) {
+                if (depth[a] >= depth[b]) {
+                    int c = parentCell[a];
+                    up[ups++] = c;
+                    a = other(c, a);
+                } else {
+                    int c = parentCell[b];
+                    down[downs++] = c;
+                    b = other(c, b);
                 }
-                int x = Math.min(s[bestI], d[j]);
-                alloc[bestI][j] += x;
-                s[bestI] -= x;
-                d[j] -= x;
-                if (s[bestI] == 0) {
-                    rowDone[bestI] = true;
-                    remainingRows--;
+            }
+            int length = ups + downs;
+            int[] path = Arrays.copyOf(up, length);
+            for (int k = 0; k < downs; k++) path[ups + k] = down[downs - 1 - k];
+
+            int theta = Integer.MAX_VALUE;
+            int leaving = -1;
+            for (int k = 0; k < length; k += 2) {
+                int c = path[k];
+                int flow = alloc[cellRow[c]][cellCol[c]];
+                if (flow < theta) {
+                    theta = flow;
+                    leaving = c;
                 }
-                if (d[j] == 0) {
-                    colDone[j] = true;
-                    remainingCols--;
+            }
+            for (int k = 0; k < length; k++) {
+                int c = path[k];
+                alloc[cellRow[c]][cellCol[c]] += (k & 1) == 0 ? -theta : theta;
+            }
+            alloc[i][j] += theta;
+            unlink(leaving);
+            link(leaving, i, j);
+        }
+
+        private int other(int c, int node) {
+            return node < m ? m + cellCol[c] : cellRow[c];
+        }
+
+        private void link(int c, int i, int j) {
+            cellRow[c] = i;
+            cellCol[c] = j;
+            attach(i, c);
+            attach(m + j, c);
+        }
+
+        private void unlink(int c) {
+            detach(cellRow[c], c);
+            detach(m + cellCol[c], c);
+        }
+
+        private void attach(int node, int c) {
+            if (degree[node] == incident[node].length) incident[node] = Arrays.copyOf(incident[node], degree[node] * 2);
+            incident[node][degree[node]++] = c;
+        }
+
+        private void detach(int node, int c) {
+            int[] list = incident[node];
+            for (int k = 0; k < degree[node]; k++) {
+                if (list[k] == c) {
+                    list[k] = list[--degree[node]];
+                    return;
                 }
             }
         }
-        return alloc;
-    }
-}
 
+        private static boolean union(int[] parent, int a, int b) {
+            int ra = find(parent, a), rb = find(parent, b);
+            if (ra == rb) return false;
+            parent[ra] = rb;
+            return true;
+        }
 
+        private static int find(int[] parent, int v) {
+            while (parent[v] != v) {
+                parent[v] = parent[parent[v]];
+                v = parent[v];
+            }
+            return v;
+        }
+    }
+}
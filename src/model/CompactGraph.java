@@ -0,0 +1,261 @@
+package model;
+
+import java.util.*;
+
+// Frozen, int-indexed compressed-sparse-row view of a Graph.
+// Nodes are indexed 0..nodeCount-1 in ascending id order; the out-edges of node i
+// are the slots offsets[i] .. offsets[i + 1] - 1 of the parallel edge arrays.
+public final class CompactGraph {
+    public final int nodeCount;
+    public final int edgeCount;
+    public final int[] ids;
+    public final double[] x;
+    public final double[] y;
+    public final int[] offsets;
+    public final int[] targets;
+    public final double[] distanceMeters;
+    public final double[] baseMinutes;
+    public final double[] peakMultiplier;
+    public final double[] offPeakMultiplier;
+    // Daily travel-time profile of each edge, an index into the shared profiles table
+    public final TrafficProfiles profiles;
+    public final int[] profile;
+    // Live per-edge factors on top of the profiles, or null when there are none (see withTraffic)
+    public final TrafficOverlay traffic;
+
+    // id -> index lookup: a dense table when ids are compact, otherwise binary search over ids
+    private final int minId;
+    private final int[] denseIndex;
+    private volatile Incoming incoming;
+    private volatile Connectivity connectivity;
+
+    // Reverse CSR: the in-edges of node i are sources/edges[offsets[i] .. offsets[i + 1] - 1],
+    // where edges holds the forward edge slot so weights are always read from the forward arrays
+    public static final class Incoming {
+        public final int[] offsets;
+        public final int[] sources;
+        public final int[] edges;
+
+        Incoming(int[] offsets, int[] sources, int[] edges) {
+            this.offsets = offsets;
+            this.sources = sources;
+            this.edges = edges;
+        }
+    }
+
+    public CompactGraph(
+            int[] ids, double[] x, double[] y,
+            int[] offsets, int[] targets,
+            double[] distanceMeters, double[] baseMinutes,
+            double[] peakMultiplier, double[] offPeakMultiplier
+    ) {
+        this(ids, x, y, offsets, targets, distanceMeters, baseMinutes, peakMultiplier, offPeakMultiplier, null, null);
+    }
+
+    // Without profiles, each edge gets the smoothed peak-window profile of its two multipliers
+    public CompactGraph(
+            int[] ids, double[] x, double[] y,
+            int[] offsets, int[] targets,
+            double[] distanceMeters, double[] baseMinutes,
+            double[] peakMultiplier, double[] offPeakMultiplier,
+            TrafficProfiles profiles, int[] profile
+    ) {
+        if (profiles == null) {
+            TrafficProfiles.Builder table = new TrafficProfiles.Builder();
+            profile = new int[targets.length];
+            for (int e = 0; e < profile.length; e++) {
+                profile[e] = table.peakWindows(baseMinutes[e], peakMultiplier[e], offPeakMultiplier[e]);
+            }
+            profiles = table.build();
+        }
+        this.nodeCount = ids.length;
+        this.edgeCount = targets.length;
+        this.ids = ids;
+        this.x = x;
+        this.y = y;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.distanceMeters = distanceMeters;
+        this.baseMinutes = baseMinutes;
+        this.peakMultiplier = peakMultiplier;
+        this.offPeakMultiplier = offPeakMultiplier;
+        this.profiles = profiles;
+        this.profile = profile;
+        this.traffic = null;
+
+        this.minId = nodeCount == 0 ? 0 : ids[0];
+        long span = nodeCount == 0 ? 0 : (long) ids[nodeCount - 1] - minId + 1;
+        if (span <= 4L * nodeCount + 16) {
+            denseIndex = new int[(int) span];
+            Arrays.fill(denseIndex, -1);
+            for (int i = 0; i < nodeCount; i++) denseIndex[ids[i] - minId] = i;
+        } else {
+            denseIndex = null;
+        }
+    }
+
+    // Same nodes, edges and profiles as base, which stays untouched; only the overlay differs
+    private CompactGraph(CompactGraph base, TrafficOverlay traffic) {
+        this.nodeCount = base.nodeCount;
+        this.edgeCount = base.edgeCount;
+        this.ids = base.ids;
+        this.x = base.x;
+        this.y = base.y;
+        this.offsets = base.offsets;
+        this.targets = base.targets;
+        this.distanceMeters = base.distanceMeters;
+        this.baseMinutes = base.baseMinutes;
+        this.peakMultiplier = base.peakMultiplier;
+        this.offPeakMultiplier = base.offPeakMultiplier;
+        this.profiles = base.profiles;
+        this.profile = base.profile;
+        this.traffic = traffic;
+        this.minId = base.minId;
+        this.denseIndex = base.denseIndex;
+        this.incoming = base.incoming();
+        this.connectivity = base.connectivity();
+    }
+
+    public static CompactGraph from(Graph g) {
+        int n = g.idToNode.size();
+        int[] ids = new int[n];
+        int k = 0;
+        for (int id : g.idToNode.keySet()) ids[k++] = id;
+        Arrays.sort(ids);
+
+        Map<Integer, Integer> idx = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) idx.put(ids[i], i);
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Node node = g.idToNode.get(ids[i]);
+            x[i] = node.x;
+            y[i] = node.y;
+            offsets[i + 1] = offsets[i] + g.neighbors(ids[i]).size();
+        }
+
+        int m = offsets[n];
+        int[] targets = new int[m];
+        double[] distance = new double[m];
+        double[] base = new double[m];
+        double[] peak = new double[m];
+        double[] offPeak = new double[m];
+        for (int i = 0; i < n; i++) {
+            int e = offsets[i];
+            for (Edge edge : g.neighbors(ids[i])) {
+                Integer to = idx.get(edge.toId);
+                if (to == null) throw new IllegalArgumentException("Edge references unknown node " + edge.toId);
+                targets[e] = to;
+                distance[e] = edge.distanceMeters;
+                base[e] = edge.baseMinutes;
+                peak[e] = edge.peakMultiplier;
+                offPeak[e] = edge.offPeakMultiplier;
+                e++;
+            }
+        }
+        return new CompactGraph(ids, x, y, offsets, targets, distance, base, peak, offPeak);
+    }
+
+    // Returns the index of the node with the given id, or -1 if it is not in the graph
+    public int indexOf(int id) {
+        if (denseIndex != null) {
+            long slot = (long) id - minId;
+            return (slot < 0 || slot >= denseIndex.length) ? -1 : denseIndex[(int) slot];
+        }
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? -1 : i;
+    }
+
+    public Incoming incoming() {
+        Incoming in = incoming;
+        if (in == null) {
+            int[] inOffsets = new int[nodeCount + 1];
+            for (int e = 0; e < edgeCount; e++) inOffsets[targets[e] + 1]++;
+            for (int i = 0; i < nodeCount; i++) inOffsets[i + 1] += inOffsets[i];
+            int[] fill = Arrays.copyOf(inOffsets, nodeCount);
+            int[] sources = new int[edgeCount];
+            int[] edges = new int[edgeCount];
+            for (int u = 0; u < nodeCount; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int slot = fill[targets[e]]++;
+                    sources[slot] = u;
+                    edges[slot] = e;
+                }
+            }
+            incoming = in = new Incoming(inOffsets, sources, edges);
+        }
+        return in;
+    }
+
+    // Component labels for constant-time unreachable checks, computed on first use and shared
+    // with every withTraffic view
+    public Connectivity connectivity() {
+        Connectivity c = connectivity;
+        if (c == null) connectivity = c = Connectivity.of(this);
+        return c;
+    }
+
+    // Adopts labels known to match this graph, such as those Graph keeps up to date
+    void install(Connectivity labels) {
+        connectivity = labels;
+    }
+
+    public int degree(int u) {
+        return offsets[u + 1] - offsets[u];
+    }
+
+    // Returns the first edge slot from u to v, or -1 if there is none
+    public int edgeBetween(int u, int v) {
+        for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+            if (targets[e] == v) return e;
+        }
+        return -1;
+    }
+
+    public double euclidean(int u, int v) {
+        double dx = x[u] - x[v];
+        double dy = y[u] - y[v];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // A snapshot sharing every array with this one but routing under the given live factors.
+    // Building it is O(1); publishing a new overlay never disturbs queries on older snapshots.
+    public CompactGraph withTraffic(TrafficOverlay overlay) {
+        if (overlay != null && overlay.edgeCount != edgeCount) {
+            throw new IllegalArgumentException("Overlay has " + overlay.edgeCount + " edges, graph has " + edgeCount);
+        }
+        return new CompactGraph(this, overlay);
+    }
+
+    // Live factor of edge e, 1 when it has no override
+    public double liveFactor(int e) {
+        return traffic == null ? 1.0 : traffic.factor(e);
+    }
+
+    // Largest live factor edge e can take and stay FIFO: a factor multiplies the profile's
+    // falling slopes too, and past this one entering later would mean leaving earlier
+    public double maxLiveFactor(int e) {
+        return Math.max(1.0, profiles.maxFifoScale(profile[e], baseMinutes[e]));
+    }
+
+    // Profile factor of edge e at a minute of the day (any real value; it wraps around midnight),
+    // times its live factor
+    public double trafficMultiplier(int e, double minuteOfDay) {
+        double f = profiles.factor(profile[e], minuteOfDay);
+        return traffic == null ? f : f * traffic.factor(e);
+    }
+
+    // Travel time of edge e when entered minutesIntoTrip after departing at departSecond
+    public double travelMinutes(int e, long departSecond, double minutesIntoTrip) {
+        double minutes = baseMinutes[e] * profiles.factor(profile[e], departSecond / 60.0 + minutesIntoTrip);
+        return traffic == null ? minutes : minutes * traffic.factor(e);
+    }
+
+    // Lower bound on the travel time of edge e at any time of day
+    public double minTravelMinutes(int e) {
+        double minutes = baseMinutes[e] * profiles.minFactor(profile[e]);
+        return traffic == null ? minutes : minutes * traffic.factor(e);
+    }
+}
@@ -0,0 +1,128 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Accumulates nodes and edges in growable primitive arrays and sorts them straight into a
+// CompactGraph, for importers that should never materialize Node/Edge objects. Edges keep
+// their insertion order within each source node, as Graph.addEdge does.
+public final class CompactGraphBuilder {
+    private int[] ids = new int[1024];
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private final List<String> names = new ArrayList<>();
+    private final List<String[]> tags = new ArrayList<>();
+    private int nodes;
+
+    private int[] from = new int[1024];
+    private int[] to = new int[1024];
+    private double[] meters = new double[1024];
+    private double[] minutes = new double[1024];
+    private double[] peak = new double[1024];
+    private double[] offPeak = new double[1024];
+    private int edges;
+
+    public int nodeCount() {
+        return nodes;
+    }
+
+    public int edgeCount() {
+        return edges;
+    }
+
+    // name and tags may be null
+    public void addNode(int id, double x, double y, String name, String[] nodeTags) {
+        if (nodes == ids.length) {
+            int cap = nodes * 2;
+            ids = Arrays.copyOf(ids, cap);
+            xs = Arrays.copyOf(xs, cap);
+            ys = Arrays.copyOf(ys, cap);
+        }
+        ids[nodes] = id;
+        xs[nodes] = x;
+        ys[nodes] = y;
+        names.add(name);
+        tags.add(nodeTags);
+        nodes++;
+    }
+
+    // One direction; call twice for a two-way road
+    public void addEdge(int fromId, int toId, double distanceMeters, double baseMinutes,
+                        double peakMultiplier, double offPeakMultiplier) {
+        if (edges == from.length) {
+            int cap = edges * 2;
+            from = Arrays.copyOf(from, cap);
+            to = Arrays.copyOf(to, cap);
+            meters = Arrays.copyOf(meters, cap);
+            minutes = Arrays.copyOf(minutes, cap);
+            peak = Arrays.copyOf(peak, cap);
+            offPeak = Arrays.copyOf(offPeak, cap);
+        }
+        from[edges] = fromId;
+        to[edges] = toId;
+        meters[edges] = distanceMeters;
+        minutes[edges] = baseMinutes;
+        peak[edges] = peakMultiplier;
+        offPeak[edges] = offPeakMultiplier;
+        edges++;
+    }
+
+    // Sorts nodes by id and buckets edges by source; names and tags come back in the same
+    // index order for GraphFile
+    public GraphFile build() {
+        int n = nodes;
+        // id in the high half and insertion position in the low half sorts by id, ties by position
+        long[] keyed = new long[n];
+        for (int i = 0; i < n; i++) keyed[i] = ((long) ids[i] << 32) | i;
+        Arrays.parallelSort(keyed);
+        int[] sortedIds = new int[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        String[] sortedNames = new String[n];
+        String[][] sortedTags = new String[n][];
+        for (int i = 0; i < n; i++) {
+            int at = (int) keyed[i];
+            sortedIds[i] = (int) (keyed[i] >> 32);
+            if (i > 0 && sortedIds[i] == sortedIds[i - 1]) {
+                throw new IllegalArgumentException("Duplicate node id " + sortedIds[i]);
+            }
+            x[i] = xs[at];
+            y[i] = ys[at];
+            sortedNames[i] = names.get(at);
+            sortedTags[i] = tags.get(at);
+        }
+
+        int m = edges;
+        int[] u = new int[m];
+        int[] v = new int[m];
+        IntStream.range(0, m).parallel().forEach(e -> {
+            u[e] = Arrays.binarySearch(sortedIds, from[e]);
+            v[e] = Arrays.binarySearch(sortedIds, to[e]);
+        });
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            if (u[e] < 0) throw new IllegalArgumentException("Edge references unknown node " + from[e]);
+            if (v[e] < 0) throw new IllegalArgumentException("Edge references unknown node " + to[e]);
+            offsets[u[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) offsets[i + 1] += offsets[i];
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] targets = new int[m];
+        double[] distance = new double[m];
+        double[] base = new double[m];
+        double[] peakOut = new double[m];
+        double[] offPeakOut = new double[m];
+        for (int e = 0; e < m; e++) {
+            int slot = fill[u[e]]++;
+            targets[slot] = v[e];
+            distance[slot] = meters[e];
+            base[slot] = minutes[e];
+            peakOut[slot] = peak[e];
+            offPeakOut[slot] = offPeak[e];
+        }
+        CompactGraph graph = new CompactGraph(sortedIds, x, y, offsets, targets, distance, base, peakOut, offPeakOut);
+        return GraphFile.of(graph, sortedNames, sortedTags);
+    }
+}
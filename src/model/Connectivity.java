@@ -0,0 +1,142 @@
+package model;
+
+import java.util.Arrays;
+
+// Strongly and weakly connected components of a CompactGraph, for rejecting unreachable
+// queries in constant time before any search starts. Strong components are numbered in a
+// topological order of the component graph, so every edge goes from a component to itself or
+// to a later one: t is reachable from s only if both are in the same weak component and s's
+// strong component does not come after t's. Same strong component means reachable; otherwise
+// the check can still let an unreachable pair through (two branches of a DAG), never the other
+// way round. Labels cover the edges as built, so an edge closed by live traffic still counts
+// as a link and the check stays conservative.
+public final class Connectivity {
+    // Topological rank of each node's strong component; equal ranks mean the same component.
+    // Ranks may have gaps (see Graph's incremental labels).
+    private final int[] strong;
+    private final int[] weak;
+    private final int strongCount;
+    private final int weakCount;
+
+    Connectivity(int[] strong, int[] weak, int strongCount, int weakCount) {
+        this.strong = strong;
+        this.weak = weak;
+        this.strongCount = strongCount;
+        this.weakCount = weakCount;
+    }
+
+    // False only if no path from node index s to node index t exists
+    public boolean mayReach(int s, int t) {
+        return weak[s] == weak[t] && strong[s] <= strong[t];
+    }
+
+    public boolean stronglyConnected(int s, int t) {
+        return strong[s] == strong[t];
+    }
+
+    public int strongComponent(int v) {
+        return strong[v];
+    }
+
+    public int weakComponent(int v) {
+        return weak[v];
+    }
+
+    public int strongCount() {
+        return strongCount;
+    }
+
+    public int weakCount() {
+        return weakCount;
+    }
+
+    // Iterative Tarjan over the CSR arrays, O(n + m) with no recursion, so a million-node path
+    // is as safe as a grid. Tarjan completes a component only after every component it reaches,
+    // so completion order reversed is a topological order.
+    static Connectivity of(CompactGraph g) {
+        int n = g.nodeCount;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] strong = new int[n];
+        Arrays.fill(index, -1);
+        int[] stack = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        int next = 0;
+        int sp = 0;
+        int completed = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            int depth = 0;
+            callNode[0] = root;
+            callEdge[0] = g.offsets[root];
+            index[root] = low[root] = next++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int u = callNode[depth];
+                int e = callEdge[depth];
+                if (e < g.offsets[u + 1]) {
+                    callEdge[depth] = e + 1;
+                    int v = g.targets[e];
+                    if (index[v] < 0) {
+                        index[v] = low[v] = next++;
+                        stack[sp++] = v;
+                        onStack[v] = true;
+                        depth++;
+                        callNode[depth] = v;
+                        callEdge[depth] = g.offsets[v];
+                    } else if (onStack[v]) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+                if (low[u] == index[u]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        strong[w] = completed;
+                    } while (w != u);
+                    completed++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNode[depth];
+                    low[parent] = Math.min(low[parent], low[u]);
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) strong[v] = completed - 1 - strong[v];
+
+        // Weak components by union-find over the edges; a label is its root's index
+        int[] parent = new int[n];
+        for (int v = 0; v < n; v++) parent[v] = v;
+        for (int u = 0; u < n; u++) {
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int a = find(parent, u);
+                int b = find(parent, g.targets[e]);
+                if (a != b) parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        int weakCount = 0;
+        for (int v = 0; v < n; v++) {
+            parent[v] = find(parent, v);
+            if (parent[v] == v) weakCount++;
+        }
+        return new Connectivity(strong, parent, completed, weakCount);
+    }
+
+    static int find(int[] parent, int v) {
+        int root = v;
+        while (parent[root] != root) root = parent[root];
+        while (parent[v] != root) {
+            int up = parent[v];
+            parent[v] = root;
+            v = up;
+        }
+        return root;
+    }
+}
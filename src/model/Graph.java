@@ -6,10 +6,15 @@ import java.util.*;
 public final class Graph {
     public final Map<Integer, Node> idToNode = new HashMap<>();
     public final Map<Integer, List<Edge>> adjacency = new HashMap<>();
+    private volatile CompactGraph compact;
+    // Component labels maintained across additions once a snapshot has been built
+    private IncrementalConnectivity connectivity;
 
     public void addNode(Node node) {
         idToNode.put(node.id, node);
         adjacency.computeIfAbsent(node.id, k -> new ArrayList<>());
+        if (connectivity != null) connectivity.addNode(node.id);
+        compact = null;
     }
 
     public void addEdge(Edge edge) {
@@ -22,6 +27,35 @@ public final class Graph {
             );
             adjacency.computeIfAbsent(edge.toId, k -> new ArrayList<>()).add(back);
         }
+        if (connectivity != null) {
+            connectivity.addEdge(edge.fromId, edge.toId);
+            if (edge.bidirectional) connectivity.addEdge(edge.toId, edge.fromId);
+        }
+        compact = null;
+    }
+
+    // Frozen CSR snapshot of this graph, rebuilt lazily after addNode/addEdge. Rebuilt
+    // snapshots take their component labels from the incrementally kept ones.
+    public CompactGraph compact() {
+        CompactGraph c = compact;
+        if (c == null) {
+            synchronized (this) {
+                c = compact;
+                if (c == null) {
+                    c = CompactGraph.from(this);
+                    if (connectivity == null) connectivity = IncrementalConnectivity.of(this, c);
+                    else c.install(connectivity.labels(c));
+                    compact = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    // Adopts a snapshot known to match the nodes and edges, such as one loaded from a GraphFile
+    void install(CompactGraph snapshot) {
+        compact = snapshot;
+        connectivity = null;
     }
 
     public List<Edge> neighbors(int nodeId) {
@@ -41,6 +75,7 @@ public final class Graph {
         return Math.sqrt(dx * dx + dy * dy);
     }
 
+    // Hourly step version of the peak windows; routing uses the smoothed profiles on CompactGraph
     public static double trafficMultiplierFor(LocalTime time, Edge edge) {
         int hour = time.getHour();
         boolean peak = (hour >= 7 && hour <= 9) || (hour >= 16 && hour <= 18);
@@ -0,0 +1,386 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Versioned binary graph file, little endian:
+//   header   magic "UGRF", version, node/edge/profile/profile-point/tag counts, then a table of
+//            (offset, length) pairs locating each section below
+//   nodes    ids, x, y, name offsets into the string pool, tag offsets into the node tag list
+//   names    UTF-8 string pool
+//   tags     node tag list (tag ids), tag dictionary offsets and its UTF-8 pool
+//   edges    CSR offsets, targets, distance, base minutes, peak/off-peak multipliers, profile
+//   profiles the shared TrafficProfiles table
+// Sections start on 8-byte boundaries. Loading maps each section with FileChannel.map; the
+// numeric arrays the searches index are bulk-copied out of the mapping, while names stay in
+// the mapped file and are only decoded when asked for.
+public final class GraphFile {
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x46524755;
+
+    private static final int NODE_IDS = 0, NODE_X = 1, NODE_Y = 2, NAME_OFFSETS = 3, NAME_POOL = 4,
+            NODE_TAG_OFFSETS = 5, NODE_TAGS = 6, TAG_OFFSETS = 7, TAG_POOL = 8,
+            EDGE_OFFSETS = 9, TARGETS = 10, DISTANCE = 11, BASE = 12, PEAK = 13, OFF_PEAK = 14,
+            EDGE_PROFILE = 15, PROFILE_OFFSETS = 16, PROFILE_MINUTES = 17, PROFILE_FACTORS = 18,
+            SECTIONS = 19;
+    private static final int HEADER_BYTES = 32 + SECTIONS * 16;
+
+    public final CompactGraph graph;
+    private final int[] nameOffsets;
+    private final ByteBuffer namePool;
+    private final int[] nodeTagOffsets;
+    private final int[] nodeTags;
+    private final String[] tagNames;
+
+    private GraphFile(CompactGraph graph, int[] nameOffsets, ByteBuffer namePool,
+                      int[] nodeTagOffsets, int[] nodeTags, String[] tagNames) {
+        this.graph = graph;
+        this.nameOffsets = nameOffsets;
+        this.namePool = namePool;
+        this.nodeTagOffsets = nodeTagOffsets;
+        this.nodeTags = nodeTags;
+        this.tagNames = tagNames;
+    }
+
+    // Name of the node at index i
+    public String name(int i) {
+        byte[] bytes = new byte[nameOffsets[i + 1] - nameOffsets[i]];
+        namePool.get(nameOffsets[i], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int tagCount() {
+        return tagNames.length;
+    }
+
+    public String tag(int tagId) {
+        return tagNames[tagId];
+    }
+
+    // Tag dictionary ids of the node at index i
+    public int[] tagIds(int i) {
+        return Arrays.copyOfRange(nodeTags, nodeTagOffsets[i], nodeTagOffsets[i + 1]);
+    }
+
+    public Set<String> tags(int i) {
+        Set<String> tags = new HashSet<>();
+        for (int k = nodeTagOffsets[i]; k < nodeTagOffsets[i + 1]; k++) tags.add(tagNames[nodeTags[k]]);
+        return tags;
+    }
+
+    // Node/Edge form for the Graph-based APIs. Every CSR edge becomes a one-way Edge in slot
+    // order, so the loaded snapshot is installed as the graph's compact view as is; a later
+    // addNode/addEdge rebuilds it from the edges with default profiles.
+    public Graph toGraph() {
+        CompactGraph c = graph;
+        Graph g = new Graph();
+        for (int i = 0; i < c.nodeCount; i++) g.addNode(new Node(c.ids[i], name(i), c.x[i], c.y[i], tags(i)));
+        for (int u = 0; u < c.nodeCount; u++) {
+            for (int e = c.offsets[u]; e < c.offsets[u + 1]; e++) {
+                g.addEdge(new Edge(c.ids[u], c.ids[c.targets[e]], c.distanceMeters[e], c.baseMinutes[e],
+                        false, c.peakMultiplier[e], c.offPeakMultiplier[e]));
+            }
+        }
+        g.install(c);
+        return g;
+    }
+
+    public static void write(Graph g, Path path) throws IOException {
+        CompactGraph c = g.compact();
+        String[] names = new String[c.nodeCount];
+        String[][] tags = new String[c.nodeCount][];
+        for (int i = 0; i < c.nodeCount; i++) {
+            Node node = g.idToNode.get(c.ids[i]);
+            names[i] = node.name;
+            tags[i] = node.tags.toArray(new String[0]);
+        }
+        write(c, names, tags, path);
+    }
+
+    // names and tags are indexed like the graph's nodes; either may be null
+    public static void write(CompactGraph g, String[] names, String[][] tags, Path path) throws IOException {
+        of(g, names, tags).write(path);
+    }
+
+    // Pairs a snapshot with node names and tags, encoded the way the file stores them
+    public static GraphFile of(CompactGraph g, String[] names, String[][] tags) {
+        int n = g.nodeCount;
+        byte[][] nameBytes = new byte[n][];
+        int[] nameOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            String name = names == null || names[i] == null ? "" : names[i];
+            nameBytes[i] = name.getBytes(StandardCharsets.UTF_8);
+            nameOffsets[i + 1] = Math.addExact(nameOffsets[i], nameBytes[i].length);
+        }
+        ByteBuffer namePool = ByteBuffer.allocate(nameOffsets[n]);
+        for (byte[] b : nameBytes) namePool.put(b);
+
+        Map<String, Integer> tagIds = new TreeMap<>();
+        if (tags != null) {
+            for (String[] nodeTags : tags) {
+                if (nodeTags != null) for (String t : nodeTags) tagIds.put(t, 0);
+            }
+        }
+        String[] tagNames = tagIds.keySet().toArray(new String[0]);
+        for (int t = 0; t < tagNames.length; t++) tagIds.put(tagNames[t], t);
+        int[] nodeTagOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            int count = tags == null || tags[i] == null ? 0 : tags[i].length;
+            nodeTagOffsets[i + 1] = nodeTagOffsets[i] + count;
+        }
+        int[] nodeTags = new int[nodeTagOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            for (int k = nodeTagOffsets[i]; k < nodeTagOffsets[i + 1]; k++) {
+                nodeTags[k] = tagIds.get(tags[i][k - nodeTagOffsets[i]]);
+            }
+        }
+        return new GraphFile(g, nameOffsets, namePool, nodeTagOffsets, nodeTags, tagNames);
+    }
+
+    public void write(Path path) throws IOException {
+        CompactGraph g = graph;
+        int n = g.nodeCount;
+        byte[][] tagBytes = new byte[tagNames.length][];
+        int[] tagOffsets = new int[tagNames.length + 1];
+        for (int t = 0; t < tagNames.length; t++) {
+            tagBytes[t] = tagNames[t].getBytes(StandardCharsets.UTF_8);
+            tagOffsets[t + 1] = tagOffsets[t] + tagBytes[t].length;
+        }
+
+        TrafficProfiles p = g.profiles;
+        long[] offsets = new long[SECTIONS];
+        long[] lengths = new long[SECTIONS];
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(ch, HEADER_BYTES);
+            out.section(NODE_IDS, offsets, lengths).ints(g.ids);
+            out.section(NODE_X, offsets, lengths).doubles(g.x);
+            out.section(NODE_Y, offsets, lengths).doubles(g.y);
+            out.section(NAME_OFFSETS, offsets, lengths).ints(nameOffsets);
+            out.section(NAME_POOL, offsets, lengths).bytes(namePool, nameOffsets[n]);
+            out.section(NODE_TAG_OFFSETS, offsets, lengths).ints(nodeTagOffsets);
+            out.section(NODE_TAGS, offsets, lengths).ints(nodeTags);
+            out.section(TAG_OFFSETS, offsets, lengths).ints(tagOffsets);
+            out.section(TAG_POOL, offsets, lengths);
+            for (byte[] b : tagBytes) out.bytes(b);
+            out.section(EDGE_OFFSETS, offsets, lengths).ints(g.offsets);
+            out.section(TARGETS, offsets, lengths).ints(g.targets);
+            out.section(DISTANCE, offsets, lengths).doubles(g.distanceMeters);
+            out.section(BASE, offsets, lengths).doubles(g.baseMinutes);
+            out.section(PEAK, offsets, lengths).doubles(g.peakMultiplier);
+            out.section(OFF_PEAK, offsets, lengths).doubles(g.offPeakMultiplier);
+            out.section(EDGE_PROFILE, offsets, lengths).ints(g.profile);
+            out.section(PROFILE_OFFSETS, offsets, lengths).ints(p.offsets);
+            out.section(PROFILE_MINUTES, offsets, lengths).floats(p.minutes);
+            out.section(PROFILE_FACTORS, offsets, lengths).floats(p.factors);
+            out.section(-1, offsets, lengths);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(g.edgeCount)
+                    .putInt(p.size()).putInt(p.minutes.length).putInt(tagNames.length).putInt(0);
+            for (int s = 0; s < SECTIONS; s++) header.putLong(offsets[s]).putLong(lengths[s]);
+            header.flip();
+            long at = 0;
+            while (header.hasRemaining()) at += ch.write(header, at);
+        }
+    }
+
+    public static GraphFile load(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) throw new IOException("Not a graph file: " + path);
+            ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (h.getInt() != MAGIC) throw new IOException("Not a graph file: " + path);
+            int version = h.getInt();
+            if (version != VERSION) throw new IOException("Unsupported graph file version " + version + " in " + path);
+            int n = h.getInt();
+            int m = h.getInt();
+            int profileCount = h.getInt();
+            int profilePoints = h.getInt();
+            int tagCount = h.getInt();
+            h.getInt();
+            long[] offsets = new long[SECTIONS];
+            long[] lengths = new long[SECTIONS];
+            for (int s = 0; s < SECTIONS; s++) {
+                offsets[s] = h.getLong();
+                lengths[s] = h.getLong();
+                if (offsets[s] < HEADER_BYTES || offsets[s] + lengths[s] > ch.size()) {
+                    throw new IOException("Corrupt section table in " + path);
+                }
+            }
+
+            In in = new In(ch, offsets, lengths);
+            int[] ids = in.ints(NODE_IDS, n);
+            double[] x = in.doubles(NODE_X, n);
+            double[] y = in.doubles(NODE_Y, n);
+            int[] nameOffsets = in.ints(NAME_OFFSETS, n + 1);
+            ByteBuffer namePool = in.map(NAME_POOL);
+            int[] nodeTagOffsets = in.ints(NODE_TAG_OFFSETS, n + 1);
+            int[] nodeTags = in.ints(NODE_TAGS, (int) (lengths[NODE_TAGS] / 4));
+            int[] tagOffsets = in.ints(TAG_OFFSETS, tagCount + 1);
+            ByteBuffer tagPool = in.map(TAG_POOL);
+            String[] tagNames = new String[tagCount];
+            for (int t = 0; t < tagCount; t++) {
+                byte[] b = new byte[tagOffsets[t + 1] - tagOffsets[t]];
+                tagPool.get(tagOffsets[t], b);
+                tagNames[t] = new String(b, StandardCharsets.UTF_8);
+            }
+
+            TrafficProfiles profiles = new TrafficProfiles(
+                    in.ints(PROFILE_OFFSETS, profileCount + 1),
+                    in.floats(PROFILE_MINUTES, profilePoints),
+                    in.floats(PROFILE_FACTORS, profilePoints));
+            CompactGraph graph = new CompactGraph(
+                    ids, x, y,
+                    in.ints(EDGE_OFFSETS, n + 1), in.ints(TARGETS, m),
+                    in.doubles(DISTANCE, m), in.doubles(BASE, m),
+                    in.doubles(PEAK, m), in.doubles(OFF_PEAK, m),
+                    profiles, in.ints(EDGE_PROFILE, m));
+            // The time-dependent searches assume no edge lets a later start arrive earlier
+            for (int e = 0; e < m; e++) {
+                int p = graph.profile[e];
+                if (p < 0 || p >= profiles.size() || !profiles.isFifo(p, graph.baseMinutes[e])) {
+                    throw new IOException("Edge slot " + e + " has an invalid or non-FIFO traffic profile in " + path);
+                }
+            }
+            return new GraphFile(graph, nameOffsets, namePool, nodeTagOffsets, nodeTags, tagNames);
+        }
+    }
+
+    // Buffered little-endian writer that tracks the file position for the section table
+    private static final class Out {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+        private int open = -1;
+
+        Out(FileChannel ch, long start) {
+            this.ch = ch;
+            this.position = start;
+        }
+
+        // Closes the open section and, unless id is -1, starts section id on an 8-byte boundary
+        Out section(int id, long[] offsets, long[] lengths) throws IOException {
+            if (open >= 0) lengths[open] = position + buf.position() - offsets[open];
+            while ((position + buf.position()) % 8 != 0) put(1).put((byte) 0);
+            open = id;
+            if (id >= 0) offsets[id] = position + buf.position();
+            else flush();
+            return this;
+        }
+
+        // Arrays go through typed views of the buffer in chunks rather than value by value
+        Out ints(int[] a) throws IOException {
+            for (int i = 0; i < a.length; ) {
+                int chunk = Math.min(a.length - i, buf.capacity() / 4);
+                put(chunk * 4).asIntBuffer().put(a, i, chunk);
+                buf.position(buf.position() + chunk * 4);
+                i += chunk;
+            }
+            return this;
+        }
+
+        Out doubles(double[] a) throws IOException {
+            for (int i = 0; i < a.length; ) {
+                int chunk = Math.min(a.length - i, buf.capacity() / 8);
+                put(chunk * 8).asDoubleBuffer().put(a, i, chunk);
+                buf.position(buf.position() + chunk * 8);
+                i += chunk;
+            }
+            return this;
+        }
+
+        Out floats(float[] a) throws IOException {
+            for (int i = 0; i < a.length; ) {
+                int chunk = Math.min(a.length - i, buf.capacity() / 4);
+                put(chunk * 4).asFloatBuffer().put(a, i, chunk);
+                buf.position(buf.position() + chunk * 4);
+                i += chunk;
+            }
+            return this;
+        }
+
+        // The first length bytes of pool, which is left untouched
+        Out bytes(ByteBuffer pool, int length) throws IOException {
+            ByteBuffer src = pool.duplicate();
+            src.position(0).limit(length);
+            while (src.hasRemaining()) {
+                int chunk = Math.min(src.remaining(), buf.capacity());
+                ByteBuffer slice = src.slice();
+                slice.limit(chunk);
+                put(chunk).put(slice);
+                src.position(src.position() + chunk);
+            }
+            return this;
+        }
+
+        Out bytes(byte[] a) throws IOException {
+            for (int i = 0; i < a.length; ) {
+                int chunk = Math.min(a.length - i, buf.capacity());
+                put(chunk).put(a, i, chunk);
+                i += chunk;
+            }
+            return this;
+        }
+
+        private ByteBuffer put(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+            return buf;
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) position += ch.write(buf, position);
+            buf.clear();
+        }
+    }
+
+    private static final class In {
+        private final FileChannel ch;
+        private final long[] offsets;
+        private final long[] lengths;
+
+        In(FileChannel ch, long[] offsets, long[] lengths) {
+            this.ch = ch;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+
+        MappedByteBuffer map(int section) throws IOException {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, offsets[section], lengths[section]);
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            return b;
+        }
+
+        int[] ints(int section, int count) throws IOException {
+            check(section, count * 4L);
+            int[] a = new int[count];
+            map(section).asIntBuffer().get(a);
+            return a;
+        }
+
+        double[] doubles(int section, int count) throws IOException {
+            check(section, count * 8L);
+            double[] a = new double[count];
+            map(section).asDoubleBuffer().get(a);
+            return a;
+        }
+
+        float[] floats(int section, int count) throws IOException {
+            check(section, count * 4L);
+            float[] a = new float[count];
+            map(section).asFloatBuffer().get(a);
+            return a;
+        }
+
+        private void check(int section, long bytes) throws IOException {
+            if (lengths[section] != bytes) throw new IOException("Section " + section + " has the wrong length");
+        }
+    }
+}
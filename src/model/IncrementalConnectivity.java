@@ -0,0 +1,267 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// A Graph's strong and weak components kept current as nodes and edges are added, so each
+// rebuilt CompactGraph gets its Connectivity labels in O(n) instead of a fresh Tarjan pass.
+//
+// Weak components are a union-find over node slots. Strong components keep a topological order
+// as positions in an array (Marchetti-Spaccamela, Nanni and Rohnert): an edge from an earlier
+// component to a later one changes nothing; an edge (u, v) against the order searches forward
+// from v's component through the components positioned up to u's. If the search reaches u the
+// new edge closes a cycle and the components on it merge; either way the visited components
+// move, in their old relative order, to just after everything else in that window. Merging
+// leaves holes in the order, which only cost a little walking.
+final class IncrementalConnectivity {
+    private final Graph graph;
+    private final Map<Integer, Integer> slotOf;
+
+    // Per node slot
+    private int[] comp;
+    private int[] nextMember;
+    private int[] parent;
+    private int[] ids;
+    private int slots;
+
+    // Per component: first member, member count, position in the order (-1 once merged away),
+    // and search marks for the current insertion
+    private int[] head;
+    private int[] size;
+    private int[] pos;
+    private int[] seen;
+    private int[] reaches;
+    private int[] local;
+    private int comps;
+    private int stamp;
+
+    // Per position: the component there, or -1
+    private int[] order;
+    private int positions;
+
+    private IncrementalConnectivity(Graph graph, CompactGraph c, Connectivity labels) {
+        this.graph = graph;
+        int n = c.nodeCount;
+        int capacity = Math.max(16, n + n / 4);
+        this.slotOf = new HashMap<>(capacity * 2);
+        this.ids = new int[capacity];
+        this.comp = new int[capacity];
+        this.nextMember = new int[capacity];
+        this.parent = new int[capacity];
+        this.head = new int[capacity];
+        this.size = new int[capacity];
+        this.pos = new int[capacity];
+        this.seen = new int[capacity];
+        this.reaches = new int[capacity];
+        this.local = new int[capacity];
+        this.order = new int[capacity];
+        Arrays.fill(head, -1);
+        // A fresh Tarjan labelling numbers components 0..count-1 in topological order
+        comps = positions = labels.strongCount();
+        for (int k = 0; k < comps; k++) {
+            pos[k] = k;
+            order[k] = k;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            ids[i] = c.ids[i];
+            slotOf.put(c.ids[i], i);
+            int k = labels.strongComponent(i);
+            comp[i] = k;
+            nextMember[i] = head[k];
+            head[k] = i;
+            size[k]++;
+            parent[i] = labels.weakComponent(i);
+        }
+        slots = n;
+    }
+
+    static IncrementalConnectivity of(Graph graph, CompactGraph c) {
+        return new IncrementalConnectivity(graph, c, c.connectivity());
+    }
+
+    void addNode(int id) {
+        slot(id);
+    }
+
+    // Call after the edge is in the graph's adjacency
+    void addEdge(int fromId, int toId) {
+        int a = slot(fromId);
+        int b = slot(toId);
+        int ra = Connectivity.find(parent, a);
+        int rb = Connectivity.find(parent, b);
+        if (ra != rb) parent[Math.max(ra, rb)] = Math.min(ra, rb);
+
+        int cu = comp[a];
+        int cv = comp[b];
+        if (cu == cv || pos[cu] < pos[cv]) return;
+        int lo = pos[cv];
+        int hi = pos[cu];
+
+        // Components reachable from cv within the window, and the links among them
+        stamp++;
+        int[] found = new int[8];
+        int foundCount = 0;
+        int[] linkFrom = new int[16];
+        int[] linkTo = new int[16];
+        int links = 0;
+        seen[cv] = stamp;
+        found[foundCount++] = cv;
+        for (int f = 0; f < foundCount; f++) {
+            int c = found[f];
+            for (int m = head[c]; m >= 0; m = nextMember[m]) {
+                for (Edge e : graph.neighbors(ids[m])) {
+                    Integer w = slotOf.get(e.toId);
+                    if (w == null) continue;
+                    int d = comp[w];
+                    if (d == c || pos[d] < lo || pos[d] > hi) continue;
+                    if (links == linkFrom.length) {
+                        linkFrom = Arrays.copyOf(linkFrom, links * 2);
+                        linkTo = Arrays.copyOf(linkTo, links * 2);
+                    }
+                    linkFrom[links] = c;
+                    linkTo[links++] = d;
+                    if (seen[d] != stamp) {
+                        seen[d] = stamp;
+                        if (foundCount == found.length) found = Arrays.copyOf(found, foundCount * 2);
+                        found[foundCount++] = d;
+                    }
+                }
+            }
+        }
+
+        // If cu was reached, the cycle is every found component that reaches cu back: a
+        // backward search over the links found
+        boolean cycle = seen[cu] == stamp;
+        if (cycle) {
+            for (int f = 0; f < foundCount; f++) local[found[f]] = f;
+            int[] start = new int[foundCount + 1];
+            for (int l = 0; l < links; l++) start[local[linkTo[l]] + 1]++;
+            for (int f = 0; f < foundCount; f++) start[f + 1] += start[f];
+            int[] fill = Arrays.copyOf(start, foundCount);
+            int[] into = new int[links];
+            for (int l = 0; l < links; l++) into[fill[local[linkTo[l]]]++] = linkFrom[l];
+            int[] queue = new int[foundCount];
+            int tail = 0;
+            reaches[cu] = stamp;
+            queue[tail++] = cu;
+            for (int q = 0; q < tail; q++) {
+                int d = local[queue[q]];
+                for (int i = start[d]; i < start[d + 1]; i++) {
+                    int c = into[i];
+                    if (reaches[c] != stamp) {
+                        reaches[c] = stamp;
+                        queue[tail++] = c;
+                    }
+                }
+            }
+        }
+
+        int[] window = Arrays.copyOfRange(order, lo, hi + 1);
+        int p = lo;
+        for (int c : window) {
+            if (c >= 0 && seen[c] != stamp) place(c, p++);
+        }
+        if (cycle) {
+            int merged = -1;
+            for (int c : window) {
+                if (c >= 0 && reaches[c] == stamp) merged = merged < 0 ? c : merge(merged, c);
+            }
+            place(merged, p++);
+        }
+        for (int c : window) {
+            if (c >= 0 && seen[c] == stamp && !(cycle && reaches[c] == stamp)) place(c, p++);
+        }
+        while (p <= hi) order[p++] = -1;
+    }
+
+    // Labels for a snapshot of the graph
+    Connectivity labels(CompactGraph c) {
+        int n = c.nodeCount;
+        for (int i = 0; i < n; i++) slot(c.ids[i]);
+        int[] strong = new int[n];
+        int[] weak = new int[n];
+        stamp++;
+        int strongCount = 0;
+        int weakCount = 0;
+        int[] rootSeen = new int[slots];
+        for (int i = 0; i < n; i++) {
+            int slot = slot(c.ids[i]);
+            int k = comp[slot];
+            strong[i] = pos[k];
+            if (seen[k] != stamp) {
+                seen[k] = stamp;
+                strongCount++;
+            }
+            int root = Connectivity.find(parent, slot);
+            weak[i] = root;
+            if (rootSeen[root] == 0) {
+                rootSeen[root] = 1;
+                weakCount++;
+            }
+        }
+        return new Connectivity(strong, weak, strongCount, weakCount);
+    }
+
+    private void place(int c, int p) {
+        pos[c] = p;
+        order[p] = c;
+    }
+
+    // Folds the smaller component into the larger and returns the survivor
+    private int merge(int a, int b) {
+        if (size[a] < size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int last = -1;
+        for (int m = head[b]; m >= 0; m = nextMember[m]) {
+            comp[m] = a;
+            last = m;
+        }
+        if (last >= 0) {
+            nextMember[last] = head[a];
+            head[a] = head[b];
+        }
+        size[a] += size[b];
+        head[b] = -1;
+        size[b] = 0;
+        pos[b] = -1;
+        return a;
+    }
+
+    // The node's slot, creating it (as a component of its own, last in the order) if new
+    private int slot(int id) {
+        Integer known = slotOf.get(id);
+        if (known != null) return known;
+        if (slots == ids.length) {
+            int cap = slots * 2;
+            ids = Arrays.copyOf(ids, cap);
+            comp = Arrays.copyOf(comp, cap);
+            nextMember = Arrays.copyOf(nextMember, cap);
+            parent = Arrays.copyOf(parent, cap);
+        }
+        if (comps == head.length || positions == order.length) {
+            int cap = Math.max(comps, positions) * 2;
+            head = Arrays.copyOf(head, cap);
+            size = Arrays.copyOf(size, cap);
+            pos = Arrays.copyOf(pos, cap);
+            seen = Arrays.copyOf(seen, cap);
+            reaches = Arrays.copyOf(reaches, cap);
+            local = Arrays.copyOf(local, cap);
+            order = Arrays.copyOf(order, cap);
+        }
+        int s = slots++;
+        int k = comps++;
+        ids[s] = id;
+        slotOf.put(id, s);
+        parent[s] = s;
+        comp[s] = k;
+        nextMember[s] = -1;
+        head[k] = s;
+        size[k] = 1;
+        place(k, positions++);
+        return s;
+    }
+}
@@ -0,0 +1,113 @@
+package model;
+
+import java.util.Arrays;
+
+// Publishes live traffic over one base snapshot. A feed stages per-edge factors and publishes
+// them in batches; each publish builds a new TrafficOverlay (copy-on-write by page) and swaps
+// in base.withTraffic(overlay) through a volatile reference. Readers call snapshot() once per
+// query and route on what they got, so they never block and never see half a batch; writers
+// only contend with each other.
+public final class LiveTraffic {
+    private final CompactGraph base;
+    private volatile CompactGraph current;
+
+    private final Object writeLock = new Object();
+    private int[] pendingEdges = new int[64];
+    private double[] pendingFactors = new double[64];
+    private int pending;
+
+    public LiveTraffic(CompactGraph base) {
+        if (base.traffic != null) throw new IllegalArgumentException("Base snapshot already has live traffic");
+        this.base = base;
+        this.current = base.withTraffic(TrafficOverlay.none(base.edgeCount));
+    }
+
+    public CompactGraph base() {
+        return base;
+    }
+
+    // The latest published snapshot
+    public CompactGraph snapshot() {
+        return current;
+    }
+
+    public long version() {
+        return current.traffic.version;
+    }
+
+    // Stages factor for edge slot e until the next publish. A finite factor above
+    // base.maxLiveFactor(e) is lowered to it, so the edge stays FIFO for the time-dependent
+    // searches; infinity still closes the edge.
+    public void stage(int e, double factor) {
+        if (e < 0 || e >= base.edgeCount) throw new IllegalArgumentException("No edge slot " + e);
+        if (!(factor >= 1.0)) throw new IllegalArgumentException("Traffic factor must be at least 1: " + factor);
+        double limit = base.maxLiveFactor(e);
+        // Overlays store floats; round the cap down so the stored factor cannot exceed it
+        if (factor > limit && factor != Double.POSITIVE_INFINITY) factor = Math.max(1.0, Math.nextDown((float) limit));
+        synchronized (writeLock) {
+            if (pending == pendingEdges.length) {
+                pendingEdges = Arrays.copyOf(pendingEdges, pending * 2);
+                pendingFactors = Arrays.copyOf(pendingFactors, pending * 2);
+            }
+            pendingEdges[pending] = e;
+            pendingFactors[pending] = factor;
+            pending++;
+        }
+    }
+
+    // Stages factor for every edge from fromId to toId; returns false if there is none
+    public boolean stage(int fromId, int toId, double factor) {
+        int u = base.indexOf(fromId);
+        int v = base.indexOf(toId);
+        if (u < 0 || v < 0) return false;
+        boolean found = false;
+        for (int e = base.offsets[u], end = base.offsets[u + 1]; e < end; e++) {
+            if (base.targets[e] == v) {
+                stage(e, factor);
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    public int pending() {
+        synchronized (writeLock) {
+            return pending;
+        }
+    }
+
+    // Makes every staged factor visible at once and returns the new snapshot
+    public CompactGraph publish() {
+        synchronized (writeLock) {
+            if (pending == 0) return current;
+            TrafficOverlay next = current.traffic.with(pendingEdges, pendingFactors, pending);
+            pending = 0;
+            CompactGraph snapshot = base.withTraffic(next);
+            current = snapshot;
+            return snapshot;
+        }
+    }
+
+    // Stages and publishes one batch; nothing is staged if any entry is invalid
+    public CompactGraph apply(int[] edges, double[] factors) {
+        if (factors.length != edges.length) throw new IllegalArgumentException("edges and factors differ in length");
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] < 0 || edges[i] >= base.edgeCount) throw new IllegalArgumentException("No edge slot " + edges[i]);
+            if (!(factors[i] >= 1.0)) throw new IllegalArgumentException("Traffic factor must be at least 1: " + factors[i]);
+        }
+        synchronized (writeLock) {
+            for (int i = 0; i < edges.length; i++) stage(edges[i], factors[i]);
+            return publish();
+        }
+    }
+
+    // Drops every override, published or staged
+    public CompactGraph clear() {
+        synchronized (writeLock) {
+            pending = 0;
+            CompactGraph snapshot = base.withTraffic(current.traffic.cleared());
+            current = snapshot;
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package model;
+
+import java.util.Arrays;
+
+// Immutable live-traffic factors, one per edge slot, applied on top of the daily profiles.
+// Factors live in fixed-size pages; a page that was never touched is null and reads as 1.0.
+// with() copies only the pages its updates touch and shares the rest, so publishing a batch
+// costs O(batch + touched pages) rather than O(edges), and every older overlay stays valid
+// for the queries still reading it.
+//
+// Factors are at least 1: live traffic only slows edges down relative to the profile, which
+// keeps every precomputed lower bound (landmarks, lower-bound trees, minTravelMinutes of the
+// base graph) admissible. Infinity closes an edge; 1 clears an override. A factor also scales
+// how fast the profile falls, so LiveTraffic caps finite factors at the graph's
+// maxLiveFactor(e) to keep every edge FIFO; overlays built by hand should do the same.
+public final class TrafficOverlay {
+    static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    public final int edgeCount;
+    // Incremented by every with(); 0 for an overlay with no overrides
+    public final long version;
+    private final float[][] pages;
+
+    private TrafficOverlay(int edgeCount, long version, float[][] pages) {
+        this.edgeCount = edgeCount;
+        this.version = version;
+        this.pages = pages;
+    }
+
+    public static TrafficOverlay none(int edgeCount) {
+        return new TrafficOverlay(edgeCount, 0L, new float[(edgeCount + PAGE_MASK) >>> PAGE_BITS][]);
+    }
+
+    public double factor(int e) {
+        float[] page = pages[e >>> PAGE_BITS];
+        return page == null ? 1.0 : page[e & PAGE_MASK];
+    }
+
+    // A new overlay with factors[i] on edge slot edges[i]; later duplicates win
+    public TrafficOverlay with(int[] edges, double[] factors) {
+        return with(edges, factors, edges.length);
+    }
+
+    public TrafficOverlay with(int[] edges, double[] factors, int count) {
+        if (factors.length < count || edges.length < count) throw new IllegalArgumentException("count exceeds arrays");
+        float[][] next = pages.clone();
+        boolean[] copied = new boolean[next.length];
+        for (int i = 0; i < count; i++) {
+            int e = edges[i];
+            double f = factors[i];
+            if (e < 0 || e >= edgeCount) throw new IllegalArgumentException("No edge slot " + e);
+            if (!(f >= 1.0)) throw new IllegalArgumentException("Traffic factor must be at least 1: " + f);
+            int p = e >>> PAGE_BITS;
+            if (!copied[p]) {
+                if (next[p] == null) {
+                    next[p] = new float[Math.min(PAGE_SIZE, edgeCount - (p << PAGE_BITS))];
+                    Arrays.fill(next[p], 1.0f);
+                } else {
+                    next[p] = next[p].clone();
+                }
+                copied[p] = true;
+            }
+            next[p][e & PAGE_MASK] = (float) f;
+        }
+        return new TrafficOverlay(edgeCount, version + 1, next);
+    }
+
+    // A new overlay with no overrides, numbered after this one
+    public TrafficOverlay cleared() {
+        return new TrafficOverlay(edgeCount, version + 1, new float[pages.length][]);
+    }
+
+    // Edge slots whose factor is lower here than in before, or null past limit of them. Pages
+    // the two overlays share are skipped without being read.
+    public int[] relievedEdges(TrafficOverlay before, int limit) {
+        if (before.edgeCount != edgeCount) return null;
+        int[] out = new int[limit];
+        int count = 0;
+        for (int p = 0; p < pages.length; p++) {
+            float[] now = pages[p];
+            float[] then = before.pages[p];
+            if (now == then) continue;
+            int base = p << PAGE_BITS;
+            int size = Math.min(PAGE_SIZE, edgeCount - base);
+            for (int i = 0; i < size; i++) {
+                float a = now == null ? 1.0f : now[i];
+                float b = then == null ? 1.0f : then[i];
+                if (a >= b) continue;
+                if (count == limit) return null;
+                out[count++] = base + i;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+}
@@ -0,0 +1,169 @@
+package model;
+
+import java.util.*;
+
+// Shared table of daily travel-time profiles. Profile p is a periodic piecewise-linear factor
+// over the minute of day with breakpoints minutes/factors[offsets[p] .. offsets[p + 1] - 1];
+// an edge's travel time when entered at minute m is baseMinutes * factor(p, m).
+// Many edges share one profile, so the table stays small however large the graph is.
+public final class TrafficProfiles {
+    public static final int MINUTES_PER_DAY = 1440;
+
+    // Legacy peak windows 07:00-10:00 and 16:00-19:00, as minute-of-day boundaries
+    private static final int[] PEAK_STARTS = {7 * 60, 16 * 60};
+    private static final int[] PEAK_ENDS = {10 * 60, 19 * 60};
+    private static final double DEFAULT_RAMP_MINUTES = 30.0;
+    private static final double MAX_RAMP_MINUTES = 150.0;
+    private static final double FIFO_SLACK = 1e-5;
+
+    public final int[] offsets;
+    public final float[] minutes;
+    public final float[] factors;
+    private final float[] minFactor;
+
+    TrafficProfiles(int[] offsets, float[] minutes, float[] factors) {
+        this.offsets = offsets;
+        this.minutes = minutes;
+        this.factors = factors;
+        this.minFactor = new float[offsets.length - 1];
+        for (int p = 0; p < minFactor.length; p++) {
+            float min = Float.POSITIVE_INFINITY;
+            for (int i = offsets[p]; i < offsets[p + 1]; i++) min = Math.min(min, factors[i]);
+            minFactor[p] = min;
+        }
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    // Factor of profile p at minuteOfDay, interpolating across midnight between the last and first points
+    public double factor(int p, double minuteOfDay) {
+        int first = offsets[p];
+        int last = offsets[p + 1] - 1;
+        if (first == last) return factors[first];
+        double m = minuteOfDay;
+        if (m < 0 || m >= MINUTES_PER_DAY) m = m - Math.floor(m / MINUTES_PER_DAY) * MINUTES_PER_DAY;
+        if (m < minutes[first] || m >= minutes[last]) {
+            double from = minutes[last];
+            double span = minutes[first] + MINUTES_PER_DAY - from;
+            double along = m >= from ? m - from : m + MINUTES_PER_DAY - from;
+            return factors[last] + (factors[first] - factors[last]) * (along / span);
+        }
+        int i = first;
+        while (minutes[i + 1] <= m) i++;
+        double t = (m - minutes[i]) / (minutes[i + 1] - minutes[i]);
+        return factors[i] + (factors[i + 1] - factors[i]) * t;
+    }
+
+    public double minFactor(int p) {
+        return minFactor[p];
+    }
+
+    // Travel times baseMinutes * factor are FIFO (entering later never means leaving earlier)
+    // as long as no segment falls faster than one minute per minute. Breakpoints are floats, so
+    // a ramp built to fall at exactly that rate is allowed a little rounding.
+    public boolean isFifo(int p, double baseMinutes) {
+        int first = offsets[p];
+        int last = offsets[p + 1] - 1;
+        for (int i = first; i <= last; i++) {
+            int j = i == last ? first : i + 1;
+            double span = minutes[j] - minutes[i];
+            if (span <= 0) span += MINUTES_PER_DAY;
+            if (baseMinutes * (factors[j] - factors[i]) / span < -1.0 - FIFO_SLACK) return false;
+        }
+        return true;
+    }
+
+    // Largest scale s for which baseMinutes * s * factor is still FIFO (see isFifo), or
+    // infinity for a profile that never falls
+    public double maxFifoScale(int p, double baseMinutes) {
+        int first = offsets[p];
+        int last = offsets[p + 1] - 1;
+        double steepest = 0.0;
+        for (int i = first; i <= last; i++) {
+            int j = i == last ? first : i + 1;
+            double span = minutes[j] - minutes[i];
+            if (span <= 0) span += MINUTES_PER_DAY;
+            steepest = Math.max(steepest, (factors[i] - factors[j]) / span);
+        }
+        return steepest > 0 && baseMinutes > 0 ? 1.0 / (baseMinutes * steepest) : Double.POSITIVE_INFINITY;
+    }
+
+    public static final class Builder {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<float[]> pointMinutes = new ArrayList<>();
+        private final List<float[]> pointFactors = new ArrayList<>();
+        private int points;
+
+        // Adds a profile, or returns the index of an identical one already in the table.
+        // Breakpoint minutes must be strictly increasing within [0, 1440).
+        public int add(double[] minutes, double[] factors) {
+            if (minutes.length == 0 || minutes.length != factors.length) {
+                throw new IllegalArgumentException("A profile needs matching, non-empty minutes and factors");
+            }
+            float[] m = new float[minutes.length];
+            float[] f = new float[factors.length];
+            for (int i = 0; i < m.length; i++) {
+                if (minutes[i] < 0 || minutes[i] >= MINUTES_PER_DAY || (i > 0 && minutes[i] <= minutes[i - 1])) {
+                    throw new IllegalArgumentException("Profile minutes must increase within one day: " + Arrays.toString(minutes));
+                }
+                if (!(factors[i] > 0)) throw new IllegalArgumentException("Profile factors must be positive");
+                m[i] = (float) minutes[i];
+                f[i] = (float) factors[i];
+            }
+            String key = Arrays.toString(m) + Arrays.toString(f);
+            Integer existing = index.get(key);
+            if (existing != null) return existing;
+            int p = pointMinutes.size();
+            pointMinutes.add(m);
+            pointFactors.add(f);
+            points += m.length;
+            index.put(key, p);
+            return p;
+        }
+
+        // Smoothed version of the legacy peak/off-peak switch: the factor ramps linearly across
+        // each window boundary. The ramp is widened for long edges so their profile stays FIFO,
+        // up to a cap that keeps the three-hour windows distinct. An edge too long for even the
+        // capped ramp spans most of a window whenever it is entered, so it gets a smaller swing
+        // between the two factors instead: exactly as much as the capped ramp keeps FIFO.
+        public int peakWindows(double baseMinutes, double peak, double offPeak) {
+            if (peak == offPeak) return add(new double[]{0.0}, new double[]{peak});
+            double swing = baseMinutes * Math.abs(peak - offPeak);
+            if (swing > MAX_RAMP_MINUTES) {
+                peak = offPeak + Math.signum(peak - offPeak) * MAX_RAMP_MINUTES / baseMinutes;
+                swing = MAX_RAMP_MINUTES;
+            }
+            double ramp = Math.max(DEFAULT_RAMP_MINUTES, Math.ceil(swing / 15.0) * 15.0);
+            double half = Math.min(ramp, MAX_RAMP_MINUTES) / 2;
+            double[] m = new double[PEAK_STARTS.length * 4];
+            double[] f = new double[m.length];
+            int k = 0;
+            for (int w = 0; w < PEAK_STARTS.length; w++) {
+                m[k] = PEAK_STARTS[w] - half;
+                f[k++] = offPeak;
+                m[k] = PEAK_STARTS[w] + half;
+                f[k++] = peak;
+                m[k] = PEAK_ENDS[w] - half;
+                f[k++] = peak;
+                m[k] = PEAK_ENDS[w] + half;
+                f[k++] = offPeak;
+            }
+            return add(m, f);
+        }
+
+        public TrafficProfiles build() {
+            int[] offsets = new int[pointMinutes.size() + 1];
+            float[] minutes = new float[points];
+            float[] factors = new float[points];
+            for (int p = 0; p < pointMinutes.size(); p++) {
+                float[] m = pointMinutes.get(p);
+                System.arraycopy(m, 0, minutes, offsets[p], m.length);
+                System.arraycopy(pointFactors.get(p), 0, factors, offsets[p], m.length);
+                offsets[p + 1] = offsets[p] + m.length;
+            }
+            return new TrafficProfiles(offsets, minutes, factors);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package route;
+
+import java.util.Arrays;
+
+// Dense rows x cols matrix of path costs, one primitive array per row, in double or, to halve
+// memory, float precision. Unreachable pairs hold positive infinity.
+public final class DistanceMatrix {
+    public final int rows;
+    public final int cols;
+    private final double[][] doubles;
+    private final float[][] floats;
+
+    private DistanceMatrix(int rows, int cols, double[][] doubles, float[][] floats) {
+        this.rows = rows;
+        this.cols = cols;
+        this.doubles = doubles;
+        this.floats = floats;
+    }
+
+    public static DistanceMatrix of(int rows, int cols, boolean singlePrecision) {
+        if (singlePrecision) {
+            float[][] f = new float[rows][cols];
+            for (float[] row : f) Arrays.fill(row, Float.POSITIVE_INFINITY);
+            return new DistanceMatrix(rows, cols, null, f);
+        }
+        double[][] d = new double[rows][cols];
+        for (double[] row : d) Arrays.fill(row, Double.POSITIVE_INFINITY);
+        return new DistanceMatrix(rows, cols, d, null);
+    }
+
+    public boolean isSinglePrecision() {
+        return floats != null;
+    }
+
+    public double get(int i, int j) {
+        return floats != null ? floats[i][j] : doubles[i][j];
+    }
+
+    public void set(int i, int j, double value) {
+        if (floats != null) floats[i][j] = (float) value;
+        else doubles[i][j] = value;
+    }
+
+    // The backing rows, for kernels that work on them directly; exactly one is non-null
+    public double[][] doubleRows() {
+        return doubles;
+    }
+
+    public float[][] floatRows() {
+        return floats;
+    }
+
+    // A double[][] copy, or the backing rows themselves when they already are one
+    public double[][] toArray() {
+        if (doubles != null) return doubles;
+        double[][] out = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) out[i][j] = floats[i][j];
+        }
+        return out;
+    }
+}
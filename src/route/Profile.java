@@ -0,0 +1,79 @@
+package route;
+
+import model.Graph;
+
+import java.util.Collections;
+import java.util.List;
+
+// Earliest arrival as a function of departure time over a window. Times are minutes after
+// midnight of the departure day; a window that runs past midnight continues beyond 1440.
+// The arrival function is linear between consecutive breakpoints.
+public final class Profile {
+    public final double[] departMinutes;
+    public final double[] arriveMinutes;
+    public final List<Change> changes;
+
+    // The route to take when leaving at or after departMinute, until the next change
+    public static final class Change {
+        public final double departMinute;
+        public final Route route;
+
+        public Change(double departMinute, Route route) {
+            this.departMinute = departMinute;
+            this.route = route;
+        }
+    }
+
+    public Profile(double[] departMinutes, double[] arriveMinutes, List<Change> changes) {
+        this.departMinutes = departMinutes;
+        this.arriveMinutes = arriveMinutes;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public double arrivalAt(double departMinute) {
+        int last = departMinutes.length - 1;
+        if (departMinute <= departMinutes[0]) return arriveMinutes[0];
+        if (departMinute >= departMinutes[last]) return arriveMinutes[last];
+        int i = 0;
+        while (departMinutes[i + 1] < departMinute) i++;
+        double t = (departMinute - departMinutes[i]) / (departMinutes[i + 1] - departMinutes[i]);
+        return arriveMinutes[i] + (arriveMinutes[i + 1] - arriveMinutes[i]) * t;
+    }
+
+    public double travelMinutesAt(double departMinute) {
+        return arrivalAt(departMinute) - departMinute;
+    }
+
+    // Travel time is linear between breakpoints, so its minimum is at one of them
+    public double bestDepartureMinute() {
+        int best = 0;
+        for (int i = 1; i < departMinutes.length; i++) {
+            if (arriveMinutes[i] - departMinutes[i] < arriveMinutes[best] - departMinutes[best]) best = i;
+        }
+        return departMinutes[best];
+    }
+
+    public Route routeAt(double departMinute) {
+        Route route = changes.get(0).route;
+        for (Change c : changes) {
+            if (c.departMinute > departMinute) break;
+            route = c.route;
+        }
+        return route;
+    }
+
+    public String pretty(Graph g) {
+        StringBuilder sb = new StringBuilder();
+        double best = bestDepartureMinute();
+        sb.append(String.format("Best departure %s: %.1f min", clock(best), travelMinutesAt(best)));
+        for (Change c : changes) {
+            sb.append(String.format("%n  from %s: %s", clock(c.departMinute), c.route.pretty(g)));
+        }
+        return sb.toString();
+    }
+
+    private static String clock(double minute) {
+        long m = Math.round(minute) % 1440;
+        return String.format("%02d:%02d", m / 60, m % 60);
+    }
+}
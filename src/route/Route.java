@@ -2,13 +2,14 @@ package route;
 import model.Graph;
 import java.util.List;
 
+// Immutable; the node sequence is copied on construction, so routes can be shared and cached
 public final class Route {
     public final List<Integer> nodeSequence;
     public final double totalDistanceMeters;
     public final double totalMinutes;
 
     public Route(List<Integer> nodeSequence, double totalDistanceMeters, double totalMinutes) {
-        this.nodeSequence = nodeSequence;
+        this.nodeSequence = List.copyOf(nodeSequence);
         this.totalDistanceMeters = totalDistanceMeters;
         this.totalMinutes = totalMinutes;
     }
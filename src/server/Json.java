@@ -0,0 +1,117 @@
+package server;
+
+import java.util.List;
+
+// Minimal JSON writer for the server's responses; non-finite numbers are written as null
+final class Json {
+    private final StringBuilder sb = new StringBuilder(256);
+    private boolean needComma;
+
+    Json beginObject() {
+        comma();
+        sb.append('{');
+        needComma = false;
+        return this;
+    }
+
+    Json endObject() {
+        sb.append('}');
+        needComma = true;
+        return this;
+    }
+
+    Json beginArray() {
+        comma();
+        sb.append('[');
+        needComma = false;
+        return this;
+    }
+
+    Json endArray() {
+        sb.append(']');
+        needComma = true;
+        return this;
+    }
+
+    Json key(String name) {
+        comma();
+        string(name);
+        sb.append(':');
+        needComma = false;
+        return this;
+    }
+
+    Json value(String s) {
+        comma();
+        if (s == null) sb.append("null");
+        else string(s);
+        needComma = true;
+        return this;
+    }
+
+    Json value(double d) {
+        comma();
+        if (Double.isFinite(d)) {
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) sb.append((long) d);
+            else sb.append(d);
+        } else {
+            sb.append("null");
+        }
+        needComma = true;
+        return this;
+    }
+
+    Json value(long v) {
+        comma();
+        sb.append(v);
+        needComma = true;
+        return this;
+    }
+
+    Json value(boolean b) {
+        comma();
+        sb.append(b);
+        needComma = true;
+        return this;
+    }
+
+    Json values(List<Integer> ints) {
+        beginArray();
+        for (int v : ints) value(v);
+        return endArray();
+    }
+
+    Json nullValue() {
+        comma();
+        sb.append("null");
+        needComma = true;
+        return this;
+    }
+
+    private void comma() {
+        if (needComma) sb.append(',');
+    }
+
+    private void string(String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
@@ -0,0 +1,339 @@
+package server;
+
+import algorithm.AStar;
+import algorithm.AlternativeRoutes;
+import algorithm.DistanceTable;
+import algorithm.KeywordIndex;
+import algorithm.Landmarks;
+import algorithm.RouteSearch;
+import algorithm.SearchWorkspace;
+import algorithm.SpatialIndex;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.CompactGraph;
+import model.Graph;
+import model.GraphFile;
+import route.DistanceMatrix;
+import route.Route;
+import route.WeightMode;
+import util.GraphBuilder;
+import util.QueryMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// JSON routing service over the JDK's built-in HTTP server. Every request reads one immutable
+// Snapshot (graph, landmarks, keyword and spatial indexes) through a volatile reference, so the
+// query path takes no locks; replace() swaps in a new snapshot for later requests while
+// in-flight ones finish on the old one. Requests run one per virtual thread when the JDK has
+// them, borrowing search state from a pool, otherwise on a bounded pool of platform threads
+// that each keep their own.
+//
+//   GET /shortest?from=&to=&depart=HH:MM            DISTANCE route
+//   GET /fastest?from=&to=&depart=HH:MM             TIME route
+//   GET /via?from=&to=&keyword=&k=&mode=&depart=     keyword via-routes
+//   GET /alternatives?from=&to=&k=&mode=&depart=     k shortest routes
+//   GET /matrix?sources=1,2&targets=3,4&mode=&depart=
+//   GET /health
+//   GET /metrics                                     QueryMetrics text dump
+//
+// from/to accept a node id or "x,y", which snaps to the nearest node. depart defaults to now.
+public final class RouteServer {
+    private static final int LANDMARKS = 8;
+
+    public static final class Snapshot {
+        public final Graph graph;
+        public final CompactGraph compact;
+        final Landmarks landmarks;
+        final KeywordIndex keywords;
+        final SpatialIndex spatial;
+
+        public Snapshot(Graph graph) {
+            this.graph = graph;
+            this.compact = graph.compact();
+            this.landmarks = Landmarks.build(compact, LANDMARKS, Landmarks.Selection.AVOID, 1L);
+            this.keywords = KeywordIndex.of(graph);
+            this.spatial = SpatialIndex.build(compact);
+        }
+
+        private Snapshot(Snapshot base, CompactGraph live) {
+            this.graph = base.graph;
+            this.compact = live;
+            this.landmarks = base.landmarks;
+            this.keywords = base.keywords;
+            this.spatial = base.spatial;
+        }
+
+        // The same indexes over a live-traffic view of this snapshot's graph (see LiveTraffic).
+        // Live factors only slow edges down, so the landmark bounds stay admissible.
+        public Snapshot withTraffic(CompactGraph live) {
+            if (live.targets != compact.targets || live.baseMinutes != compact.baseMinutes) {
+                throw new IllegalArgumentException("Live snapshot is not over this graph");
+            }
+            return new Snapshot(this, live);
+        }
+    }
+
+    private final HttpServer http;
+    private final ExecutorService executor;
+    // Search contexts for virtual threads; null on a platform pool
+    private final SearchWorkspace.Pool workspaces;
+    private volatile Snapshot snapshot;
+
+    public RouteServer(Graph graph, InetSocketAddress address) throws IOException {
+        this.snapshot = new Snapshot(graph);
+        this.executor = requestExecutor();
+        this.workspaces = executor instanceof ThreadPoolExecutor ? null : new SearchWorkspace.Pool(poolSize());
+        this.http = HttpServer.create(address, 1024);
+        http.createContext("/", this::handle);
+        http.setExecutor(executor);
+    }
+
+    // Binds to the loopback interface; port 0 picks a free port
+    public static RouteServer loopback(Graph graph, int port) throws IOException {
+        return new RouteServer(graph, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public void stop() {
+        http.stop(0);
+        executor.shutdown();
+    }
+
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public void replace(Snapshot next) {
+        snapshot = next;
+    }
+
+    // Virtual thread per request on JDKs that have it (looked up reflectively so the code still
+    // builds for 17), otherwise a fixed pool sized for blocking socket I/O
+    static ExecutorService requestExecutor() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return (ExecutorService) executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(poolSize());
+        }
+    }
+
+    private static int poolSize() {
+        return Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (workspaces == null) {
+            respond(exchange);
+            return;
+        }
+        SearchWorkspace.Lease lease = workspaces.lease();
+        try {
+            respond(exchange);
+        } finally {
+            lease.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        Snapshot snap = snapshot;
+        int status = 200;
+        String type = "application/json; charset=utf-8";
+        String body;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                status = 405;
+                body = error("Only GET is supported");
+            } else {
+                Map<String, String> q = query(exchange.getRequestURI().getRawQuery());
+                switch (exchange.getRequestURI().getPath()) {
+                    case "/shortest": body = route(snap, q, WeightMode.DISTANCE); break;
+                    case "/fastest": body = route(snap, q, WeightMode.TIME); break;
+                    case "/via": body = via(snap, q); break;
+                    case "/alternatives": body = alternatives(snap, q); break;
+                    case "/matrix": body = matrix(snap, q); break;
+                    case "/metrics":
+                        type = "text/plain; charset=utf-8";
+                        body = QueryMetrics.dump();
+                        break;
+                    case "/health":
+                        body = new Json().beginObject().key("nodes").value(snap.compact.nodeCount)
+                                .key("edges").value(snap.compact.edgeCount)
+                                .key("trafficVersion").value(snap.compact.traffic == null ? 0 : snap.compact.traffic.version)
+                                .endObject().toString();
+                        break;
+                    default:
+                        status = 404;
+                        body = error("Unknown endpoint");
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(e.toString());
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String route(Snapshot snap, Map<String, String> q, WeightMode mode) {
+        int from = node(snap, q, "from");
+        int to = node(snap, q, "to");
+        Route r = AStar.shortestPath(snap.compact, from, to, mode, depart(q), snap.landmarks);
+        Json json = new Json().beginObject().key("route");
+        if (r == null) json.nullValue();
+        else route(json, snap, r);
+        return json.endObject().toString();
+    }
+
+    private static String via(Snapshot snap, Map<String, String> q) {
+        String keyword = required(q, "keyword");
+        List<Route> routes = RouteSearch.routesViaKeyword(snap.compact, snap.keywords, node(snap, q, "from"),
+                node(snap, q, "to"), keyword, count(q, 3), mode(q), depart(q));
+        return routes(snap, routes);
+    }
+
+    private static String alternatives(Snapshot snap, Map<String, String> q) {
+        List<Route> routes = AlternativeRoutes.kShortest(snap.compact, node(snap, q, "from"), node(snap, q, "to"),
+                count(q, 3), mode(q), depart(q));
+        return routes(snap, routes);
+    }
+
+    private static String matrix(Snapshot snap, Map<String, String> q) {
+        int[] sources = ids(required(q, "sources"));
+        int[] targets = ids(required(q, "targets"));
+        if ((long) sources.length * targets.length > 1_000_000) {
+            throw new IllegalArgumentException("Matrix larger than 1,000,000 cells");
+        }
+        DistanceMatrix m = DistanceTable.compute(snap.compact, sources, targets, mode(q), depart(q), false);
+        Json json = new Json().beginObject();
+        json.key("sources").beginArray();
+        for (int s : sources) json.value(s);
+        json.endArray().key("targets").beginArray();
+        for (int t : targets) json.value(t);
+        json.endArray().key("values").beginArray();
+        for (int i = 0; i < m.rows; i++) {
+            json.beginArray();
+            for (int j = 0; j < m.cols; j++) json.value(m.get(i, j));
+            json.endArray();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    private static String routes(Snapshot snap, List<Route> routes) {
+        Json json = new Json().beginObject().key("routes").beginArray();
+        for (Route r : routes) route(json, snap, r);
+        return json.endArray().endObject().toString();
+    }
+
+    private static void route(Json json, Snapshot snap, Route r) {
+        json.beginObject();
+        json.key("nodes").values(r.nodeSequence);
+        json.key("names").beginArray();
+        for (int id : r.nodeSequence) json.value(snap.graph.idToNode.get(id).name);
+        json.endArray();
+        json.key("distanceMeters").value(r.totalDistanceMeters);
+        json.key("minutes").value(r.totalMinutes);
+        json.endObject();
+    }
+
+    private static String error(String message) {
+        return new Json().beginObject().key("error").value(message).endObject().toString();
+    }
+
+    // Node id, or "x,y" snapped to the nearest node
+    private static int node(Snapshot snap, Map<String, String> q, String name) {
+        String v = required(q, name);
+        int comma = v.indexOf(',');
+        if (comma >= 0) {
+            int id = snap.spatial.nearestNode(Double.parseDouble(v.substring(0, comma).trim()),
+                    Double.parseDouble(v.substring(comma + 1).trim()));
+            if (id < 0) throw new IllegalArgumentException("Graph is empty");
+            return id;
+        }
+        int id = Integer.parseInt(v.trim());
+        if (snap.compact.indexOf(id) < 0) throw new IllegalArgumentException("Unknown node " + id);
+        return id;
+    }
+
+    private static LocalTime depart(Map<String, String> q) {
+        String v = q.get("depart");
+        return v == null || v.isEmpty() ? LocalTime.now().truncatedTo(ChronoUnit.MINUTES) : LocalTime.parse(v);
+    }
+
+    private static WeightMode mode(Map<String, String> q) {
+        String v = q.get("mode");
+        return v == null ? WeightMode.TIME : WeightMode.valueOf(v.toUpperCase(Locale.ROOT));
+    }
+
+    private static int count(Map<String, String> q, int fallback) {
+        String v = q.get("k");
+        int k = v == null ? fallback : Integer.parseInt(v);
+        if (k < 1 || k > 50) throw new IllegalArgumentException("k must be between 1 and 50");
+        return k;
+    }
+
+    private static int[] ids(String csv) {
+        String[] parts = csv.split(",");
+        int[] ids = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) ids[i] = Integer.parseInt(parts[i].trim());
+        return ids;
+    }
+
+    private static String required(Map<String, String> q, String name) {
+        String v = q.get(name);
+        if (v == null || v.isEmpty()) throw new IllegalArgumentException("Missing parameter '" + name + "'");
+        return v;
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> out = new HashMap<>();
+        if (raw == null) return out;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String v = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            out.put(k, v);
+        }
+        return out;
+    }
+
+    // usage: RouteServer [port] [graph.ugr]; binds all interfaces
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Graph g = args.length > 1 ? GraphFile.load(Path.of(args[1])).toGraph() : GraphBuilder.buildUGGraph();
+        RouteServer server = new RouteServer(g, new InetSocketAddress(port));
+        server.start();
+        System.out.println("Routing on http://localhost:" + server.port() + "/");
+    }
+}
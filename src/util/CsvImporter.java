@@ -0,0 +1,386 @@
+package util;
+
+import model.CompactGraphBuilder;
+import model.GraphFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+// Imports a graph from a node CSV and an edge CSV, both with a header row naming their columns.
+//   nodes: id, name, tags (';' separated), and either x,y in meters or lat,lon in degrees
+//   edges: from, to and optionally meters, minutes, class, oneway, peak, offpeak
+// Missing meters come from the endpoint coordinates, missing minutes from the class speed
+// (default FOOT, the campus walking pace), and an edge is two-way unless oneway is yes/true/1.
+// Each file is memory-mapped in newline-aligned chunks that are parsed in parallel into
+// primitive columns; only names and tags become Strings.
+public final class CsvImporter {
+    private static final long CHUNK_BYTES = 8L << 20;
+
+    private CsvImporter() {}
+
+    public static GraphFile read(Path nodesCsv, Path edgesCsv) throws IOException {
+        List<NodeRows> nodeChunks = parse(nodesCsv, NodeRows::new);
+        List<EdgeRows> edgeChunks = parse(edgesCsv, EdgeRows::new);
+
+        int n = 0;
+        for (NodeRows c : nodeChunks) n += c.count;
+        boolean geographic = !nodeChunks.isEmpty() && nodeChunks.get(0).geographic;
+        int[] ids = new int[n];
+        double[] a = new double[n];
+        double[] b = new double[n];
+        int k = 0;
+        double latSum = 0.0;
+        for (NodeRows c : nodeChunks) {
+            System.arraycopy(c.ids, 0, ids, k, c.count);
+            System.arraycopy(c.a, 0, a, k, c.count);
+            System.arraycopy(c.b, 0, b, k, c.count);
+            k += c.count;
+            for (int i = 0; i < c.count; i++) latSum += c.a[i];
+        }
+        double refLat = n == 0 ? 0.0 : latSum / n;
+
+        CompactGraphBuilder builder = new CompactGraphBuilder();
+        for (NodeRows c : nodeChunks) {
+            for (int i = 0; i < c.count; i++) {
+                double x = geographic ? Geo.projectX(c.b[i], refLat) : c.a[i];
+                double y = geographic ? Geo.projectY(c.a[i]) : c.b[i];
+                builder.addNode(c.ids[i], x, y, c.names[i], c.tags[i]);
+            }
+        }
+
+        // id -> row, for edges that need their length from coordinates
+        long[] keyed = new long[n];
+        for (int i = 0; i < n; i++) keyed[i] = ((long) ids[i] << 32) | i;
+        Arrays.parallelSort(keyed);
+        int[] sortedIds = new int[n];
+        for (int i = 0; i < n; i++) sortedIds[i] = (int) (keyed[i] >> 32);
+
+        RoadClass[] classes = RoadClass.values();
+        for (EdgeRows c : edgeChunks) {
+            for (int i = 0; i < c.count; i++) {
+                RoadClass cls = classes[c.cls[i]];
+                double meters = c.meters[i];
+                if (Double.isNaN(meters)) {
+                    int u = Arrays.binarySearch(sortedIds, c.from[i]);
+                    int v = Arrays.binarySearch(sortedIds, c.to[i]);
+                    if (u < 0) throw new IllegalArgumentException("Edge references unknown node " + c.from[i]);
+                    if (v < 0) throw new IllegalArgumentException("Edge references unknown node " + c.to[i]);
+                    int p = (int) keyed[u];
+                    int q = (int) keyed[v];
+                    meters = geographic
+                            ? Geo.haversineMeters(a[p], b[p], a[q], b[q])
+                            : Math.hypot(a[p] - a[q], b[p] - b[q]);
+                }
+                double minutes = Double.isNaN(c.minutes[i]) ? cls.minutes(meters) : c.minutes[i];
+                double peak = Double.isNaN(c.peak[i]) ? cls.peakMultiplier : c.peak[i];
+                double offPeak = Double.isNaN(c.offPeak[i]) ? 1.0 : c.offPeak[i];
+                builder.addEdge(c.from[i], c.to[i], meters, minutes, peak, offPeak);
+                if (!c.oneway[i]) builder.addEdge(c.to[i], c.from[i], meters, minutes, peak, offPeak);
+            }
+        }
+        return builder.build();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: CsvImporter <nodes.csv> <edges.csv> <out.ugr>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        GraphFile file = read(Paths.get(args[0]), Paths.get(args[1]));
+        file.write(Paths.get(args[2]));
+        System.out.printf(Locale.ROOT, "%d nodes, %d edges in %.1f s%n",
+                file.graph.nodeCount, file.graph.edgeCount, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Splits the body after the header into newline-aligned chunks and parses them in parallel;
+    // results come back in file order
+    private static <T extends Rows> List<T> parse(Path path, BiFunction<Header, Integer, T> rows) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, 64 * 1024));
+            ch.read(head, 0);
+            int headerEnd = indexOf(head, 0, head.position());
+            if (headerEnd < 0 && size > head.capacity()) throw new IOException(path + ": header line too long");
+            int headerLength = headerEnd < 0 ? head.position() : headerEnd;
+            Header header = new Header(path, new String(head.array(), 0, headerLength, StandardCharsets.UTF_8));
+
+            List<long[]> bounds = new ArrayList<>();
+            long pos = headerEnd < 0 ? size : headerEnd + 1;
+            ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+            while (pos < size) {
+                long end = Math.min(size, pos + CHUNK_BYTES);
+                // Move the cut to just past the next newline
+                while (end < size) {
+                    probe.clear();
+                    int got = ch.read(probe, end);
+                    int nl = indexOf(probe, 0, Math.max(got, 0));
+                    if (nl >= 0) {
+                        end += nl + 1;
+                        break;
+                    }
+                    end += Math.max(got, 1);
+                }
+                bounds.add(new long[]{pos, Math.min(end, size)});
+                pos = end;
+            }
+
+            List<T> out = new ArrayList<>(bounds.size());
+            for (int i = 0; i < bounds.size(); i++) out.add(null);
+            List<Exception> failures = new ArrayList<>();
+            IntStream.range(0, bounds.size()).parallel().forEach(i -> {
+                long[] b = bounds.get(i);
+                try {
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, b[0], b[1] - b[0]);
+                    T r = rows.apply(header, (int) ((b[1] - b[0]) / 32) + 16);
+                    r.parse(buf);
+                    out.set(i, r);
+                } catch (IOException | RuntimeException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            if (!failures.isEmpty()) {
+                Exception e = failures.get(0);
+                if (e instanceof IOException) throw (IOException) e;
+                throw (RuntimeException) e;
+            }
+            return out;
+        }
+    }
+
+    private static int indexOf(ByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) if (buf.get(i) == '\n') return i;
+        return -1;
+    }
+
+    private static final class Header {
+        final Path path;
+        final String[] columns;
+
+        Header(Path path, String line) {
+            this.path = path;
+            String[] cols = split(strip(line), new ArrayList<>());
+            for (int i = 0; i < cols.length; i++) cols[i] = cols[i].trim().toLowerCase(Locale.ROOT);
+            this.columns = cols;
+        }
+
+        int column(String name) {
+            for (int i = 0; i < columns.length; i++) if (columns[i].equals(name)) return i;
+            return -1;
+        }
+
+        int required(String name) {
+            int c = column(name);
+            if (c < 0) throw new IllegalArgumentException(path + ": missing column '" + name + "'");
+            return c;
+        }
+    }
+
+    private abstract static class Rows {
+        final Header header;
+        int count;
+        private final List<String> scratch = new ArrayList<>();
+
+        Rows(Header header) {
+            this.header = header;
+        }
+
+        abstract void grow();
+
+        abstract int capacity();
+
+        abstract void row(String[] f);
+
+        void parse(ByteBuffer buf) {
+            int limit = buf.limit();
+            byte[] line = new byte[256];
+            int start = 0;
+            while (start < limit) {
+                int end = start;
+                while (end < limit && buf.get(end) != '\n') end++;
+                int len = end - start;
+                if (len > line.length) line = new byte[Math.max(len, line.length * 2)];
+                buf.get(start, line, 0, len);
+                String text = strip(new String(line, 0, len, StandardCharsets.UTF_8));
+                if (!text.isBlank()) {
+                    if (count == capacity()) grow();
+                    String[] f = split(text, scratch);
+                    try {
+                        row(f);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(header.path + ": bad row '" + text + "'", e);
+                    }
+                    count++;
+                }
+                start = end + 1;
+            }
+        }
+
+        static String field(String[] f, int column) {
+            return column < 0 || column >= f.length ? "" : f[column].trim();
+        }
+
+        static double number(String[] f, int column) {
+            String s = field(f, column);
+            return s.isEmpty() ? Double.NaN : Double.parseDouble(s);
+        }
+
+        static int integer(String[] f, int column) {
+            return Integer.parseInt(field(f, column));
+        }
+    }
+
+    private static final class NodeRows extends Rows {
+        final boolean geographic;
+        private final int id, name, tagsCol, aCol, bCol;
+        int[] ids;
+        // x,y or lat,lon
+        double[] a, b;
+        String[] names;
+        String[][] tags;
+
+        NodeRows(Header h, int capacity) {
+            super(h);
+            id = h.required("id");
+            name = h.column("name");
+            tagsCol = h.column("tags");
+            geographic = h.column("lat") >= 0 && h.column("lon") >= 0;
+            aCol = geographic ? h.required("lat") : h.required("x");
+            bCol = geographic ? h.required("lon") : h.required("y");
+            ids = new int[capacity];
+            a = new double[capacity];
+            b = new double[capacity];
+            names = new String[capacity];
+            tags = new String[capacity][];
+        }
+
+        int capacity() {
+            return ids.length;
+        }
+
+        void grow() {
+            int cap = ids.length * 2;
+            ids = Arrays.copyOf(ids, cap);
+            a = Arrays.copyOf(a, cap);
+            b = Arrays.copyOf(b, cap);
+            names = Arrays.copyOf(names, cap);
+            tags = Arrays.copyOf(tags, cap);
+        }
+
+        void row(String[] f) {
+            ids[count] = integer(f, id);
+            a[count] = number(f, aCol);
+            b[count] = number(f, bCol);
+            String nm = field(f, name);
+            names[count] = nm.isEmpty() ? null : nm;
+            String t = field(f, tagsCol);
+            tags[count] = t.isEmpty() ? null : Arrays.stream(t.split(";")).map(String::trim)
+                    .filter(s -> !s.isEmpty()).toArray(String[]::new);
+        }
+    }
+
+    private static final class EdgeRows extends Rows {
+        private final int fromCol, toCol, metersCol, minutesCol, classCol, onewayCol, peakCol, offPeakCol;
+        int[] from, to;
+        double[] meters, minutes, peak, offPeak;
+        byte[] cls;
+        boolean[] oneway;
+
+        EdgeRows(Header h, int capacity) {
+            super(h);
+            fromCol = h.required("from");
+            toCol = h.required("to");
+            metersCol = h.column("meters");
+            minutesCol = h.column("minutes");
+            classCol = h.column("class");
+            onewayCol = h.column("oneway");
+            peakCol = h.column("peak");
+            offPeakCol = h.column("offpeak");
+            from = new int[capacity];
+            to = new int[capacity];
+            meters = new double[capacity];
+            minutes = new double[capacity];
+            peak = new double[capacity];
+            offPeak = new double[capacity];
+            cls = new byte[capacity];
+            oneway = new boolean[capacity];
+        }
+
+        int capacity() {
+            return from.length;
+        }
+
+        void grow() {
+            int cap = from.length * 2;
+            from = Arrays.copyOf(from, cap);
+            to = Arrays.copyOf(to, cap);
+            meters = Arrays.copyOf(meters, cap);
+            minutes = Arrays.copyOf(minutes, cap);
+            peak = Arrays.copyOf(peak, cap);
+            offPeak = Arrays.copyOf(offPeak, cap);
+            cls = Arrays.copyOf(cls, cap);
+            oneway = Arrays.copyOf(oneway, cap);
+        }
+
+        void row(String[] f) {
+            from[count] = integer(f, fromCol);
+            to[count] = integer(f, toCol);
+            meters[count] = number(f, metersCol);
+            minutes[count] = number(f, minutesCol);
+            peak[count] = number(f, peakCol);
+            offPeak[count] = number(f, offPeakCol);
+            cls[count] = (byte) RoadClass.parse(field(f, classCol)).ordinal();
+            String o = field(f, onewayCol).toLowerCase(Locale.ROOT);
+            oneway[count] = o.equals("yes") || o.equals("true") || o.equals("1");
+        }
+    }
+
+    private static String strip(String line) {
+        if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') line = line.substring(0, line.length() - 1);
+        if (!line.isEmpty() && line.charAt(0) == '\uFEFF') line = line.substring(1);
+        return line;
+    }
+
+    // Comma separated, with "double quoted" fields that may contain commas and "" escapes
+    private static String[] split(String line, List<String> out) {
+        out.clear();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        out.add(sb.toString());
+        return out.toArray(new String[0]);
+    }
+}
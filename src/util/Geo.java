@@ -0,0 +1,26 @@
+package util;
+
+// Great-circle lengths and a local flat projection for imported coordinates
+public final class Geo {
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private Geo() {}
+
+    public static double haversineMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    // Equirectangular projection around refLat, so x/y are in meters and euclidean distances
+    // (and the A* heuristics built on them) stay close to true lengths across a city
+    public static double projectX(double lon, double refLat) {
+        return EARTH_RADIUS_METERS * Math.toRadians(lon) * Math.cos(Math.toRadians(refLat));
+    }
+
+    public static double projectY(double lat) {
+        return EARTH_RADIUS_METERS * Math.toRadians(lat);
+    }
+}
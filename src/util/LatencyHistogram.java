@@ -0,0 +1,103 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear histogram of non-negative longs (nanoseconds, say) in the style of HdrHistogram:
+// values below 2^SUB_BITS are counted exactly, larger ones in buckets of 2^(SUB_BITS - 1) per
+// power of two, so any recorded value is known to within 1 part in 64. Values past 2^MAX_BITS
+// land in the top bucket.
+//
+// record() is allocation-free and wait-free: the counts are striped over several
+// AtomicLongArray rows picked by thread id, so threads recording at once rarely touch the
+// same cache line. Reads sum the stripes and are only approximately consistent with writes in
+// flight, which is fine for monitoring.
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF = SUB_COUNT >> 1;
+    private static final int MAX_BITS = 44;
+    private static final int BUCKETS = SUB_COUNT + (MAX_BITS - SUB_BITS) * HALF;
+
+    private final int stripes;
+    private final AtomicLongArray counts;
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        this.stripes = Math.min(16, Integer.highestOneBit(Math.max(1, cpus)) * 2);
+        this.counts = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        int stripe = (int) (Thread.currentThread().getId() & (stripes - 1));
+        counts.getAndIncrement(stripe * BUCKETS + bucket(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // Smallest bucket upper bound with at least quantile of the recorded values at or below it
+    // (capped at the true maximum); 0 when nothing was recorded
+    public long valueAt(double quantile) {
+        long[] merged = merged();
+        long n = 0;
+        for (long c : merged) n += c;
+        if (n == 0) return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += merged[b];
+            if (seen >= rank) return Math.min(upperBound(b), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0L);
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private long[] merged() {
+        long[] out = new long[BUCKETS];
+        for (int s = 0; s < stripes; s++) {
+            int base = s * BUCKETS;
+            for (int b = 0; b < BUCKETS; b++) out[b] += counts.get(base + b);
+        }
+        return out;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        if (shift > MAX_BITS - SUB_BITS) return BUCKETS - 1;
+        int sub = (int) (value >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF + (sub - HALF);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = (bucket - SUB_COUNT) / HALF + 1;
+        long sub = HALF + (bucket - SUB_COUNT) % HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,342 @@
+package util;
+
+import model.CompactGraphBuilder;
+import model.GraphFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+// Streams an OSM XML extract (.osm or .osm.gz) into a GraphFile. Nodes and way refs are kept in
+// primitive arrays keyed by OSM id, so heap use is a few dozen bytes per node and per way ref;
+// only named or tagged nodes keep Strings. Graph ids are 1 + rank among the nodes that routable
+// ways use, in file order, and the matching OSM ids come back in Result.osmIds.
+public final class OsmImporter {
+    // Tag keys whose values become node tags, alongside the name
+    private static final String[] TAG_KEYS = {"amenity", "shop", "tourism", "leisure", "building", "public_transport"};
+
+    public static final class Result {
+        public final GraphFile file;
+        public final long[] osmIds;
+
+        Result(GraphFile file, long[] osmIds) {
+            this.file = file;
+            this.osmIds = osmIds;
+        }
+    }
+
+    private OsmImporter() {}
+
+    public static Result read(Path path) throws IOException {
+        // raw gets its own resource so a bad gzip header still closes the file
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+             InputStream in = path.toString().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw) {
+            return read(in);
+        }
+    }
+
+    public static Result read(InputStream in) throws IOException {
+        Parsed p = new Parsed();
+        try {
+            XMLInputFactory factory = XMLInputFactory.newFactory();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            XMLStreamReader r = factory.createXMLStreamReader(in);
+            try {
+                p.parse(r);
+            } finally {
+                r.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed OSM XML: " + e.getMessage(), e);
+        }
+        return p.build();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: OsmImporter <extract.osm[.gz]> <out.ugr>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        Result result = read(Paths.get(args[0]));
+        result.file.write(Paths.get(args[1]));
+        System.out.printf(Locale.ROOT, "%d nodes, %d edges in %.1f s%n",
+                result.file.graph.nodeCount, result.file.graph.edgeCount, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static final class Parsed {
+        private final LongIntMap nodeIndex = new LongIntMap(1 << 16);
+        private long[] osmIds = new long[1 << 16];
+        private double[] lat = new double[1 << 16];
+        private double[] lon = new double[1 << 16];
+        private int nodes;
+        // Only nodes with a name or kept tag; keyed by parse position
+        private final Map<Integer, String> names = new HashMap<>();
+        private final Map<Integer, String[]> tags = new HashMap<>();
+
+        private long[] refs = new long[1 << 16];
+        private int refCount;
+        private int[] wayStart = new int[1024];
+        private byte[] wayClass = new byte[1024];
+        // +1 forward only, -1 backward only, 0 both
+        private byte[] wayOneway = new byte[1024];
+        private float[] waySpeed = new float[1024];
+        private int ways;
+
+        void parse(XMLStreamReader r) throws XMLStreamException {
+            wayStart[0] = 0;
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String element = r.getLocalName();
+                if (element.equals("node")) {
+                    readNode(r);
+                } else if (element.equals("way")) {
+                    readWay(r);
+                }
+            }
+        }
+
+        private void readNode(XMLStreamReader r) throws XMLStreamException {
+            long id = Long.parseLong(r.getAttributeValue(null, "id"));
+            double la = Double.parseDouble(r.getAttributeValue(null, "lat"));
+            double lo = Double.parseDouble(r.getAttributeValue(null, "lon"));
+            if (nodes == osmIds.length) {
+                int cap = nodes * 2;
+                osmIds = Arrays.copyOf(osmIds, cap);
+                lat = Arrays.copyOf(lat, cap);
+                lon = Arrays.copyOf(lon, cap);
+            }
+            int at = nodes++;
+            osmIds[at] = id;
+            lat[at] = la;
+            lon[at] = lo;
+            nodeIndex.put(id, at);
+
+            String name = null;
+            List<String> kept = null;
+            int depth = 1;
+            while (depth > 0) {
+                int event = r.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (!r.getLocalName().equals("tag")) continue;
+                    String k = r.getAttributeValue(null, "k");
+                    String v = r.getAttributeValue(null, "v");
+                    if (k.equals("name")) {
+                        name = v;
+                    } else if (isKeptKey(k)) {
+                        if (kept == null) kept = new ArrayList<>(2);
+                        kept.add(v.equals("yes") ? k : v);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            if (name != null) names.put(at, name);
+            if (kept != null) tags.put(at, kept.toArray(new String[0]));
+        }
+
+        private void readWay(XMLStreamReader r) throws XMLStreamException {
+            int first = refCount;
+            String highway = null;
+            String oneway = null;
+            String junction = null;
+            String maxspeed = null;
+            int depth = 1;
+            while (depth > 0) {
+                int event = r.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String element = r.getLocalName();
+                    if (element.equals("nd")) {
+                        if (refCount == refs.length) refs = Arrays.copyOf(refs, refCount * 2);
+                        refs[refCount++] = Long.parseLong(r.getAttributeValue(null, "ref"));
+                    } else if (element.equals("tag")) {
+                        String k = r.getAttributeValue(null, "k");
+                        String v = r.getAttributeValue(null, "v");
+                        switch (k) {
+                            case "highway": highway = v; break;
+                            case "oneway": oneway = v; break;
+                            case "junction": junction = v; break;
+                            case "maxspeed": maxspeed = v; break;
+                            default: break;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            RoadClass cls = RoadClass.fromOsm(highway);
+            if (cls == null || refCount - first < 2) {
+                refCount = first;
+                return;
+            }
+            if (ways + 1 >= wayStart.length) {
+                int cap = wayStart.length * 2;
+                wayStart = Arrays.copyOf(wayStart, cap);
+                wayClass = Arrays.copyOf(wayClass, cap);
+                wayOneway = Arrays.copyOf(wayOneway, cap);
+                waySpeed = Arrays.copyOf(waySpeed, cap);
+            }
+            wayClass[ways] = (byte) cls.ordinal();
+            wayOneway[ways] = onewayOf(oneway, junction, highway);
+            waySpeed[ways] = (float) speedOf(maxspeed, cls);
+            wayStart[++ways] = refCount;
+        }
+
+        Result build() {
+            // Resolve refs to parse positions; refs to nodes outside the extract become -1
+            int[] at = new int[refCount];
+            IntStream.range(0, refCount).parallel().forEach(i -> at[i] = nodeIndex.get(refs[i]));
+            refs = null;
+
+            int[] graphId = new int[nodes];
+            for (int a : at) if (a >= 0) graphId[a] = 1;
+            int used = 0;
+            double latSum = 0.0;
+            for (int i = 0; i < nodes; i++) {
+                if (graphId[i] == 0) continue;
+                graphId[i] = ++used;
+                latSum += lat[i];
+            }
+            double refLat = used == 0 ? 0.0 : latSum / used;
+
+            CompactGraphBuilder builder = new CompactGraphBuilder();
+            long[] usedOsmIds = new long[used];
+            for (int i = 0; i < nodes; i++) {
+                int id = graphId[i];
+                if (id == 0) continue;
+                usedOsmIds[id - 1] = osmIds[i];
+                builder.addNode(id, Geo.projectX(lon[i], refLat), Geo.projectY(lat[i]), names.get(i), tags.get(i));
+            }
+
+            // Segment lengths and times in parallel, then handed to the builder in way order so
+            // adjacency stays in file order
+            int segments = Math.max(0, refCount - ways);
+            double[] meters = new double[segments];
+            IntStream.range(0, ways).parallel().forEach(w -> {
+                for (int i = wayStart[w]; i + 1 < wayStart[w + 1]; i++) {
+                    int a = at[i];
+                    int b = at[i + 1];
+                    meters[i - w] = a < 0 || b < 0 ? Double.NaN : Geo.haversineMeters(lat[a], lon[a], lat[b], lon[b]);
+                }
+            });
+            RoadClass[] classes = RoadClass.values();
+            for (int w = 0; w < ways; w++) {
+                RoadClass cls = classes[wayClass[w]];
+                int dir = wayOneway[w];
+                for (int i = wayStart[w]; i + 1 < wayStart[w + 1]; i++) {
+                    double len = meters[i - w];
+                    if (Double.isNaN(len) || at[i] == at[i + 1]) continue;
+                    int a = graphId[at[i]];
+                    int b = graphId[at[i + 1]];
+                    double minutes = RoadClass.minutes(len, waySpeed[w]);
+                    if (dir >= 0) builder.addEdge(a, b, len, minutes, cls.peakMultiplier, 1.0);
+                    if (dir <= 0) builder.addEdge(b, a, len, minutes, cls.peakMultiplier, 1.0);
+                }
+            }
+            return new Result(builder.build(), usedOsmIds);
+        }
+    }
+
+    private static boolean isKeptKey(String k) {
+        for (String key : TAG_KEYS) if (key.equals(k)) return true;
+        return false;
+    }
+
+    private static byte onewayOf(String oneway, String junction, String highway) {
+        if (oneway != null) {
+            switch (oneway) {
+                case "yes": case "true": case "1": return 1;
+                case "-1": case "reverse": return -1;
+                case "no": case "false": case "0": return 0;
+                default: break;
+            }
+        }
+        if ("roundabout".equals(junction)) return 1;
+        return highway.startsWith("motorway") ? (byte) 1 : 0;
+    }
+
+    // maxspeed in km/h, "mph" suffixed, or a non-numeric value (signals, walk, ...) that falls
+    // back to the class speed
+    private static double speedOf(String maxspeed, RoadClass cls) {
+        if (maxspeed == null) return cls.speedKmh;
+        String s = maxspeed.trim();
+        double scale = 1.0;
+        if (s.endsWith("mph")) {
+            scale = 1.609344;
+            s = s.substring(0, s.length() - 3).trim();
+        }
+        try {
+            double v = Double.parseDouble(s) * scale;
+            return v > 0 ? v : cls.speedKmh;
+        } catch (NumberFormatException e) {
+            return cls.speedKmh;
+        }
+    }
+
+    // Open addressing long -> int map; absent keys read as -1
+    private static final class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        LongIntMap(int capacity) {
+            int cap = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            keys = new long[cap];
+            values = new int[cap];
+            Arrays.fill(values, -1);
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) grow();
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values[i] >= 0 && keys[i] != key) i = (i + 1) & mask;
+            if (values[i] < 0) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); values[i] >= 0; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(values, -1);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
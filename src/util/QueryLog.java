@@ -0,0 +1,354 @@
+package util;
+
+import model.CompactGraph;
+import model.GraphFile;
+import route.WeightMode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Binary log of routing calls, for replaying real traffic against the router:
+//   header   magic "UGQL", version
+//   records  varint microseconds since the previous record, one byte op << 1 | mode, zigzag
+//            varint start and goal ids, varint departure second; via-keyword calls add varint
+//            k and a keyword number, where the next unused number is followed by the keyword
+//            itself (writeUTF) and later records refer back to it
+// A typical record is 8-12 bytes.
+//
+// The Dijkstra, AStar and RouteSearch entry points append every call they get while recording
+// is on, except calls made from inside another instrumented query. Recording starts with
+// startRecording(path) or, for the whole run, -Drouter.querylog=<path>. Off, the cost is one
+// volatile read per query; on, one synchronized append to a buffered stream.
+public final class QueryLog {
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x4C514755;
+
+    public enum Op { DIJKSTRA_ROUTE, DIJKSTRA_DISTANCE, ASTAR_ROUTE, ASTAR_DISTANCE, VIA_KEYWORD }
+
+    private static final Op[] OPS = Op.values();
+    private static final WeightMode[] MODES = WeightMode.values();
+
+    private static volatile Writer recorder;
+    private static volatile long startNanos;
+
+    static {
+        String path = System.getProperty("router.querylog");
+        if (path != null && !path.isEmpty()) {
+            try {
+                startRecording(Path.of(path));
+                Runtime.getRuntime().addShutdownHook(new Thread(QueryLog::stopRecording, "querylog-close"));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot record queries to " + path, e);
+            }
+        }
+    }
+
+    private QueryLog() {}
+
+    // One logged call; atMicros counts from the start of the log
+    public static final class Entry {
+        public final long atMicros;
+        public final Op op;
+        public final WeightMode mode;
+        public final int startId;
+        public final int goalId;
+        public final int departSecond;
+        public final int k;
+        public final String keyword;
+
+        public Entry(long atMicros, Op op, WeightMode mode, int startId, int goalId, int departSecond,
+                     int k, String keyword) {
+            this.atMicros = atMicros;
+            this.op = op;
+            this.mode = mode;
+            this.startId = startId;
+            this.goalId = goalId;
+            this.departSecond = departSecond;
+            this.k = k;
+            this.keyword = keyword;
+        }
+
+        public LocalTime depart() {
+            return LocalTime.ofSecondOfDay(departSecond);
+        }
+    }
+
+    // Appends entries in order; timestamps must not decrease
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> keywords = new HashMap<>();
+        private long lastMicros;
+        private long count;
+
+        public Writer(Path path) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        public synchronized void append(Entry e) throws IOException {
+            long delta = Math.max(0L, e.atMicros - lastMicros);
+            lastMicros += delta;
+            writeVarLong(out, delta);
+            out.writeByte(e.op.ordinal() << 1 | e.mode.ordinal());
+            writeVarLong(out, zigzag(e.startId));
+            writeVarLong(out, zigzag(e.goalId));
+            writeVarLong(out, e.departSecond);
+            if (e.op == Op.VIA_KEYWORD) {
+                writeVarLong(out, e.k);
+                // writeUTF has no null; a call without a keyword is logged as the empty keyword
+                String keyword = e.keyword == null ? "" : e.keyword;
+                Integer known = keywords.get(keyword);
+                if (known != null) {
+                    writeVarLong(out, known);
+                } else {
+                    writeVarLong(out, keywords.size());
+                    out.writeUTF(keyword);
+                    keywords.put(keyword, keywords.size());
+                }
+            }
+            count++;
+        }
+
+        public synchronized long count() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static void write(Path path, List<Entry> entries) throws IOException {
+        try (Writer w = new Writer(path)) {
+            for (Entry e : entries) w.append(e);
+        }
+    }
+
+    public static List<Entry> read(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        List<String> keywords = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a query log: " + path);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported query log version " + version + " in " + path);
+            long at = 0;
+            while (true) {
+                int first = in.read();
+                if (first < 0) break;
+                at += readVarLong(in, first);
+                int opMode = in.readUnsignedByte();
+                if ((opMode >> 1) >= OPS.length || (opMode & 1) >= MODES.length) {
+                    throw new IOException("Corrupt record " + entries.size() + " in " + path);
+                }
+                Op op = OPS[opMode >> 1];
+                WeightMode mode = MODES[opMode & 1];
+                int start = unzigzag(readVarLong(in, in.readUnsignedByte()));
+                int goal = unzigzag(readVarLong(in, in.readUnsignedByte()));
+                int depart = (int) readVarLong(in, in.readUnsignedByte());
+                int k = 0;
+                String keyword = null;
+                if (op == Op.VIA_KEYWORD) {
+                    k = (int) readVarLong(in, in.readUnsignedByte());
+                    int ref = (int) readVarLong(in, in.readUnsignedByte());
+                    if (ref == keywords.size()) keywords.add(in.readUTF());
+                    else if (ref > keywords.size()) throw new IOException("Corrupt keyword reference in " + path);
+                    keyword = keywords.get(ref);
+                }
+                entries.add(new Entry(at, op, mode, start, goal, depart, k, keyword));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated query log " + path, e);
+        }
+        return entries;
+    }
+
+    public static synchronized void startRecording(Path path) throws IOException {
+        stopRecording();
+        Writer w = new Writer(path);
+        startNanos = System.nanoTime();
+        recorder = w;
+    }
+
+    // Flushes and closes the log; calls already past the recording() check may be dropped
+    public static synchronized void stopRecording() {
+        Writer w = recorder;
+        recorder = null;
+        if (w == null) return;
+        try {
+            w.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static boolean recording() {
+        return recorder != null;
+    }
+
+    public static void record(Op op, WeightMode mode, int startId, int goalId, LocalTime depart, int k, String keyword) {
+        Writer w = recorder;
+        if (w == null) return;
+        long at = (System.nanoTime() - startNanos) / 1000L;
+        try {
+            w.append(new Entry(at, op, mode, startId, goalId, depart.toSecondOfDay(), k, keyword));
+        } catch (IOException | RuntimeException e) {
+            // A failing log must not fail the query; stop recording instead
+            if (recorder == w) recorder = null;
+        }
+    }
+
+    // count synthetic calls over a fixed pool of distinct random (start, goal) pairs, the pair of
+    // rank r picked with probability proportional to 1 / r^exponent, so a few pairs are hot and
+    // most are rare, as in real traffic. Calls are 60% A* routes, 20% Dijkstra routes, 10% A*
+    // distances and 10% via-keyword searches (none if no keywords are given), half of them by
+    // TIME, departing on a whole minute between 06:00 and 22:00. Timestamps are all zero:
+    // replay paces a synthetic log by its target rate.
+    public static List<Entry> zipf(CompactGraph g, int count, int pairs, double exponent, long seed, String... keywords) {
+        if (g.nodeCount < 2) throw new IllegalArgumentException("Need at least 2 nodes");
+        if (pairs < 1 || exponent <= 0) throw new IllegalArgumentException("Need pairs >= 1 and exponent > 0");
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[] from = new int[pairs];
+        int[] to = new int[pairs];
+        for (int p = 0; p < pairs; p++) {
+            from[p] = g.ids[rnd.nextInt(g.nodeCount)];
+            do {
+                to[p] = g.ids[rnd.nextInt(g.nodeCount)];
+            } while (to[p] == from[p]);
+        }
+        Zipf ranks = new Zipf(pairs, exponent);
+        List<Entry> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int p = ranks.sample(rnd) - 1;
+            int roll = rnd.nextInt(10);
+            Op op = roll < 6 ? Op.ASTAR_ROUTE
+                    : roll < 8 ? Op.DIJKSTRA_ROUTE
+                    : roll < 9 || keywords.length == 0 ? Op.ASTAR_DISTANCE
+                    : Op.VIA_KEYWORD;
+            WeightMode mode = rnd.nextBoolean() ? WeightMode.TIME : WeightMode.DISTANCE;
+            int depart = (6 * 60 + rnd.nextInt(16 * 60)) * 60;
+            String keyword = op == Op.VIA_KEYWORD ? keywords[rnd.nextInt(keywords.length)] : null;
+            out.add(new Entry(0L, op, mode, from[p], to[p], depart, op == Op.VIA_KEYWORD ? 3 : 0, keyword));
+        }
+        return out;
+    }
+
+    // Rejection-inversion sampling of ranks 1..n (Hörmann and Derflinger 1996): constant time
+    // per draw without a table, whatever n
+    static final class Zipf {
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        Zipf(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1.0;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+        }
+
+        int sample(SplittableRandom rnd) {
+            while (true) {
+                double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) k = 1;
+                else if (k > n) k = n;
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) return k;
+            }
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return expm1OverX((1.0 - exponent) * logX) * logX;
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1.0, x * (1.0 - exponent));
+            return Math.exp(log1pOverX(t) * x);
+        }
+
+        private static double log1pOverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        private static double expm1OverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    // first is the already-read first byte
+    private static long readVarLong(DataInputStream in, int first) throws IOException {
+        long v = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            if (shift > 63) throw new IOException("Malformed varint");
+            b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return v;
+    }
+
+    private static long zigzag(int v) {
+        return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long v) {
+        int u = (int) v;
+        return (u >>> 1) ^ -(u & 1);
+    }
+
+    // usage: QueryLog zipf graph.ugr count pairs exponent seed out.qlog
+    //        QueryLog dump log.qlog
+    public static void main(String[] args) throws IOException {
+        if (args.length == 7 && args[0].equals("zipf")) {
+            GraphFile file = GraphFile.load(Path.of(args[1]));
+            List<Entry> entries = zipf(file.graph, Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Double.parseDouble(args[4]), Long.parseLong(args[5]), SyntheticGraphs.LANDMARK_TAGS);
+            write(Path.of(args[6]), entries);
+            System.out.printf("%d queries over %s pairs -> %s (%d bytes)%n",
+                    entries.size(), args[3], args[6], Files.size(Path.of(args[6])));
+        } else if (args.length == 2 && args[0].equals("dump")) {
+            for (Entry e : read(Path.of(args[1]))) {
+                System.out.printf("%d %s %s %d %d %s%s%n", e.atMicros, e.op, e.mode, e.startId, e.goalId, e.depart(),
+                        e.keyword == null ? "" : " " + e.k + " " + e.keyword);
+            }
+        } else {
+            System.err.println("usage: QueryLog zipf graph.ugr count pairs exponent seed out.qlog");
+            System.err.println("       QueryLog dump log.qlog");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package util;
+
+import route.WeightMode;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-algorithm, per-WeightMode query metrics: how many queries ran, what they cost in search
+// work, and a latency histogram. Each series is also a JMX MXBean named
+// router:type=QueryMetrics,algorithm=<name>,mode=<mode>, and dump() renders every series as
+// text. Recording is a handful of LongAdder adds and one histogram increment, with no
+// allocation, so it stays on in production; -Drouter.metrics=false turns recording off.
+public final class QueryMetrics {
+    public static final boolean ENABLED = !"false".equals(System.getProperty("router.metrics"));
+
+    private static final List<Series> ALL = new CopyOnWriteArrayList<>();
+
+    private QueryMetrics() {}
+
+    // One series per WeightMode for algorithm, indexed by mode ordinal
+    public static Series[] register(String algorithm) {
+        WeightMode[] modes = WeightMode.values();
+        Series[] out = new Series[modes.length];
+        for (int i = 0; i < modes.length; i++) out[i] = register(algorithm, modes[i]);
+        return out;
+    }
+
+    public static Series register(String algorithm, WeightMode mode) {
+        Series s = new Series(algorithm, mode);
+        ALL.add(s);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("router:type=QueryMetrics,algorithm=" + algorithm + ",mode=" + mode);
+            if (!server.isRegistered(name)) server.registerMBean(s, name);
+        } catch (JMException | SecurityException e) {
+            // Metrics still work without JMX, e.g. under a restrictive security manager
+        }
+        return s;
+    }
+
+    public static List<Series> all() {
+        return new ArrayList<>(ALL);
+    }
+
+    public static void resetAll() {
+        for (Series s : ALL) s.reset();
+    }
+
+    // One line per series that has seen a query; latencies in microseconds
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-22s %-8s %9s %9s %9s %9s %9s %9s %9s %9s%n",
+                "algorithm", "mode", "queries", "settled", "scanned", "relaxed", "p50us", "p99us", "p999us", "maxus"));
+        for (Series s : ALL) {
+            long q = s.getQueries();
+            if (q == 0) continue;
+            sb.append(String.format("%-22s %-8s %9d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    s.algorithm, s.mode, q,
+                    (double) s.getNodesSettled() / q, (double) s.getEdgesScanned() / q, (double) s.getEdgesRelaxed() / q,
+                    s.getLatencyP50Micros(), s.getLatencyP99Micros(), s.getLatencyP999Micros(), s.getLatencyMaxMicros()));
+        }
+        return sb.toString();
+    }
+
+    public interface SeriesMXBean {
+        long getQueries();
+
+        long getNodesSettled();
+
+        long getEdgesScanned();
+
+        long getEdgesRelaxed();
+
+        long getQueuePushes();
+
+        long getDecreaseKeys();
+
+        long getStalePops();
+
+        double getMeanSearchSpace();
+
+        double getLatencyMeanMicros();
+
+        double getLatencyP50Micros();
+
+        double getLatencyP90Micros();
+
+        double getLatencyP99Micros();
+
+        double getLatencyP999Micros();
+
+        double getLatencyMaxMicros();
+
+        void reset();
+    }
+
+    public static final class Series implements SeriesMXBean {
+        public final String algorithm;
+        public final WeightMode mode;
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder settled = new LongAdder();
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder relaxed = new LongAdder();
+        private final LongAdder pushes = new LongAdder();
+        private final LongAdder stalePops = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Series(String algorithm, WeightMode mode) {
+            this.algorithm = algorithm;
+            this.mode = mode;
+        }
+
+        // pushes counts nodes entering the queue for the first time (the search space); every
+        // other relaxation is a decrease-key. stalePops is for lazy-deletion queues only.
+        public void record(long nanos, long settledNodes, long scannedEdges, long relaxedEdges, long queuePushes,
+                           long stale) {
+            if (!ENABLED) return;
+            queries.increment();
+            settled.add(settledNodes);
+            scanned.add(scannedEdges);
+            relaxed.add(relaxedEdges);
+            pushes.add(queuePushes);
+            if (stale != 0) stalePops.add(stale);
+            latency.record(nanos);
+        }
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+
+        @Override
+        public long getQueries() {
+            return queries.sum();
+        }
+
+        @Override
+        public long getNodesSettled() {
+            return settled.sum();
+        }
+
+        @Override
+        public long getEdgesScanned() {
+            return scanned.sum();
+        }
+
+        @Override
+        public long getEdgesRelaxed() {
+            return relaxed.sum();
+        }
+
+        @Override
+        public long getQueuePushes() {
+            return pushes.sum();
+        }
+
+        @Override
+        public long getDecreaseKeys() {
+            return relaxed.sum() - pushes.sum();
+        }
+
+        @Override
+        public long getStalePops() {
+            return stalePops.sum();
+        }
+
+        @Override
+        public double getMeanSearchSpace() {
+            long q = queries.sum();
+            return q == 0 ? 0.0 : (double) pushes.sum() / q;
+        }
+
+        @Override
+        public double getLatencyMeanMicros() {
+            return latency.mean() / 1e3;
+        }
+
+        @Override
+        public double getLatencyP50Micros() {
+            return latency.valueAt(0.50) / 1e3;
+        }
+
+        @Override
+        public double getLatencyP90Micros() {
+            return latency.valueAt(0.90) / 1e3;
+        }
+
+        @Override
+        public double getLatencyP99Micros() {
+            return latency.valueAt(0.99) / 1e3;
+        }
+
+        @Override
+        public double getLatencyP999Micros() {
+            return latency.valueAt(0.999) / 1e3;
+        }
+
+        @Override
+        public double getLatencyMaxMicros() {
+            return latency.max() / 1e3;
+        }
+
+        @Override
+        public void reset() {
+            queries.reset();
+            settled.reset();
+            scanned.reset();
+            relaxed.reset();
+            pushes.reset();
+            stalePops.reset();
+            latency.reset();
+        }
+    }
+}
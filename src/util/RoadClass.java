@@ -0,0 +1,80 @@
+package util;
+
+import java.util.Locale;
+
+// Free-flow speed and peak slowdown per road class, used to derive baseMinutes when an import
+// only gives lengths. FOOT is the 80 m/min walking pace and 1.3 peak factor of the campus graph.
+// Capacities are typical flows per direction per hour (vehicles, or pedestrians for FOOT) at
+// which traffic assignment starts to treat the road as congested.
+public enum RoadClass {
+    MOTORWAY(100.0, 1.6, 4000.0),
+    TRUNK(80.0, 1.5, 3000.0),
+    PRIMARY(60.0, 1.5, 1800.0),
+    SECONDARY(50.0, 1.4, 1400.0),
+    TERTIARY(40.0, 1.3, 1000.0),
+    UNCLASSIFIED(30.0, 1.2, 700.0),
+    RESIDENTIAL(30.0, 1.2, 600.0),
+    SERVICE(20.0, 1.1, 400.0),
+    LIVING_STREET(10.0, 1.0, 300.0),
+    TRACK(15.0, 1.0, 200.0),
+    FOOT(4.8, 1.3, 1800.0);
+
+    public final double speedKmh;
+    public final double peakMultiplier;
+    public final double capacityPerHour;
+
+    RoadClass(double speedKmh, double peakMultiplier, double capacityPerHour) {
+        this.speedKmh = speedKmh;
+        this.peakMultiplier = peakMultiplier;
+        this.capacityPerHour = capacityPerHour;
+    }
+
+    public double minutes(double meters) {
+        return minutes(meters, speedKmh);
+    }
+
+    public static double minutes(double meters, double speedKmh) {
+        return meters / (speedKmh * 1000.0 / 60.0);
+    }
+
+    // Class of an OSM highway=* value, or null if it is not routable
+    public static RoadClass fromOsm(String highway) {
+        if (highway == null) return null;
+        String h = highway.toLowerCase(Locale.ROOT);
+        if (h.endsWith("_link")) h = h.substring(0, h.length() - 5);
+        switch (h) {
+            case "motorway": return MOTORWAY;
+            case "trunk": return TRUNK;
+            case "primary": return PRIMARY;
+            case "secondary": return SECONDARY;
+            case "tertiary": return TERTIARY;
+            case "unclassified": case "road": return UNCLASSIFIED;
+            case "residential": return RESIDENTIAL;
+            case "service": return SERVICE;
+            case "living_street": return LIVING_STREET;
+            case "track": return TRACK;
+            case "footway": case "path": case "pedestrian": case "steps": case "cycleway": case "bridleway":
+                return FOOT;
+            default: return null;
+        }
+    }
+
+    // Class whose free-flow speed is closest to speedKmh, the first one on ties; for graphs that
+    // keep only lengths and times
+    public static RoadClass bySpeed(double speedKmh) {
+        RoadClass best = MOTORWAY;
+        for (RoadClass c : values()) {
+            if (Math.abs(c.speedKmh - speedKmh) < Math.abs(best.speedKmh - speedKmh)) best = c;
+        }
+        return best;
+    }
+
+    // Enum name or OSM highway value
+    public static RoadClass parse(String value) {
+        if (value == null || value.isEmpty()) return FOOT;
+        for (RoadClass c : values()) if (c.name().equalsIgnoreCase(value)) return c;
+        RoadClass c = fromOsm(value);
+        if (c == null) throw new IllegalArgumentException("Unknown road class: " + value);
+        return c;
+    }
+}
@@ -0,0 +1,210 @@
+package util;
+
+import model.CompactGraphBuilder;
+import model.GraphFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+// Seeded synthetic road networks for benchmarks, from a thousand to tens of millions of nodes.
+// The same kind, size and seed always give the same graph. Coordinates are meters and edge
+// lengths are at least the straight-line distance, so euclidean bounds stay admissible; node
+// ids are 1..n in index order. A small share of nodes carry a landmark tag and a name so the
+// keyword searches have something to find.
+//
+//   grid   square grid, 100 m blocks with jittered corners, every 10th line a secondary road
+//   rgg    random geometric graph: uniform points joined to every point within a radius
+//          chosen for the requested mean degree
+//   road   grid-like streets with missing blocks and one-way streets, tertiary roads every
+//          4th line, primary arterials every 8th and motorways every 64th
+public final class SyntheticGraphs {
+    public enum Kind { GRID, RGG, ROAD }
+
+    public static final String[] LANDMARK_TAGS = {"bank", "food", "library", "fuel", "pharmacy", "hospital"};
+    private static final double BLOCK_METERS = 100.0;
+    private static final double TAGGED_SHARE = 0.005;
+
+    private SyntheticGraphs() {}
+
+    public static GraphFile generate(Kind kind, int nodes, long seed) {
+        switch (kind) {
+            case GRID: return grid(nodes, seed);
+            case RGG: return randomGeometric(nodes, 6.0, seed);
+            default: return roadLike(nodes, seed);
+        }
+    }
+
+    // About n nodes as a side x side grid
+    public static GraphFile grid(int n, long seed) {
+        int side = side(n);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        CompactGraphBuilder b = new CompactGraphBuilder();
+        addJitteredGrid(b, side, rnd);
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int id = r * side + c + 1;
+                if (c + 1 < side) twoWay(b, id, id + 1, rowClass(r, 10, RoadClass.SECONDARY), rnd);
+                if (r + 1 < side) twoWay(b, id, id + side, rowClass(c, 10, RoadClass.SECONDARY), rnd);
+            }
+        }
+        return b.build();
+    }
+
+    // n uniform points on a square of BLOCK_METERS per point, joined within the radius that
+    // gives about meanDegree neighbours each; neighbours come from a bucket grid of that radius
+    public static GraphFile randomGeometric(int n, double meanDegree, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        double sideMeters = Math.sqrt((double) n) * BLOCK_METERS;
+        double radius = Math.sqrt(meanDegree / (Math.PI * n)) * sideMeters;
+        CompactGraphBuilder b = new CompactGraphBuilder();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = rnd.nextDouble() * sideMeters;
+            y[i] = rnd.nextDouble() * sideMeters;
+            addNode(b, i + 1, x[i], y[i], rnd);
+        }
+        int cells = Math.max(1, (int) (sideMeters / radius));
+        double cellSize = sideMeters / cells;
+        // Counting sort of points into cells
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            int cx = Math.min(cells - 1, (int) (x[i] / cellSize));
+            int cy = Math.min(cells - 1, (int) (y[i] / cellSize));
+            cellOf[i] = cy * cells + cx;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf(cellStart, cells * cells);
+        int[] members = new int[n];
+        for (int i = 0; i < n; i++) members[fill[cellOf[i]]++] = i;
+
+        double r2 = radius * radius;
+        for (int i = 0; i < n; i++) {
+            int cx = cellOf[i] % cells;
+            int cy = cellOf[i] / cells;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = cx + dx;
+                    int ny = cy + dy;
+                    if (nx < 0 || ny < 0 || nx >= cells || ny >= cells) continue;
+                    int c = ny * cells + nx;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int j = members[k];
+                        if (j <= i) continue;
+                        double ddx = x[i] - x[j];
+                        double ddy = y[i] - y[j];
+                        if (ddx * ddx + ddy * ddy > r2) continue;
+                        RoadClass rc = rnd.nextInt(8) == 0 ? RoadClass.PRIMARY : RoadClass.RESIDENTIAL;
+                        double meters = Math.sqrt(ddx * ddx + ddy * ddy) * (1.0 + 0.2 * rnd.nextDouble());
+                        edge(b, i + 1, j + 1, meters, rc);
+                        edge(b, j + 1, i + 1, meters, rc);
+                    }
+                }
+            }
+        }
+        return b.build();
+    }
+
+    // About n nodes of jittered street grid with a road hierarchy on top
+    public static GraphFile roadLike(int n, long seed) {
+        int side = side(n);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        CompactGraphBuilder b = new CompactGraphBuilder();
+        addJitteredGrid(b, side, rnd);
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int id = r * side + c + 1;
+                if (c + 1 < side) street(b, id, id + 1, r, rnd);
+                if (r + 1 < side) street(b, id, id + side, c, rnd);
+            }
+        }
+        return b.build();
+    }
+
+    // One block of the street on row (or column) line. Motorway and arterial lines are always
+    // complete and two-way.
+    private static void street(CompactGraphBuilder b, int from, int to, int line, SplittableRandom rnd) {
+        if (line % 64 == 0) {
+            twoWay(b, from, to, RoadClass.MOTORWAY, rnd);
+            return;
+        }
+        if (line % 8 == 0) {
+            twoWay(b, from, to, RoadClass.PRIMARY, rnd);
+            return;
+        }
+        int roll = rnd.nextInt(100);
+        if (roll < 10) return;
+        RoadClass rc = line % 4 == 0 ? RoadClass.TERTIARY : RoadClass.RESIDENTIAL;
+        double meters = blockMeters(rnd);
+        if (roll < 15) {
+            edge(b, from, to, meters, rc);
+        } else if (roll < 20) {
+            edge(b, to, from, meters, rc);
+        } else {
+            edge(b, from, to, meters, rc);
+            edge(b, to, from, meters, rc);
+        }
+    }
+
+    private static void addJitteredGrid(CompactGraphBuilder b, int side, SplittableRandom rnd) {
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                double x = c * BLOCK_METERS + (rnd.nextDouble() - 0.5) * 0.2 * BLOCK_METERS;
+                double y = r * BLOCK_METERS + (rnd.nextDouble() - 0.5) * 0.2 * BLOCK_METERS;
+                addNode(b, r * side + c + 1, x, y, rnd);
+            }
+        }
+    }
+
+    private static void addNode(CompactGraphBuilder b, int id, double x, double y, SplittableRandom rnd) {
+        if (rnd.nextDouble() < TAGGED_SHARE) {
+            String tag = LANDMARK_TAGS[rnd.nextInt(LANDMARK_TAGS.length)];
+            String name = Character.toUpperCase(tag.charAt(0)) + tag.substring(1) + " " + id;
+            b.addNode(id, x, y, name, new String[]{tag});
+        } else {
+            b.addNode(id, x, y, null, null);
+        }
+    }
+
+    private static RoadClass rowClass(int line, int every, RoadClass major) {
+        return line % every == 0 ? major : RoadClass.RESIDENTIAL;
+    }
+
+    // Jitter moves each corner by at most 10 m per axis, so a block is at most 100 + 2 * 10 * sqrt(2) m
+    // straight-line; lengths are drawn above that
+    private static double blockMeters(SplittableRandom rnd) {
+        return BLOCK_METERS * (1.3 + 0.3 * rnd.nextDouble());
+    }
+
+    private static void twoWay(CompactGraphBuilder b, int from, int to, RoadClass rc, SplittableRandom rnd) {
+        double meters = blockMeters(rnd);
+        edge(b, from, to, meters, rc);
+        edge(b, to, from, meters, rc);
+    }
+
+    private static void edge(CompactGraphBuilder b, int from, int to, double meters, RoadClass rc) {
+        b.addEdge(from, to, meters, rc.minutes(meters), rc.peakMultiplier, 1.0);
+    }
+
+    private static int side(int n) {
+        if (n < 4) throw new IllegalArgumentException("Need at least 4 nodes");
+        return (int) Math.ceil(Math.sqrt((double) n));
+    }
+
+    // usage: SyntheticGraphs grid|rgg|road nodes seed out.ugr
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("usage: SyntheticGraphs grid|rgg|road nodes seed out.ugr");
+            System.exit(2);
+        }
+        Kind kind = Kind.valueOf(args[0].toUpperCase(Locale.ROOT));
+        GraphFile file = generate(kind, Integer.parseInt(args[1]), Long.parseLong(args[2]));
+        file.write(Path.of(args[3]));
+        System.out.printf("%s: %d nodes, %d edges -> %s%n", kind, file.graph.nodeCount, file.graph.edgeCount, args[3]);
+    }
+}